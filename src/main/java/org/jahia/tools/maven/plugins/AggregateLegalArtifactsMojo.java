@@ -16,6 +16,7 @@ package org.jahia.tools.maven.plugins;
  * limitations under the License.
  */
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.project.MavenProject;
@@ -29,7 +30,10 @@ import org.eclipse.aether.RepositorySystemSession;
 import org.eclipse.aether.repository.RemoteRepository;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Aggregates NOTICE and LICENSE files from dependencies into aggregated versions.
@@ -115,6 +119,171 @@ public class AggregateLegalArtifactsMojo extends AbstractMojo
      */
     private boolean verbose;
 
+    /**
+     * Number of threads used to read the scanned JARs, 0 to use one thread per available processor.
+     *
+     * @parameter default-value=1
+     */
+    private int scanThreads;
+
+    /**
+     * Size in bytes from which archives are memory-mapped instead of being read through their file channel, -1 to
+     * never memory-map archives.
+     *
+     * @parameter default-value=16777216
+     */
+    private long memoryMappedArchiveThreshold;
+
+    /**
+     * Size in bytes up to which compressed embedded JARs are copied in memory to be scanned, larger ones are copied to
+     * a temporary file.
+     *
+     * @parameter default-value=4194304
+     */
+    private long inMemoryEmbeddedJarThreshold;
+
+    /**
+     * Comma-separated extensions of the archives, such as WARs, EARs or Karaf KARs, that are read in place to process the
+     * JARs they contain, recursively, as if they had been extracted into the scan directory.
+     *
+     * @parameter default-value="war,ear,zip,kar,rar"
+     */
+    private String containerArchiveExtensions;
+
+    /**
+     * Whether or not to recognize the licenses that match none of the known text variants by comparing their words,
+     * whatever their formatting, comment markers or HTML markup.
+     *
+     * @parameter default-value=true
+     */
+    private boolean licenseFingerprintMatching;
+
+    /**
+     * Whether or not to trust the licenses JARs declare in a machine-readable form, i.e. an SPDX license identifier,
+     * their Bundle-License manifest header or the licenses of their embedded POM, when all of them are known licenses.
+     * The license files of these JARs are then not matched against the known licenses, and neither Maven Central nor
+     * their sources are looked up.
+     *
+     * @parameter default-value=false
+     */
+    private boolean trustMachineReadableLicenses;
+
+    /**
+     * Whether or not to process the JARs declaring their licenses in a machine-readable form as usual and only report
+     * the declared licenses that differ from the ones found in their license files, to check whether they may be
+     * trusted.
+     *
+     * @parameter default-value=false
+     */
+    private boolean auditMachineReadableLicenses;
+
+    /**
+     * Time in milliseconds the known license texts may spend matching a license file before it is reported as timed
+     * out, 0 for no limit.
+     *
+     * @parameter default-value=10000
+     */
+    private long licenseMatchTimeout;
+
+    /**
+     * Number of characters the known license texts may read while matching a license file before it is reported as
+     * timed out, 0 for no limit. Unlike the timeout, it doesn't depend on the speed of the machine.
+     *
+     * @parameter default-value=100000000
+     */
+    private long licenseMatchCharacterBudget;
+
+    /**
+     * Only use the local repository: no Maven Central search, license download or remote artifact resolution is done,
+     * the lookups that would have needed one being reported at the end of the build. Follows Maven's offline mode by
+     * default.
+     *
+     * @parameter default-value="${settings.offline}"
+     */
+    private boolean offline;
+
+    /**
+     * Base URL of the Maven Central search REST API used to identify the JARs that contain no POM.
+     *
+     * @parameter default-value="http://search.maven.org"
+     */
+    private String mavenSearchUrl;
+
+    /**
+     * Maximum number of Maven Central searches running at the same time.
+     *
+     * @parameter default-value=4
+     */
+    private int mavenSearchThreads;
+
+    /**
+     * Location of the cache of the Maven Central search results, shared by all the projects.
+     *
+     * @parameter default-value="${user.home}/.m2/legal-maven-plugin/maven-search-cache"
+     */
+    private File mavenSearchCacheDirectory;
+
+    /**
+     * Time in hours the Maven Central search results are cached for, 0 to not cache them.
+     *
+     * @parameter default-value=168
+     */
+    private long mavenSearchCacheTtl;
+
+    /**
+     * Maximum number of batches of artifacts, such as sources JARs and parent POMs, resolved at the same time. The
+     * artifacts of a batch are downloaded in parallel.
+     *
+     * @parameter default-value=2
+     */
+    private int artifactResolutionThreads;
+
+    /**
+     * Time in milliseconds after which connecting to or reading from a server fails when downloading the license
+     * referenced by a POM, 0 for no limit.
+     *
+     * @parameter default-value=10000
+     */
+    private int licenseDownloadTimeout;
+
+    /**
+     * Location of the cache of the license texts downloaded from the URLs referenced by POMs, shared by all the
+     * projects.
+     *
+     * @parameter default-value="${user.home}/.m2/legal-maven-plugin/license-cache"
+     */
+    private File licenseDownloadCacheDirectory;
+
+    /**
+     * Time in hours the downloaded license texts are used for before checking whether they changed, 0 to not cache
+     * them.
+     *
+     * @parameter default-value=720
+     */
+    private long licenseDownloadCacheTtl;
+
+    /**
+     * Whether or not to reuse the results of previous builds for the JARs that haven't changed.
+     *
+     * @parameter default-value=true
+     */
+    private boolean useScanCache;
+
+    /**
+     * Location of the cache of the results of previous builds, shared by all the projects.
+     *
+     * @parameter default-value="${user.home}/.m2/legal-maven-plugin/scan-cache"
+     */
+    private File scanCacheDirectory;
+
+    /**
+     * Time in hours the results of previous builds are reused for, as the lookups they depend on may give other
+     * results over time, 0 to not reuse them.
+     *
+     * @parameter default-value=168
+     */
+    private long scanCacheTtl;
+
     public void execute()
         throws MojoExecutionException
     {
@@ -125,7 +294,28 @@ public class AggregateLegalArtifactsMojo extends AbstractMojo
             f.mkdirs();
         }
 
-        LegalArtifactAggregator legalArtifactAggregator = new LegalArtifactAggregator(scanDirectory, f, repoSystem, repoSession, projectRepos, scmManager, verbose, outputDiagnostics);
+        AggregationSettings settings = new AggregationSettings()
+                .setScanThreads(scanThreads)
+                .setMemoryMappedArchiveThreshold(memoryMappedArchiveThreshold)
+                .setInMemoryEmbeddedJarThreshold(inMemoryEmbeddedJarThreshold)
+                .setContainerArchiveExtensions(new HashSet<>(Arrays.asList(StringUtils.split(containerArchiveExtensions, ", "))))
+                .setLicenseFingerprintMatching(licenseFingerprintMatching)
+                .setTrustMachineReadableLicenses(trustMachineReadableLicenses)
+                .setAuditMachineReadableLicenses(auditMachineReadableLicenses)
+                .setLicenseMatchTimeout(licenseMatchTimeout)
+                .setLicenseMatchCharacterBudget(licenseMatchCharacterBudget)
+                .setOffline(offline)
+                .setMavenSearchUrl(mavenSearchUrl)
+                .setMavenSearchThreads(mavenSearchThreads)
+                .setMavenSearchCacheDirectory(mavenSearchCacheDirectory)
+                .setMavenSearchCacheTtl(TimeUnit.HOURS.toMillis(mavenSearchCacheTtl))
+                .setArtifactResolutionThreads(artifactResolutionThreads)
+                .setLicenseDownloadTimeout(licenseDownloadTimeout)
+                .setLicenseDownloadCacheDirectory(licenseDownloadCacheDirectory)
+                .setLicenseDownloadCacheTtl(TimeUnit.HOURS.toMillis(licenseDownloadCacheTtl))
+                .setScanCacheDirectory(useScanCache && scanCacheTtl > 0 ? scanCacheDirectory : null)
+                .setScanCacheTtl(TimeUnit.HOURS.toMillis(scanCacheTtl));
+        LegalArtifactAggregator legalArtifactAggregator = new LegalArtifactAggregator(scanDirectory, f, repoSystem, repoSession, projectRepos, scmManager, verbose, outputDiagnostics, settings);
         legalArtifactAggregator.execute();
 
     }
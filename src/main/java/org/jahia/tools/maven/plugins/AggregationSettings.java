@@ -0,0 +1,261 @@
+package org.jahia.tools.maven.plugins;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How the legal artifacts are aggregated: parallelism, archive reading, license matching, remote lookups and caches.
+ * The defaults are the ones of the plugin parameters, except for the caches that are disabled until a directory is
+ * given. The setters return the settings so that they may be chained.
+ */
+class AggregationSettings {
+
+    private int scanThreads = 1;
+    private long memoryMappedArchiveThreshold = 16 * 1024 * 1024;
+    private long inMemoryEmbeddedJarThreshold = 4 * 1024 * 1024;
+    private Set<String> containerArchiveExtensions = new HashSet<>(Arrays.asList("war", "ear", "zip", "kar", "rar"));
+    private boolean licenseFingerprintMatching = true;
+    private boolean trustMachineReadableLicenses = false;
+    private boolean auditMachineReadableLicenses = false;
+    private long licenseMatchTimeout = 10000;
+    private long licenseMatchCharacterBudget = 100000000;
+    private boolean offline = false;
+    private String mavenSearchUrl = "http://search.maven.org";
+    private int mavenSearchThreads = 4;
+    private File mavenSearchCacheDirectory = null;
+    private long mavenSearchCacheTtl = TimeUnit.HOURS.toMillis(168);
+    private int artifactResolutionThreads = 2;
+    private int licenseDownloadTimeout = 10000;
+    private File licenseDownloadCacheDirectory = null;
+    private long licenseDownloadCacheTtl = TimeUnit.HOURS.toMillis(720);
+    private File scanCacheDirectory = null;
+    private long scanCacheTtl = TimeUnit.HOURS.toMillis(168);
+
+    int getScanThreads() {
+        return scanThreads;
+    }
+
+    /**
+     * @param scanThreads the number of threads reading the JARs, 0 for one per available processor
+     */
+    AggregationSettings setScanThreads(int scanThreads) {
+        this.scanThreads = scanThreads;
+        return this;
+    }
+
+    long getMemoryMappedArchiveThreshold() {
+        return memoryMappedArchiveThreshold;
+    }
+
+    /**
+     * @param memoryMappedArchiveThreshold the size in bytes from which archives are memory mapped instead of read
+     *                                     through their file channel, -1 to never memory map them
+     */
+    AggregationSettings setMemoryMappedArchiveThreshold(long memoryMappedArchiveThreshold) {
+        this.memoryMappedArchiveThreshold = memoryMappedArchiveThreshold;
+        return this;
+    }
+
+    long getInMemoryEmbeddedJarThreshold() {
+        return inMemoryEmbeddedJarThreshold;
+    }
+
+    /**
+     * @param inMemoryEmbeddedJarThreshold the size in bytes up to which compressed embedded JARs are inflated in memory
+     *                                     instead of into a temporary file
+     */
+    AggregationSettings setInMemoryEmbeddedJarThreshold(long inMemoryEmbeddedJarThreshold) {
+        this.inMemoryEmbeddedJarThreshold = inMemoryEmbeddedJarThreshold;
+        return this;
+    }
+
+    Set<String> getContainerArchiveExtensions() {
+        return containerArchiveExtensions;
+    }
+
+    /**
+     * @param containerArchiveExtensions the extensions of the archives whose JARs are read in place
+     */
+    AggregationSettings setContainerArchiveExtensions(Set<String> containerArchiveExtensions) {
+        this.containerArchiveExtensions = containerArchiveExtensions;
+        return this;
+    }
+
+    boolean isLicenseFingerprintMatching() {
+        return licenseFingerprintMatching;
+    }
+
+    AggregationSettings setLicenseFingerprintMatching(boolean licenseFingerprintMatching) {
+        this.licenseFingerprintMatching = licenseFingerprintMatching;
+        return this;
+    }
+
+    boolean isTrustMachineReadableLicenses() {
+        return trustMachineReadableLicenses;
+    }
+
+    AggregationSettings setTrustMachineReadableLicenses(boolean trustMachineReadableLicenses) {
+        this.trustMachineReadableLicenses = trustMachineReadableLicenses;
+        return this;
+    }
+
+    boolean isAuditMachineReadableLicenses() {
+        return auditMachineReadableLicenses;
+    }
+
+    AggregationSettings setAuditMachineReadableLicenses(boolean auditMachineReadableLicenses) {
+        this.auditMachineReadableLicenses = auditMachineReadableLicenses;
+        return this;
+    }
+
+    long getLicenseMatchTimeout() {
+        return licenseMatchTimeout;
+    }
+
+    /**
+     * @param licenseMatchTimeout the time in milliseconds the matching of a license text may take, 0 for no limit
+     */
+    AggregationSettings setLicenseMatchTimeout(long licenseMatchTimeout) {
+        this.licenseMatchTimeout = licenseMatchTimeout;
+        return this;
+    }
+
+    long getLicenseMatchCharacterBudget() {
+        return licenseMatchCharacterBudget;
+    }
+
+    /**
+     * @param licenseMatchCharacterBudget the number of characters the matching of a license text may read, 0 for no
+     *                                    limit
+     */
+    AggregationSettings setLicenseMatchCharacterBudget(long licenseMatchCharacterBudget) {
+        this.licenseMatchCharacterBudget = licenseMatchCharacterBudget;
+        return this;
+    }
+
+    boolean isOffline() {
+        return offline;
+    }
+
+    AggregationSettings setOffline(boolean offline) {
+        this.offline = offline;
+        return this;
+    }
+
+    String getMavenSearchUrl() {
+        return mavenSearchUrl;
+    }
+
+    AggregationSettings setMavenSearchUrl(String mavenSearchUrl) {
+        this.mavenSearchUrl = mavenSearchUrl;
+        return this;
+    }
+
+    int getMavenSearchThreads() {
+        return mavenSearchThreads;
+    }
+
+    AggregationSettings setMavenSearchThreads(int mavenSearchThreads) {
+        this.mavenSearchThreads = mavenSearchThreads;
+        return this;
+    }
+
+    File getMavenSearchCacheDirectory() {
+        return mavenSearchCacheDirectory;
+    }
+
+    /**
+     * @param mavenSearchCacheDirectory the directory the search results are cached in, or null to not cache them
+     */
+    AggregationSettings setMavenSearchCacheDirectory(File mavenSearchCacheDirectory) {
+        this.mavenSearchCacheDirectory = mavenSearchCacheDirectory;
+        return this;
+    }
+
+    long getMavenSearchCacheTtl() {
+        return mavenSearchCacheTtl;
+    }
+
+    /**
+     * @param mavenSearchCacheTtl the time in milliseconds the search results are cached for
+     */
+    AggregationSettings setMavenSearchCacheTtl(long mavenSearchCacheTtl) {
+        this.mavenSearchCacheTtl = mavenSearchCacheTtl;
+        return this;
+    }
+
+    int getArtifactResolutionThreads() {
+        return artifactResolutionThreads;
+    }
+
+    AggregationSettings setArtifactResolutionThreads(int artifactResolutionThreads) {
+        this.artifactResolutionThreads = artifactResolutionThreads;
+        return this;
+    }
+
+    int getLicenseDownloadTimeout() {
+        return licenseDownloadTimeout;
+    }
+
+    /**
+     * @param licenseDownloadTimeout the connect and read timeout in milliseconds of the license downloads
+     */
+    AggregationSettings setLicenseDownloadTimeout(int licenseDownloadTimeout) {
+        this.licenseDownloadTimeout = licenseDownloadTimeout;
+        return this;
+    }
+
+    File getLicenseDownloadCacheDirectory() {
+        return licenseDownloadCacheDirectory;
+    }
+
+    /**
+     * @param licenseDownloadCacheDirectory the directory the downloaded licenses are cached in, or null to not cache
+     *                                      them
+     */
+    AggregationSettings setLicenseDownloadCacheDirectory(File licenseDownloadCacheDirectory) {
+        this.licenseDownloadCacheDirectory = licenseDownloadCacheDirectory;
+        return this;
+    }
+
+    long getLicenseDownloadCacheTtl() {
+        return licenseDownloadCacheTtl;
+    }
+
+    /**
+     * @param licenseDownloadCacheTtl the time in milliseconds the downloaded licenses are used for before being
+     *                                revalidated
+     */
+    AggregationSettings setLicenseDownloadCacheTtl(long licenseDownloadCacheTtl) {
+        this.licenseDownloadCacheTtl = licenseDownloadCacheTtl;
+        return this;
+    }
+
+    File getScanCacheDirectory() {
+        return scanCacheDirectory;
+    }
+
+    /**
+     * @param scanCacheDirectory the directory the results of the processed JARs are cached in, or null to not cache
+     *                           them
+     */
+    AggregationSettings setScanCacheDirectory(File scanCacheDirectory) {
+        this.scanCacheDirectory = scanCacheDirectory;
+        return this;
+    }
+
+    long getScanCacheTtl() {
+        return scanCacheTtl;
+    }
+
+    /**
+     * @param scanCacheTtl the time in milliseconds the results of the processed JARs are reused for
+     */
+    AggregationSettings setScanCacheTtl(long scanCacheTtl) {
+        this.scanCacheTtl = scanCacheTtl;
+        return this;
+    }
+}
@@ -0,0 +1,20 @@
+package org.jahia.tools.maven.plugins;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Random access to the bytes of an archive, used by {@link ZipArchive} to read the central directory and the
+ * entries it actually needs without going through the whole archive. Implementations must support concurrent reads.
+ */
+interface ArchiveSource extends Closeable {
+
+    long size() throws IOException;
+
+    /**
+     * Reads up to length bytes starting at the given position of the archive.
+     * @return the number of bytes read, or -1 if the position is at or past the end of the archive
+     */
+    int read(long position, byte[] buffer, int offset, int length) throws IOException;
+
+}
@@ -0,0 +1,58 @@
+package org.jahia.tools.maven.plugins;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streams a range of bytes from an archive source. Closing this stream doesn't close the source.
+ */
+class ArchiveSourceInputStream extends InputStream {
+
+    private final ArchiveSource archiveSource;
+    private long position;
+    private long remaining;
+
+    ArchiveSourceInputStream(ArchiveSource archiveSource, long start, long length) {
+        this.archiveSource = archiveSource;
+        this.position = start;
+        this.remaining = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] singleByte = new byte[1];
+        int bytesRead = read(singleByte, 0, 1);
+        return bytesRead == -1 ? -1 : singleByte[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (remaining <= 0) {
+            return -1;
+        }
+        if (length == 0) {
+            return 0;
+        }
+        int bytesRead = archiveSource.read(position, buffer, offset, (int) Math.min(length, remaining));
+        if (bytesRead == -1) {
+            remaining = 0;
+            return -1;
+        }
+        position += bytesRead;
+        remaining -= bytesRead;
+        return bytesRead;
+    }
+
+    @Override
+    public long skip(long n) {
+        long skipped = Math.max(0, Math.min(n, remaining));
+        position += skipped;
+        remaining -= skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, remaining);
+    }
+}
@@ -0,0 +1,187 @@
+package org.jahia.tools.maven.plugins;
+
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
+import org.eclipse.aether.resolution.ArtifactResult;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Resolves artifacts in batches so that the latency of their downloads overlaps instead of adding up.
+ *
+ * The artifacts the aggregator will need are prefetched while it processes the JARs before the ones needing them: they
+ * are collected into batches resolved with a single {@link RepositorySystem#resolveArtifacts} call, which downloads
+ * them in parallel, by a bounded pool of threads. A batch is submitted as soon as a thread of the pool is free, so
+ * batches grow while the pool is busy. An artifact is only ever resolved once, and resolving an artifact whose batch
+ * hasn't started yet resolves the batch in the calling thread instead of waiting for a pool thread.
+ */
+class ArtifactResolver {
+
+    private static final int MAX_BATCH_SIZE = 16;
+
+    private final RepositorySystem repositorySystem;
+    private final RepositorySystemSession repositorySystemSession;
+    private final List<RemoteRepository> remoteRepositories;
+    private final int maxConcurrentBatches;
+    private final ExecutorService executorService;
+    private final ConcurrentMap<String, FutureTask<Map<String, ArtifactResult>>> resolutions = new ConcurrentHashMap<>();
+    // the batch collecting the prefetched artifacts, guarded by this
+    private List<ArtifactRequest> pendingRequests = null;
+    private FutureTask<Map<String, ArtifactResult>> pendingBatch = null;
+    private int runningBatches = 0;
+    private int batches = 0;
+
+    ArtifactResolver(RepositorySystem repositorySystem, RepositorySystemSession repositorySystemSession,
+                     List<RemoteRepository> remoteRepositories, int maxConcurrentBatches) {
+        this.repositorySystem = repositorySystem;
+        this.repositorySystemSession = repositorySystemSession;
+        this.remoteRepositories = remoteRepositories;
+        this.maxConcurrentBatches = Math.max(1, maxConcurrentBatches);
+        this.executorService = Executors.newFixedThreadPool(this.maxConcurrentBatches, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                // resolutions started for artifacts that are never needed mustn't keep the build running
+                Thread thread = new Thread(runnable, "artifact-resolver");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Starts resolving artifacts that will probably be needed, the ones already resolved or being resolved being
+     * ignored.
+     */
+    synchronized void prefetch(Collection<Artifact> artifacts) {
+        for (Artifact artifact : artifacts) {
+            addToPendingBatch(artifact);
+        }
+        if (pendingRequests != null && (pendingRequests.size() >= MAX_BATCH_SIZE || runningBatches < maxConcurrentBatches)) {
+            submitPendingBatch();
+        }
+    }
+
+    /**
+     * @return the resolved artifact
+     * @throws ArtifactResolutionException if the artifact couldn't be resolved
+     */
+    Artifact resolve(Artifact artifact) throws ArtifactResolutionException {
+        FutureTask<Map<String, ArtifactResult>> resolution;
+        synchronized (this) {
+            resolution = addToPendingBatch(artifact);
+            if (resolution == pendingBatch) {
+                // the other pending artifacts are resolved along with this one
+                pendingRequests = null;
+                pendingBatch = null;
+            }
+        }
+        // does nothing if the batch is already being resolved or was resolved by a pool thread
+        resolution.run();
+        ArtifactResult artifactResult;
+        try {
+            artifactResult = resolution.get().get(artifact.toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ArtifactResolutionException(Collections.<ArtifactResult>emptyList(), "Interrupted while resolving " + artifact, e);
+        } catch (ExecutionException e) {
+            throw new ArtifactResolutionException(Collections.<ArtifactResult>emptyList(), e.getCause().getMessage(), e.getCause());
+        }
+        if (!artifactResult.isResolved()) {
+            throw new ArtifactResolutionException(Collections.singletonList(artifactResult));
+        }
+        return artifactResult.getArtifact();
+    }
+
+    int getArtifacts() {
+        return resolutions.size();
+    }
+
+    synchronized int getBatches() {
+        return batches;
+    }
+
+    void close() {
+        executorService.shutdownNow();
+    }
+
+    private FutureTask<Map<String, ArtifactResult>> addToPendingBatch(Artifact artifact) {
+        FutureTask<Map<String, ArtifactResult>> resolution = resolutions.get(artifact.toString());
+        if (resolution != null) {
+            return resolution;
+        }
+        if (pendingRequests == null) {
+            final List<ArtifactRequest> requests = new ArrayList<>();
+            pendingRequests = requests;
+            pendingBatch = new FutureTask<>(new Callable<Map<String, ArtifactResult>>() {
+                @Override
+                public Map<String, ArtifactResult> call() throws Exception {
+                    return resolveBatch(requests);
+                }
+            });
+            batches++;
+        }
+        ArtifactRequest request = new ArtifactRequest();
+        request.setArtifact(artifact);
+        request.setRepositories(remoteRepositories);
+        pendingRequests.add(request);
+        resolutions.put(artifact.toString(), pendingBatch);
+        return pendingBatch;
+    }
+
+    private void submitPendingBatch() {
+        final FutureTask<Map<String, ArtifactResult>> batch = pendingBatch;
+        pendingRequests = null;
+        pendingBatch = null;
+        runningBatches++;
+        executorService.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    batch.run();
+                } finally {
+                    batchDone();
+                }
+            }
+        });
+    }
+
+    private synchronized void batchDone() {
+        runningBatches--;
+        // the artifacts prefetched while the pool was busy
+        if (pendingRequests != null && !executorService.isShutdown()) {
+            submitPendingBatch();
+        }
+    }
+
+    private Map<String, ArtifactResult> resolveBatch(List<ArtifactRequest> requests) {
+        List<ArtifactResult> artifactResults;
+        try {
+            artifactResults = repositorySystem.resolveArtifacts(repositorySystemSession, requests);
+        } catch (ArtifactResolutionException e) {
+            // the results of the artifacts that could be resolved are still there
+            artifactResults = e.getResults();
+        }
+        Map<String, ArtifactResult> artifactResultsByArtifact = new HashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            artifactResultsByArtifact.put(requests.get(i).getArtifact().toString(), artifactResults.get(i));
+        }
+        return artifactResultsByArtifact;
+    }
+}
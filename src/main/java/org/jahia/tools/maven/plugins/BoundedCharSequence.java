@@ -0,0 +1,67 @@
+package org.jahia.tools.maven.plugins;
+
+/**
+ * A text that may only be read a limited number of characters, and for a limited time, so that a regular expression
+ * that backtracks too much on a pathological text, such as a large HTML page, can't stall the build: the regular
+ * expression engine reads the text character by character through this sequence, which throws a
+ * {@link LicenseMatcher.MatchTimeoutException} once the budget is spent or the thread is interrupted.
+ *
+ * The budget is shared by all the regular expressions run against the same sequence.
+ */
+class BoundedCharSequence implements CharSequence {
+
+    // the clock is only read once every so many characters as it costs much more than reading a character
+    private static final int CLOCK_CHECK_INTERVAL = 4096;
+
+    private final CharSequence text;
+    private final boolean timeLimited;
+    private final long deadline;
+    private long remainingCharacterReads;
+    private int readsUntilClockCheck = CLOCK_CHECK_INTERVAL;
+
+    /**
+     * @param timeoutMillis     the time after which reading the text fails, 0 for no limit
+     * @param maxCharacterReads the number of characters that may be read, 0 for no limit
+     */
+    BoundedCharSequence(CharSequence text, long timeoutMillis, long maxCharacterReads) {
+        this.text = text;
+        this.timeLimited = timeoutMillis > 0;
+        this.deadline = System.nanoTime() + timeoutMillis * 1000000L;
+        this.remainingCharacterReads = maxCharacterReads > 0 ? maxCharacterReads : Long.MAX_VALUE;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (--remainingCharacterReads < 0) {
+            throw new LicenseMatcher.MatchTimeoutException("character budget exceeded");
+        }
+        if (--readsUntilClockCheck == 0) {
+            readsUntilClockCheck = CLOCK_CHECK_INTERVAL;
+            if (Thread.currentThread().isInterrupted()) {
+                throw new LicenseMatcher.MatchTimeoutException("interrupted");
+            }
+            if (timeLimited && System.nanoTime() - deadline > 0) {
+                throw new LicenseMatcher.MatchTimeoutException("time budget exceeded");
+            }
+        }
+        return text.charAt(index);
+    }
+
+    @Override
+    public int length() {
+        return text.length();
+    }
+
+    /**
+     * Only used to extract matched groups, which doesn't need to be bounded.
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return text.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return text.toString();
+    }
+}
@@ -0,0 +1,32 @@
+package org.jahia.tools.maven.plugins;
+
+/**
+ * An archive source for archives that are already in memory, such as JARs embedded in other JARs.
+ */
+class ByteArrayArchiveSource implements ArchiveSource {
+
+    private final byte[] contents;
+
+    ByteArrayArchiveSource(byte[] contents) {
+        this.contents = contents;
+    }
+
+    @Override
+    public long size() {
+        return contents.length;
+    }
+
+    @Override
+    public int read(long position, byte[] buffer, int offset, int length) {
+        if (position >= contents.length) {
+            return -1;
+        }
+        int bytesToRead = (int) Math.min(length, contents.length - position);
+        System.arraycopy(contents, (int) position, buffer, offset, bytesToRead);
+        return bytesToRead;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,223 @@
+package org.jahia.tools.maven.plugins;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the text variant closest to a license text by edit distance without computing the distance to every variant.
+ * The variants are sorted by length so that the ones whose length alone differs by more than the threshold are never
+ * looked at, and the remaining ones are rejected if they don't share enough trigrams, i.e. runs of three characters,
+ * with the text: as an edit changes at most three trigrams, two texts within the threshold share at least
+ * max(length) - 2 - 3 * threshold of them. The distance is then only computed for the remaining variants, the most
+ * similar ones first, and the threshold shrinks to the smallest distance found so far.
+ *
+ * The trigram floor only rejects variants that couldn't be within the threshold, so the result is the same as comparing
+ * the text with all the variants in the order of the licenses and of their variants, the first one winning on equal
+ * distances.
+ */
+class ClosestLicenseIndex {
+
+    private static final int GRAM_SIZE = 3;
+
+    private static class Entry {
+        private final KnownLicense knownLicense;
+        private final String text;
+        private final int licenseOrder;
+        private final int variantOrder;
+        private long[] grams;
+
+        Entry(KnownLicense knownLicense, String text, int licenseOrder, int variantOrder) {
+            this.knownLicense = knownLicense;
+            this.text = text;
+            this.licenseOrder = licenseOrder;
+            this.variantOrder = variantOrder;
+        }
+
+        // only computed for the variants whose length is close to the one of a looked up text
+        synchronized long[] getGrams() {
+            if (grams == null) {
+                grams = ClosestLicenseIndex.getGrams(text);
+            }
+            return grams;
+        }
+
+        boolean isBefore(Entry other) {
+            return licenseOrder < other.licenseOrder || (licenseOrder == other.licenseOrder && variantOrder < other.variantOrder);
+        }
+    }
+
+    private static class Candidate {
+        private final Entry entry;
+        private final int commonGrams;
+        private final double similarity;
+
+        Candidate(Entry entry, int commonGrams, double similarity) {
+            this.entry = entry;
+            this.commonGrams = commonGrams;
+            this.similarity = similarity;
+        }
+    }
+
+    private static final Comparator<Entry> LENGTH_ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry o1, Entry o2) {
+            return Integer.compare(o1.text.length(), o2.text.length());
+        }
+    };
+
+    private static final Comparator<Candidate> SIMILARITY_ORDER = new Comparator<Candidate>() {
+        @Override
+        public int compare(Candidate o1, Candidate o2) {
+            return Double.compare(o2.similarity, o1.similarity);
+        }
+    };
+
+    private final Map<String, Integer> licenseOrders = new HashMap<>();
+    // sorted by text length
+    private volatile Entry[] entries;
+
+    ClosestLicenseIndex(Collection<KnownLicense> knownLicenses) {
+        List<Entry> initialEntries = new ArrayList<>();
+        for (KnownLicense knownLicense : knownLicenses) {
+            addEntries(knownLicense, initialEntries);
+        }
+        entries = sortByLength(initialEntries);
+    }
+
+    /**
+     * Adds a license to look for, replacing the variants of any license with the same id which keeps its place in
+     * the order of the licenses.
+     */
+    synchronized void addLicense(KnownLicense knownLicense) {
+        List<Entry> newEntries = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (!entry.knownLicense.getId().equals(knownLicense.getId())) {
+                newEntries.add(entry);
+            }
+        }
+        addEntries(knownLicense, newEntries);
+        entries = sortByLength(newEntries);
+    }
+
+    /**
+     * @return the license with the variant closest to the text, or null if none is within the threshold
+     */
+    KnownLicense findClosestLicense(String text, int threshold) {
+        Entry[] currentEntries = entries;
+        int first = getFirstEntryIndex(currentEntries, text.length() - threshold);
+        int last = getFirstEntryIndex(currentEntries, text.length() + threshold + 1);
+        if (first == last) {
+            return null;
+        }
+
+        long[] textGrams = getGrams(text);
+        List<Candidate> candidates = new ArrayList<>();
+        for (int i = first; i < last; i++) {
+            Entry entry = currentEntries[i];
+            long[] entryGrams = entry.getGrams();
+            int commonGrams = countCommonGrams(textGrams, entryGrams);
+            if (commonGrams < getMinCommonGrams(text, entry, threshold)) {
+                continue;
+            }
+            double similarity = (double) commonGrams / (textGrams.length + entryGrams.length - commonGrams);
+            candidates.add(new Candidate(entry, commonGrams, similarity));
+        }
+        Collections.sort(candidates, SIMILARITY_ORDER);
+
+        Entry closestEntry = null;
+        int smallestEditDistance = threshold;
+        for (Candidate candidate : candidates) {
+            if (candidate.commonGrams < getMinCommonGrams(text, candidate.entry, smallestEditDistance)) {
+                continue;
+            }
+            int editDistance = EditDistance.getLevenshteinDistance(candidate.entry.text, text, smallestEditDistance);
+            if (editDistance < 0) {
+                continue;
+            }
+            if (closestEntry == null || editDistance < smallestEditDistance ||
+                    candidate.entry.isBefore(closestEntry)) {
+                closestEntry = candidate.entry;
+                smallestEditDistance = editDistance;
+            }
+        }
+        return closestEntry != null ? closestEntry.knownLicense : null;
+    }
+
+    private static int getMinCommonGrams(String text, Entry entry, int threshold) {
+        return Math.max(text.length(), entry.text.length()) - GRAM_SIZE + 1 - GRAM_SIZE * threshold;
+    }
+
+    /**
+     * @return the index of the first entry with a text at least as long as the given length
+     */
+    private static int getFirstEntryIndex(Entry[] entries, int length) {
+        int low = 0;
+        int high = entries.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (entries[middle].text.length() < length) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the sorted trigrams of the text, each one packed in a long, with as many occurrences as in the text
+     */
+    private static long[] getGrams(String text) {
+        long[] grams = new long[Math.max(0, text.length() - GRAM_SIZE + 1)];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+        }
+        Arrays.sort(grams);
+        return grams;
+    }
+
+    private static int countCommonGrams(long[] grams1, long[] grams2) {
+        int commonGrams = 0;
+        int i = 0;
+        int j = 0;
+        while (i < grams1.length && j < grams2.length) {
+            if (grams1[i] < grams2[j]) {
+                i++;
+            } else if (grams1[i] > grams2[j]) {
+                j++;
+            } else {
+                commonGrams++;
+                i++;
+                j++;
+            }
+        }
+        return commonGrams;
+    }
+
+    private static Entry[] sortByLength(List<Entry> entryList) {
+        Entry[] sortedEntries = entryList.toArray(new Entry[entryList.size()]);
+        Arrays.sort(sortedEntries, LENGTH_ORDER);
+        return sortedEntries;
+    }
+
+    private void addEntries(KnownLicense knownLicense, List<Entry> entryList) {
+        Integer licenseOrder = licenseOrders.get(knownLicense.getId());
+        if (licenseOrder == null) {
+            licenseOrder = licenseOrders.size();
+            licenseOrders.put(knownLicense.getId(), licenseOrder);
+        }
+        int variantOrder = 0;
+        for (TextVariant textVariant : knownLicense.getTextVariants()) {
+            if (textVariant.getText() != null) {
+                entryList.add(new Entry(knownLicense, textVariant.getText(), licenseOrder, variantOrder));
+            }
+            variantOrder++;
+        }
+    }
+}
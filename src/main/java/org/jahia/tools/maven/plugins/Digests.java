@@ -0,0 +1,45 @@
+package org.jahia.tools.maven.plugins;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Helpers to compute the content digests used to recognize identical archives and texts.
+ */
+final class Digests {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private Digests() {
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String digest(InputStream inputStream) throws IOException {
+        MessageDigest messageDigest = newDigest();
+        byte[] buffer = new byte[65536];
+        int bytesRead;
+        while ((bytesRead = inputStream.read(buffer)) != -1) {
+            messageDigest.update(buffer, 0, bytesRead);
+        }
+        return toHex(messageDigest.digest());
+    }
+
+    static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+        return new String(hex);
+    }
+}
@@ -0,0 +1,147 @@
+package org.jahia.tools.maven.plugins;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Levenshtein edit distance computed with Myers' bit-parallel algorithm, in the multi-word form given by Hyyrö, so
+ * that each character of one text is compared with 64 characters of the other at once. This makes the distance
+ * between two license texts of several tens of kilobytes affordable where the classic dynamic programming isn't.
+ */
+final class EditDistance {
+
+    private EditDistance() {
+    }
+
+    /**
+     * Same contract as the commons-lang StringUtils.getLevenshteinDistance(CharSequence, CharSequence, int) method.
+     *
+     * @return the edit distance between the two texts if it is less than or equal to the threshold, -1 otherwise
+     */
+    static int getLevenshteinDistance(CharSequence s, CharSequence t, int threshold) {
+        if (s == null || t == null) {
+            throw new IllegalArgumentException("Strings must not be null");
+        }
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Threshold must not be negative");
+        }
+        // the bit vectors are built for the shortest text
+        CharSequence pattern = s.length() <= t.length() ? s : t;
+        CharSequence text = s.length() <= t.length() ? t : s;
+        int m = pattern.length();
+        int n = text.length();
+        if (n - m > threshold) {
+            return -1;
+        }
+        if (m == 0) {
+            return n;
+        }
+
+        if (getCharacterCountsLowerBound(pattern, text) > threshold) {
+            return -1;
+        }
+
+        int words = (m + 63) / 64;
+        long[][] asciiMasks = new long[128][];
+        Map<Character, long[]> otherMasks = new HashMap<>();
+        for (int i = 0; i < m; i++) {
+            char c = pattern.charAt(i);
+            long[] mask = getMask(c, asciiMasks, otherMasks);
+            if (mask == null) {
+                mask = new long[words];
+                if (c < asciiMasks.length) {
+                    asciiMasks[c] = mask;
+                } else {
+                    otherMasks.put(c, mask);
+                }
+            }
+            mask[i / 64] |= 1L << (i % 64);
+        }
+        long[] noMatchMask = new long[words];
+
+        // Only the rows of the band of cells that can be on a path costing no more than the threshold are computed:
+        // a cell at row r and column c costs at least |r - c| to reach and |(m - r) - (n - c)| to leave.
+        int lengthDifference = n - m;
+        int bandAbove = (threshold + lengthDifference) / 2;
+        int bandBelow = (threshold - lengthDifference) / 2;
+
+        long[] vp = new long[words];
+        long[] vn = new long[words];
+        // the distances at the last row of each block, only meaningful for the blocks of the band
+        int[] scores = new int[words];
+        long lastBit = 1L << ((m - 1) % 64);
+        int firstBlock = 0;
+        int lastBlock = -1;
+        for (int column = 1; column <= n; column++) {
+            int lastBandBlock = (Math.min(m, column + bandBelow) - 1) / 64;
+            while (lastBlock < lastBandBlock) {
+                // the rows entering the band are initialized as if each of them cost one more than the previous one,
+                // which is never below their real distance
+                lastBlock++;
+                vp[lastBlock] = -1L;
+                vn[lastBlock] = 0;
+                int blockRows = lastBlock < words - 1 ? 64 : m - lastBlock * 64;
+                scores[lastBlock] = (lastBlock > 0 ? scores[lastBlock - 1] : column - 1) + blockRows;
+            }
+            firstBlock = Math.max(firstBlock, (Math.max(1, column - bandAbove) - 1) / 64);
+
+            long[] mask = getMask(text.charAt(column - 1), asciiMasks, otherMasks);
+            if (mask == null) {
+                mask = noMatchMask;
+            }
+            // the row above the band, like the first row of the distance matrix, increases by one at each column
+            long hpCarry = 1;
+            long hnCarry = 0;
+            for (int word = firstBlock; word <= lastBlock; word++) {
+                long x = mask[word] | hnCarry;
+                long d0 = (((x & vp[word]) + vp[word]) ^ vp[word]) | x | vn[word];
+                long hp = vn[word] | ~(d0 | vp[word]);
+                long hn = d0 & vp[word];
+                long hpCarryIn = hpCarry;
+                long hnCarryIn = hnCarry;
+                if (word < words - 1) {
+                    hpCarry = hp >>> 63;
+                    hnCarry = hn >>> 63;
+                } else {
+                    hpCarry = (hp & lastBit) != 0 ? 1 : 0;
+                    hnCarry = (hn & lastBit) != 0 ? 1 : 0;
+                }
+                hp = (hp << 1) | hpCarryIn;
+                hn = (hn << 1) | hnCarryIn;
+                vp[word] = hn | ~(d0 | hp);
+                vn[word] = hp & d0;
+                scores[word] += hpCarry - hnCarry;
+            }
+        }
+        int distance = scores[words - 1];
+        return distance <= threshold ? distance : -1;
+    }
+
+    /**
+     * Each edit changes the count of at most one character in each direction, so the number of characters missing
+     * from one of the texts compared to the other is a lower bound of the distance.
+     */
+    private static int getCharacterCountsLowerBound(CharSequence s, CharSequence t) {
+        int[] characterCounts = new int[Character.MAX_VALUE + 1];
+        for (int i = 0; i < s.length(); i++) {
+            characterCounts[s.charAt(i)]++;
+        }
+        for (int i = 0; i < t.length(); i++) {
+            characterCounts[t.charAt(i)]--;
+        }
+        int missingFromT = 0;
+        int missingFromS = 0;
+        for (int characterCount : characterCounts) {
+            if (characterCount > 0) {
+                missingFromT += characterCount;
+            } else {
+                missingFromS -= characterCount;
+            }
+        }
+        return Math.max(missingFromT, missingFromS);
+    }
+
+    private static long[] getMask(char c, long[][] asciiMasks, Map<Character, long[]> otherMasks) {
+        return c < asciiMasks.length ? asciiMasks[c] : otherMasks.get(c);
+    }
+}
@@ -0,0 +1,36 @@
+package org.jahia.tools.maven.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An archive source reading an archive file with positional reads on its channel.
+ */
+class FileArchiveSource implements ArchiveSource {
+
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel fileChannel;
+
+    FileArchiveSource(File file) throws IOException {
+        this.randomAccessFile = new RandomAccessFile(file, "r");
+        this.fileChannel = randomAccessFile.getChannel();
+    }
+
+    @Override
+    public long size() throws IOException {
+        return fileChannel.size();
+    }
+
+    @Override
+    public int read(long position, byte[] buffer, int offset, int length) throws IOException {
+        return fileChannel.read(ByteBuffer.wrap(buffer, offset, length), position);
+    }
+
+    @Override
+    public void close() throws IOException {
+        randomAccessFile.close();
+    }
+}
@@ -1,6 +1,5 @@
 package org.jahia.tools.maven.plugins;
 
-import javax.xml.bind.annotation.XmlTransient;
 import java.util.*;
 
 /**
@@ -12,17 +11,22 @@ public class JarMetadata implements Comparable<JarMetadata> {
     String version;
     String project;
     String classifier = null;
-    byte[] jarContents = null;
+    JarScan jarScan = null;
     String inceptionYear = null;
     String projectUrl = null;
     String organizationName = null;
     String organizationUrl = null;
+    String digest = null;
+    SortedSet<String> duplicatePaths = new TreeSet<String>();
 
     SortedSet<JarMetadata> embeddedJars = new TreeSet<JarMetadata>();
     SortedSet<String> packages = new TreeSet<String>();
     Map<String,LicenseFile> licenseFiles = new TreeMap<>();
     Map<String,Notice> noticeFiles = new TreeMap<>();
 
+    public JarMetadata() {
+    }
+
     public JarMetadata(String fullPath, String name, String version, String classifier) {
         this.fullPath = fullPath;
         this.name = name;
@@ -152,13 +156,12 @@ public class JarMetadata implements Comparable<JarMetadata> {
         return classifier;
     }
 
-    @XmlTransient
-    public byte[] getJarContents() {
-        return jarContents;
+    JarScan getJarScan() {
+        return jarScan;
     }
 
-    public void setJarContents(byte[] jarContents) {
-        this.jarContents = jarContents;
+    void setJarScan(JarScan jarScan) {
+        this.jarScan = jarScan;
     }
 
     public Map<String, LicenseFile> getLicenseFiles() {
@@ -233,6 +236,22 @@ public class JarMetadata implements Comparable<JarMetadata> {
         this.organizationUrl = organizationUrl;
     }
 
+    public String getDigest() {
+        return digest;
+    }
+
+    public void setDigest(String digest) {
+        this.digest = digest;
+    }
+
+    public SortedSet<String> getDuplicatePaths() {
+        return duplicatePaths;
+    }
+
+    public void setDuplicatePaths(SortedSet<String> duplicatePaths) {
+        this.duplicatePaths = duplicatePaths;
+    }
+
     @Override
     public int compareTo(JarMetadata o) {
         return toString().compareTo(o.toString());
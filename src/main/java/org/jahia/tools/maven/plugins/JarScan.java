@@ -0,0 +1,124 @@
+package org.jahia.tools.maven.plugins;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * The raw legal content read from a single JAR: notices, licenses, the Maven POM and properties, the machine-readable
+ * license declarations of the manifest, the list of packages and the scans of the embedded JARs. A scan doesn't touch any shared state so it may be built on any thread, it is then processed by the
+ * aggregator in the order the JARs were found.
+ */
+class JarScan {
+
+    enum EntryType {
+        NOTICE,
+        LICENSE,
+        EMBEDDED_JAR,
+        POM,
+        POM_PROPERTIES,
+        CLASS
+    }
+
+    static class Entry {
+        private final EntryType type;
+        private final String name;
+        private final String text;
+        private final JarScan embeddedJarScan;
+
+        Entry(EntryType type, String name, String text, JarScan embeddedJarScan) {
+            this.type = type;
+            this.name = name;
+            this.text = text;
+            this.embeddedJarScan = embeddedJarScan;
+        }
+
+        EntryType getType() {
+            return type;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        String getText() {
+            return text;
+        }
+
+        JarScan getEmbeddedJarScan() {
+            return embeddedJarScan;
+        }
+    }
+
+    private final String jarFilePath;
+    private String bundleLicense;
+    private String spdxLicenseIdentifier;
+    private String pomFilePath;
+    private byte[] pomContents;
+    private final List<Properties> pomProperties = new ArrayList<>();
+    private final List<Entry> entries = new ArrayList<>();
+    private final SortedSet<String> packages = new TreeSet<>();
+
+    JarScan(String jarFilePath) {
+        this.jarFilePath = jarFilePath;
+    }
+
+    String getJarFilePath() {
+        return jarFilePath;
+    }
+
+    String getBundleLicense() {
+        return bundleLicense;
+    }
+
+    void setBundleLicense(String bundleLicense) {
+        this.bundleLicense = bundleLicense;
+    }
+
+    String getSpdxLicenseIdentifier() {
+        return spdxLicenseIdentifier;
+    }
+
+    void setSpdxLicenseIdentifier(String spdxLicenseIdentifier) {
+        this.spdxLicenseIdentifier = spdxLicenseIdentifier;
+    }
+
+    String getPomFilePath() {
+        return pomFilePath;
+    }
+
+    byte[] getPomContents() {
+        return pomContents;
+    }
+
+    void setPom(String pomFilePath, byte[] pomContents) {
+        this.pomFilePath = pomFilePath;
+        this.pomContents = pomContents;
+    }
+
+    List<Properties> getPomProperties() {
+        return pomProperties;
+    }
+
+    void addPomProperties(Properties properties) {
+        pomProperties.add(properties);
+    }
+
+    List<Entry> getEntries() {
+        return entries;
+    }
+
+    void addEntry(EntryType type, String name, String text) {
+        entries.add(new Entry(type, name, text, null));
+    }
+
+    void addEmbeddedJar(String name, JarScan embeddedJarScan) {
+        entries.add(new Entry(EntryType.EMBEDDED_JAR, name, null, embeddedJarScan));
+    }
+
+    SortedSet<String> getPackages() {
+        return packages;
+    }
+}
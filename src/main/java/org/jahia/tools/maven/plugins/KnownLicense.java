@@ -1,6 +1,8 @@
 package org.jahia.tools.maven.plugins;
 
 import javax.xml.bind.annotation.XmlRootElement;
+import java.io.IOException;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
@@ -16,6 +18,8 @@ public class KnownLicense {
 
     private String name;
     private Set<String> aliases = new TreeSet<>();
+    private String spdxId;
+    private Set<String> urls = new TreeSet<>();
 
     private String version;
     private boolean viral;
@@ -23,6 +27,11 @@ public class KnownLicense {
     private List<TextVariant> textVariants = new ArrayList<>();
 
     private String textToUse;
+    // where the text to use is read from when it is first needed
+    private TextLocation textToUseLocation;
+    // the fingerprint of the text to use, precompiled or computed when first needed
+    private long[] textToUseShingles;
+    private boolean textToUseShinglesKnown = false;
 
     KnownLicense() {
     }
@@ -51,6 +60,22 @@ public class KnownLicense {
         this.aliases = aliases;
     }
 
+    public String getSpdxId() {
+        return spdxId;
+    }
+
+    public void setSpdxId(String spdxId) {
+        this.spdxId = spdxId;
+    }
+
+    public Set<String> getUrls() {
+        return urls;
+    }
+
+    public void setUrls(Set<String> urls) {
+        this.urls = urls;
+    }
+
     public String getVersion() {
         return version;
     }
@@ -75,11 +100,61 @@ public class KnownLicense {
         this.textVariants = textVariants;
     }
 
-    public String getTextToUse() {
+    public synchronized String getTextToUse() {
+        if (textToUseLocation != null) {
+            try {
+                textToUse = textToUseLocation.read();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            textToUseLocation = null;
+        }
         return textToUse;
     }
 
-    public void setTextToUse(String textToUse) {
+    public synchronized void setTextToUse(String textToUse) {
         this.textToUse = textToUse;
+        this.textToUseLocation = null;
+        resetTextToUseShingles();
+    }
+
+    /**
+     * The text to use will only be read when it is first needed, until then the current one is kept.
+     */
+    synchronized void loadTextToUseFrom(URL textToUseLocation) {
+        loadTextToUseFrom(new TextLocation(textToUseLocation));
+    }
+
+    /**
+     * The text to use will only be read when it is first needed, until then the current one is kept.
+     */
+    synchronized void loadTextToUseFrom(TextLocation textToUseLocation) {
+        this.textToUseLocation = textToUseLocation;
+        resetTextToUseShingles();
+    }
+
+    /**
+     * @return the distinct shingle hashes of the text to use, see {@link LicenseFingerprintIndex#getShingles(String)},
+     * or null if there is no text to use
+     */
+    synchronized long[] getTextToUseShingles() {
+        if (!textToUseShinglesKnown) {
+            textToUseShingles = getTextToUse() != null ? LicenseFingerprintIndex.getShingles(getTextToUse()) : null;
+            textToUseShinglesKnown = true;
+        }
+        return textToUseShingles;
+    }
+
+    /**
+     * Sets the precompiled fingerprint of the text to use, so that the text isn't read to recognize the license.
+     */
+    synchronized void setTextToUseShingles(long[] textToUseShingles) {
+        this.textToUseShingles = textToUseShingles;
+        this.textToUseShinglesKnown = true;
+    }
+
+    private void resetTextToUseShingles() {
+        textToUseShingles = null;
+        textToUseShinglesKnown = false;
     }
 }
@@ -0,0 +1,357 @@
+package org.jahia.tools.maven.plugins;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.jaxb.JaxbAnnotationModule;
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Reads and writes the known licenses database. The editable source is the known-licenses.json file along with the
+ * text files of the known-licenses directory, which the plugin build precompiles into a single binary resource, so
+ * that running the plugin only reads that resource instead of parsing the JSON file and looking up dozens of text
+ * files. The JSON source is still read when the precompiled database is missing, such as when running from an IDE
+ * that doesn't run the build.
+ *
+ * The precompiled database starts with an index holding the licenses along with what is derived from their texts: the
+ * length and anchor phrases of each variant, the fingerprint of each text to use and the tables of the name index. The
+ * texts follow the index and the index only holds their offsets, so that they are only read when first needed, as when
+ * they come from the text files.
+ */
+final class KnownLicensesDatabase {
+
+    static final String JSON_RESOURCE = "known-licenses.json";
+    static final String PRECOMPILED_RESOURCE = "known-licenses.bin";
+
+    private static final int MAGIC = 0x4b4c4442;
+    // to be increased whenever the binary format changes
+    private static final int FORMAT_VERSION = 3;
+    // the magic number, the format version and the length of the index
+    private static final int HEADER_SIZE = 12;
+
+    /**
+     * The known licenses read from the precompiled database along with their precompiled name index.
+     */
+    static final class Precompiled {
+        private final KnownLicenses knownLicenses;
+        private final LicenseNameIndex licenseNameIndex;
+
+        Precompiled(KnownLicenses knownLicenses, LicenseNameIndex licenseNameIndex) {
+            this.knownLicenses = knownLicenses;
+            this.licenseNameIndex = licenseNameIndex;
+        }
+
+        KnownLicenses getKnownLicenses() {
+            return knownLicenses;
+        }
+
+        LicenseNameIndex getLicenseNameIndex() {
+            return licenseNameIndex;
+        }
+    }
+
+    private KnownLicensesDatabase() {
+    }
+
+    /**
+     * Precompiles the known licenses database, run by the plugin build.
+     *
+     * @param args the directory containing the known-licenses.json file and the known-licenses directory, and the
+     *             file the precompiled database is written to
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            // run in the build's JVM, which mustn't be exited
+            throw new IllegalArgumentException("Usage: KnownLicensesDatabase <known licenses source directory> <precompiled database file>");
+        }
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new JaxbAnnotationModule());
+        URLClassLoader sourceClassLoader = new URLClassLoader(new URL[]{new File(args[0]).toURI().toURL()}, null);
+        try {
+            List<URL> sourceResources = new ArrayList<>();
+            KnownLicenses knownLicenses = readJson(mapper, sourceClassLoader, sourceResources);
+            if (sourceResources.isEmpty()) {
+                throw new FileNotFoundException("No " + JSON_RESOURCE + " found in " + args[0]);
+            }
+            File precompiledFile = new File(args[1]);
+            precompiledFile.getParentFile().mkdirs();
+            write(knownLicenses, precompiledFile);
+            System.out.println("Precompiled " + knownLicenses.getLicenses().size() + " known licenses from " +
+                    sourceResources.size() + " files into " + precompiledFile.getPath());
+        } finally {
+            sourceClassLoader.close();
+        }
+    }
+
+    /**
+     * Reads the JSON known licenses database, leaving the texts to be read from their files when first needed.
+     *
+     * @param resources the list the resources the database is made of are added to
+     */
+    static KnownLicenses readJson(ObjectMapper mapper, ClassLoader classLoader, List<URL> resources) {
+        KnownLicenses knownLicenses = new KnownLicenses();
+        URL knownLicensesJSONURL = classLoader.getResource(JSON_RESOURCE);
+        if (knownLicensesJSONURL != null) {
+            resources.add(knownLicensesJSONURL);
+            try {
+                knownLicenses = mapper.readValue(knownLicensesJSONURL, KnownLicenses.class);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        for (KnownLicense knownLicense : knownLicenses.getLicenses().values()) {
+            for (TextVariant textVariant : knownLicense.getTextVariants()) {
+                URL textVariantURL = classLoader.getResource("known-licenses/" + knownLicense.getId() + "/variants/" + textVariant.getId() + ".txt");
+                if (textVariantURL != null) {
+                    textVariant.loadTextFrom(textVariantURL);
+                    resources.add(textVariantURL);
+                }
+            }
+            knownLicense.setTextVariants(knownLicense.getTextVariants());
+            if (knownLicense.getTextToUse() != null && knownLicense.getTextToUse().startsWith("classpath:")) {
+                String textToUseLocation = knownLicense.getTextToUse().substring("classpath:".length());
+                URL textToUseURL = classLoader.getResource("known-licenses/" + knownLicense.getId() + "/" + textToUseLocation);
+                if (textToUseURL != null) {
+                    knownLicense.loadTextToUseFrom(textToUseURL);
+                    resources.add(textToUseURL);
+                }
+            }
+        }
+        return knownLicenses;
+    }
+
+    /**
+     * Reads the precompiled known licenses database, leaving the texts to be read from it when first needed.
+     */
+    static Precompiled readPrecompiled(URL precompiledURL) throws IOException {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(precompiledURL.openStream(), 65536));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unsupported precompiled known licenses database format in " + precompiledURL);
+            }
+            // the texts follow the index
+            long textsOffset = HEADER_SIZE + in.readInt();
+            int licenseCount = in.readInt();
+            Map<String, KnownLicense> licenses = new LinkedHashMap<>();
+            for (int i = 0; i < licenseCount; i++) {
+                KnownLicense knownLicense = new KnownLicense();
+                knownLicense.setId(readString(in));
+                knownLicense.setName(readString(in));
+                knownLicense.setAliases(readStringSet(in));
+                knownLicense.setSpdxId(readString(in));
+                knownLicense.setUrls(readStringSet(in));
+                knownLicense.setVersion(readString(in));
+                knownLicense.setViral(in.readBoolean());
+                int textVariantCount = in.readInt();
+                List<TextVariant> textVariants = new ArrayList<>(textVariantCount);
+                for (int j = 0; j < textVariantCount; j++) {
+                    TextVariant textVariant = new TextVariant();
+                    textVariant.setId(readString(in));
+                    textVariant.setDefaultVariant(in.readBoolean());
+                    TextLocation textLocation = readTextLocation(in, precompiledURL, textsOffset);
+                    int textLength = in.readInt();
+                    List<String> anchorPhrases = readStrings(in);
+                    boolean formattingVariant = in.readBoolean();
+                    if (textLocation != null) {
+                        textVariant.loadTextFrom(textLocation);
+                        textVariant.setPrecompiledData(textLength, anchorPhrases, formattingVariant);
+                    }
+                    textVariants.add(textVariant);
+                }
+                knownLicense.setTextVariants(textVariants);
+                TextLocation textToUseLocation = readTextLocation(in, precompiledURL, textsOffset);
+                long[] textToUseShingles = readLongs(in);
+                if (textToUseLocation != null) {
+                    knownLicense.loadTextToUseFrom(textToUseLocation);
+                    knownLicense.setTextToUseShingles(textToUseShingles);
+                }
+                licenses.put(knownLicense.getId(), knownLicense);
+            }
+            KnownLicenses knownLicenses = new KnownLicenses();
+            knownLicenses.setLicenses(licenses);
+            LicenseNameIndex licenseNameIndex = new LicenseNameIndex(knownLicenses, readStringMap(in), readStringMap(in), readStringMap(in));
+            return new Precompiled(knownLicenses, licenseNameIndex);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    static void write(KnownLicenses knownLicenses, File precompiledFile) throws IOException {
+        // the index is written first as it holds the offsets of the texts
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        DataOutputStream indexOut = new DataOutputStream(index);
+        ByteArrayOutputStream texts = new ByteArrayOutputStream();
+        indexOut.writeInt(knownLicenses.getLicenses().size());
+        for (KnownLicense knownLicense : knownLicenses.getLicenses().values()) {
+            writeString(indexOut, knownLicense.getId());
+            writeString(indexOut, knownLicense.getName());
+            writeStrings(indexOut, knownLicense.getAliases());
+            writeString(indexOut, knownLicense.getSpdxId());
+            writeStrings(indexOut, knownLicense.getUrls());
+            writeString(indexOut, knownLicense.getVersion());
+            indexOut.writeBoolean(knownLicense.isViral());
+            indexOut.writeInt(knownLicense.getTextVariants().size());
+            for (TextVariant textVariant : knownLicense.getTextVariants()) {
+                writeString(indexOut, textVariant.getId());
+                indexOut.writeBoolean(textVariant.isDefaultVariant());
+                writeText(indexOut, texts, textVariant.getText());
+                indexOut.writeInt(textVariant.getText() != null ? textVariant.getText().length() : -1);
+                writeStrings(indexOut, textVariant.getText() != null ? textVariant.getAnchorPhrases() : null);
+                indexOut.writeBoolean(textVariant.isFormattingVariant(knownLicense.getTextToUseShingles()));
+            }
+            writeText(indexOut, texts, knownLicense.getTextToUse());
+            writeLongs(indexOut, knownLicense.getTextToUseShingles());
+        }
+        LicenseNameIndex licenseNameIndex = new LicenseNameIndex(knownLicenses);
+        writeStringMap(indexOut, licenseNameIndex.getLicenseIdsByName());
+        writeStringMap(indexOut, licenseNameIndex.getLicenseIdsByNormalizedName());
+        writeStringMap(indexOut, licenseNameIndex.getLicenseIdsByUrl());
+        indexOut.close();
+
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(precompiledFile), 65536));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(index.size());
+            index.writeTo(out);
+            texts.writeTo(out);
+            out.close();
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    /**
+     * Appends the text to the texts section and writes its offset in the section and its length in the index.
+     */
+    private static void writeText(DataOutputStream indexOut, ByteArrayOutputStream texts, String text) throws IOException {
+        if (text == null) {
+            indexOut.writeInt(-1);
+            return;
+        }
+        byte[] bytes = text.getBytes("UTF-8");
+        indexOut.writeInt(texts.size());
+        indexOut.writeInt(bytes.length);
+        texts.write(bytes);
+    }
+
+    private static TextLocation readTextLocation(DataInputStream in, URL precompiledURL, long textsOffset) throws IOException {
+        int offset = in.readInt();
+        if (offset < 0) {
+            return null;
+        }
+        return new TextLocation(precompiledURL, textsOffset + offset, in.readInt());
+    }
+
+    // DataOutputStream.writeUTF is limited to 64KB, which some license texts exceed
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static void writeStrings(DataOutputStream out, Collection<String> values) throws IOException {
+        if (values == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(values.size());
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            return null;
+        }
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(readString(in));
+        }
+        return values;
+    }
+
+    private static Set<String> readStringSet(DataInputStream in) throws IOException {
+        List<String> values = readStrings(in);
+        return values != null ? new LinkedHashSet<>(values) : null;
+    }
+
+    private static void writeLongs(DataOutputStream out, long[] values) throws IOException {
+        if (values == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(values.length);
+        for (long value : values) {
+            out.writeLong(value);
+        }
+    }
+
+    private static long[] readLongs(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            return null;
+        }
+        long[] values = new long[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = in.readLong();
+        }
+        return values;
+    }
+
+    private static void writeStringMap(DataOutputStream out, Map<String, String> values) throws IOException {
+        // sorted so that the same database is always written the same way
+        Map<String, String> sortedValues = new TreeMap<>(values);
+        out.writeInt(sortedValues.size());
+        for (Map.Entry<String, String> value : sortedValues.entrySet()) {
+            writeString(out, value.getKey());
+            writeString(out, value.getValue());
+        }
+    }
+
+    private static Map<String, String> readStringMap(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Map<String, String> values = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            values.put(readString(in), readString(in));
+        }
+        return values;
+    }
+}
@@ -14,37 +14,36 @@ import org.apache.maven.model.Parent;
 import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
 import org.apache.maven.scm.manager.ScmManager;
 import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+import org.eclipse.aether.DefaultRepositorySystemSession;
 import org.eclipse.aether.RepositorySystem;
 import org.eclipse.aether.RepositorySystemSession;
 import org.eclipse.aether.artifact.Artifact;
 import org.eclipse.aether.artifact.DefaultArtifact;
 import org.eclipse.aether.repository.RemoteRepository;
-import org.eclipse.aether.resolution.ArtifactRequest;
 import org.eclipse.aether.resolution.ArtifactResolutionException;
 import org.eclipse.aether.resolution.ArtifactResult;
 import org.glassfish.jersey.client.ClientProperties;
 
 import javax.net.ssl.*;
-import javax.ws.rs.ProcessingException;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
-import javax.ws.rs.client.Invocation;
-import javax.ws.rs.client.WebTarget;
-import javax.ws.rs.core.MediaType;
-import javax.ws.rs.core.Response;
 import java.io.*;
 import java.io.ByteArrayOutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLConnection;
 import java.security.KeyManagementException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.X509Certificate;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 import java.util.jar.JarInputStream;
 import java.util.jar.Manifest;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.ZipException;
 
 /**
  * Created by loom on 29.01.16.
@@ -58,42 +57,100 @@ class LegalArtifactAggregator {
     private final File scanDirectory;
     private final File outputDirectory;
 
-    private static Map<String,Client> clients = new TreeMap<String,Client>();
-    public static final String MAVEN_SEARCH_HOST_URL = "http://search.maven.org";
+    private static ConcurrentMap<String,Client> clients = new ConcurrentHashMap<String,Client>();
     public static final String NETWORK_ERROR_PREFIX = "NETWORK ERROR: ";
+    private static final String SPDX_LICENSE_IDENTIFIER = "SPDX-License-Identifier";
+    // license and notice entries larger than this are ignored
+    private static final int MAX_TEXT_ENTRY_SIZE = 8 * 1024 * 1024;
 
     private final RepositorySystem repositorySystem;
     private final RepositorySystemSession repositorySystemSession;
     private final List<RemoteRepository> remoteRepositories;
     private final ScmManager scmManager;
 
-    private final Map<KnownLicense, SortedSet<LicenseFile>> knownLicensesFound = new HashMap<>();
-    private final List<String> missingLicenses = new LinkedList<>();
+    private final ConcurrentMap<KnownLicense, SortedSet<LicenseFile>> knownLicensesFound = new ConcurrentSkipListMap<>(new Comparator<KnownLicense>() {
+        @Override
+        public int compare(KnownLicense o1, KnownLicense o2) {
+            return o1.getId().compareTo(o2.getId());
+        }
+    });
+    private final List<String> missingLicenses = Collections.synchronizedList(new LinkedList<String>());
+    private final List<String> timedOutLicenseFiles = Collections.synchronizedList(new LinkedList<String>());
 
-    private final List<String> duplicatedNotices = new LinkedList<>();
-    private final List<String> missingNotices = new LinkedList<>();
+    private final List<String> duplicatedNotices = Collections.synchronizedList(new LinkedList<String>());
+    private final List<String> missingNotices = Collections.synchronizedList(new LinkedList<String>());
 
-    private final SortedMap<String,JarMetadata> jarDatabase = new TreeMap<>();
+    private final ConcurrentNavigableMap<String,JarMetadata> jarDatabase = new ConcurrentSkipListMap<>();
 
     private final boolean verbose;
     private final boolean outputDiagnostics;
+    private final int scanThreads;
+    private final long memoryMappedArchiveThreshold;
+    private final long inMemoryEmbeddedJarThreshold;
+    private final Set<String> containerArchiveExtensions;
+    private final boolean licenseFingerprintMatching;
+    private final boolean trustMachineReadableLicenses;
+    private final boolean auditMachineReadableLicenses;
+    private final long licenseMatchTimeout;
+    private final long licenseMatchCharacterBudget;
+    private final boolean offline;
+    private final MavenCentralSearch mavenCentralSearch;
+    private final ArtifactResolver artifactResolver;
+    private final LicenseDownloader licenseDownloader;
+    // sources JAR lookups done because the binary JAR lacked a license or notice, and the ones avoided
+    private int neededSourcesJars = 0;
+    private int avoidedSourcesJars = 0;
+    // the remote lookups that couldn't be done in offline mode, each one only being tried and reported once
+    private final Set<String> offlineMisses = Collections.synchronizedSet(new LinkedHashSet<String>());
+    private ScanCache scanCache = null;
+    // results of the JAR being processed that will be stored in the scan cache, only accessed by the processing thread
+    private ScanCacheEntry currentScanCacheEntry = null;
+    // texts of the additional license terms created so far, as they take part in recognizing the licenses of the next JARs
+    private final SortedMap<String, String> additionalTermsLicenseTexts = new TreeMap<>();
     private final boolean updateKnownLicenses = true;
 
     private Set<String> forbiddenKeyWords = new HashSet<>();
 
     KnownLicenses knownLicenses = null;
+    LicenseMatcher licenseMatcher = null;
+    LicenseNameIndex licenseNameIndex = null;
+    // only built when looking for the closest license for the first time
+    private ClosestLicenseIndex closestLicenseIndex = null;
+    // the resources the known licenses are read from
+    private final List<URL> knownLicensesResources = new ArrayList<>();
     ObjectMapper mapper = new ObjectMapper();
 
     LegalArtifactAggregator(File scanDirectory, File outputDirectory, RepositorySystem repositorySystem, RepositorySystemSession repositorySystemSession, List<RemoteRepository> remoteRepositories, ScmManager scmManager,
-                            boolean verbose, boolean outputDiagnostics) {
+                            boolean verbose, boolean outputDiagnostics, AggregationSettings settings) {
+        boolean offline = settings.isOffline();
         this.scanDirectory = scanDirectory;
         this.outputDirectory = outputDirectory;
         this.repositorySystem = repositorySystem;
-        this.repositorySystemSession = repositorySystemSession;
+        // the artifacts already downloaded from the remote repositories remain available from the local one
+        this.repositorySystemSession = offline ? new DefaultRepositorySystemSession(repositorySystemSession).setOffline(true) : repositorySystemSession;
         this.remoteRepositories = remoteRepositories;
         this.scmManager = scmManager;
         this.verbose = verbose;
         this.outputDiagnostics = outputDiagnostics;
+        this.scanThreads = settings.getScanThreads() > 0 ? settings.getScanThreads() : Runtime.getRuntime().availableProcessors();
+        this.memoryMappedArchiveThreshold = settings.getMemoryMappedArchiveThreshold();
+        this.inMemoryEmbeddedJarThreshold = settings.getInMemoryEmbeddedJarThreshold();
+        this.containerArchiveExtensions = new HashSet<>();
+        for (String containerArchiveExtension : settings.getContainerArchiveExtensions()) {
+            this.containerArchiveExtensions.add(containerArchiveExtension.toLowerCase());
+        }
+        this.containerArchiveExtensions.remove("jar");
+        this.licenseFingerprintMatching = settings.isLicenseFingerprintMatching();
+        this.trustMachineReadableLicenses = settings.isTrustMachineReadableLicenses();
+        this.auditMachineReadableLicenses = settings.isAuditMachineReadableLicenses();
+        this.licenseMatchTimeout = settings.getLicenseMatchTimeout();
+        this.licenseMatchCharacterBudget = settings.getLicenseMatchCharacterBudget();
+        this.offline = offline;
+        this.mavenCentralSearch = new MavenCentralSearch(settings.getMavenSearchUrl(), getRestClient(settings.getMavenSearchUrl()),
+                settings.getMavenSearchThreads(), settings.getMavenSearchCacheDirectory(), settings.getMavenSearchCacheTtl(), offline);
+        this.artifactResolver = new ArtifactResolver(repositorySystem, this.repositorySystemSession, remoteRepositories, settings.getArtifactResolutionThreads());
+        this.licenseDownloader = new LicenseDownloader(settings.getLicenseDownloadCacheDirectory(), settings.getLicenseDownloadCacheTtl(),
+                settings.getLicenseDownloadTimeout(), MAX_TEXT_ENTRY_SIZE, offline);
         forbiddenKeyWords.add("gpl");
 
         JaxbAnnotationModule jaxbAnnotationModule = new JaxbAnnotationModule();
@@ -102,20 +159,41 @@ class LegalArtifactAggregator {
         mapper.enable(SerializationFeature.INDENT_OUTPUT);
 
         loadKnownLicenses();
+        if (settings.getScanCacheDirectory() != null) {
+            // recognized licenses also depend on the matching mode, audited declared licenses aren't used
+            scanCache = new ScanCache(settings.getScanCacheDirectory(), getKnownLicensesFingerprint() + (licenseFingerprintMatching ? "-fingerprints" : "") +
+                    (trustMachineReadableLicenses && !auditMachineReadableLicenses ? "-machine-readable" : ""), settings.getScanCacheTtl(), offline);
+        }
     }
 
     void execute() {
-        Collection<File> jarFiles = FileUtils.listFiles(scanDirectory, new String[]{"jar"}, true);
-        for (File jarFile : jarFiles) {
-            FileInputStream jarInputStream = null;
-            try {
-                jarInputStream = new FileInputStream(jarFile);
-                processJarFile(jarInputStream, jarFile.getPath(), null, true, 0, true, true, false);
-            } catch (IOException e) {
-                output(START_INDENT, "Error handling JAR " + jarFile.getPath() + ":" + e.getMessage() + ". This file will be ignored.", true, true);
-                e.printStackTrace();
-            } finally {
-                IOUtils.closeQuietly(jarInputStream);
+        List<String> scannedExtensions = new ArrayList<>(containerArchiveExtensions);
+        scannedExtensions.add("jar");
+        // the container archives are kept open while their JARs are being processed
+        List<ArchiveSource> containerArchiveSources = new ArrayList<>();
+        try {
+            List<JarLocation> jarLocations = new ArrayList<>();
+            for (File archiveFile : FileUtils.listFiles(scanDirectory, scannedExtensions.toArray(new String[scannedExtensions.size()]), true)) {
+                if (isContainerArchive(archiveFile.getName())) {
+                    addContainerArchiveJarLocations(archiveFile, jarLocations, containerArchiveSources);
+                } else {
+                    jarLocations.add(new JarLocation(archiveFile));
+                }
+            }
+            Map<String, List<JarLocation>> jarLocationsByDigest = getJarLocationsByDigest(jarLocations);
+            if (scanThreads > 1) {
+                scanJarsInParallel(jarLocationsByDigest);
+            } else {
+                for (List<JarLocation> identicalJarLocations : jarLocationsByDigest.values()) {
+                    JarLocation jarLocation = identicalJarLocations.get(0);
+                    String scanCacheKey = getScanCacheKey(jarLocation);
+                    processJarFile(jarLocation, scanCacheKey, getScanCacheEntry(scanCacheKey), null);
+                }
+            }
+            recordJarDigests(jarLocationsByDigest);
+        } finally {
+            for (ArchiveSource containerArchiveSource : containerArchiveSources) {
+                IOUtils.closeQuietly(containerArchiveSource);
             }
         }
 
@@ -124,6 +202,20 @@ class LegalArtifactAggregator {
             outputDiagnostics(true);
         }
 
+        if (offline) {
+            offlineMisses.addAll(mavenCentralSearch.getOfflineMisses());
+            offlineMisses.addAll(licenseDownloader.getOfflineMisses());
+            if (!offlineMisses.isEmpty()) {
+                output(START_INDENT, "The following " + offlineMisses.size() + " remote lookups were skipped in offline mode, " +
+                        "run online to complete them:", false, true);
+                synchronized (offlineMisses) {
+                    for (String offlineMiss : offlineMisses) {
+                        output(INDENT_STEP, offlineMiss, false, true);
+                    }
+                }
+            }
+        }
+
         output(START_INDENT, "Processed projects: ");
         List<String> allNoticeLines = new LinkedList<>();
         for (Map.Entry<String, JarMetadata> entry : jarDatabase.entrySet()) {
@@ -178,7 +270,8 @@ class LegalArtifactAggregator {
         }
         IOUtils.closeQuietly(writer);
 
-        if (updateKnownLicenses) {
+        // saving loads the text of every known license, which is only worth it when licenses were added
+        if (updateKnownLicenses && !additionalTermsLicenseTexts.isEmpty()) {
             saveKnownLicenses();
         }
 
@@ -192,6 +285,524 @@ class LegalArtifactAggregator {
 
         outputPackageLicenses();
 
+        output(START_INDENT, "License matching cache: " + licenseMatcher.getMatchCacheHits() + " hits, " + licenseMatcher.getMatchCacheMisses() + " misses", false, true);
+        output(START_INDENT, "Maven Central searches: " + mavenCentralSearch.getServerSearches() + " sent, " + mavenCentralSearch.getCachedSearches() + " cached", false, true);
+        output(START_INDENT, "Artifact resolutions: " + artifactResolver.getArtifacts() + " artifacts in " + artifactResolver.getBatches() + " batches", false, true);
+        output(START_INDENT, "Sources JAR lookups: " + neededSourcesJars + " done, " + avoidedSourcesJars + " avoided", false, true);
+        artifactResolver.close();
+        output(START_INDENT, "License downloads: " + licenseDownloader.getServerDownloads() + " downloaded, " + licenseDownloader.getCachedDownloads() + " cached", false, true);
+        mavenCentralSearch.close();
+    }
+
+    /**
+     * Reads the JAR files using a pool of scanThreads workers while the results are processed on the calling thread
+     * in the same order as a serial scan would, so that the generated reports are identical. Only a limited number of
+     * scans are kept ahead of the processing to keep memory usage bounded.
+     */
+    private void scanJarsInParallel(Map<String, List<JarLocation>> jarLocationsByDigest) {
+        output(START_INDENT, "Scanning JARs using " + scanThreads + " threads");
+        ExecutorService executorService = Executors.newFixedThreadPool(scanThreads);
+        try {
+            final int maxPendingScans = scanThreads * 2;
+            Iterator<List<JarLocation>> jarLocationsByDigestIterator = jarLocationsByDigest.values().iterator();
+            LinkedList<PendingJarFile> pendingJarFiles = new LinkedList<>();
+            while (jarLocationsByDigestIterator.hasNext() || !pendingJarFiles.isEmpty()) {
+                while (jarLocationsByDigestIterator.hasNext() && pendingJarFiles.size() < maxPendingScans) {
+                    final JarLocation jarLocation = jarLocationsByDigestIterator.next().get(0);
+                    String scanCacheKey = getScanCacheKey(jarLocation);
+                    PendingJarFile pendingJarFile = new PendingJarFile(jarLocation, scanCacheKey, getScanCacheEntry(scanCacheKey));
+                    if (pendingJarFile.scanCacheEntry == null) {
+                        pendingJarFile.jarScan = executorService.submit(new Callable<JarScan>() {
+                            @Override
+                            public JarScan call() throws Exception {
+                                ArchiveSource jarArchiveSource = jarLocation.open();
+                                try {
+                                    JarScan jarScan = scanJar(jarArchiveSource, jarLocation.getPath(), true, true, true);
+                                    startMavenCentralSearch(jarScan, jarLocation.getPath());
+                                    startArtifactResolutions(jarScan, jarLocation.getPath());
+                                    return jarScan;
+                                } finally {
+                                    IOUtils.closeQuietly(jarArchiveSource);
+                                }
+                            }
+                        });
+                    }
+                    pendingJarFiles.add(pendingJarFile);
+                }
+                PendingJarFile pendingJarFile = pendingJarFiles.removeFirst();
+                processJarFile(pendingJarFile.jarLocation, pendingJarFile.scanCacheKey, pendingJarFile.scanCacheEntry, pendingJarFile.jarScan);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Starts the Maven Central search the processing of a scanned JAR will need, so that it runs while the JARs before
+     * it are processed: JARs without a POM are searched by the name and version of their file, unless their declared
+     * licenses are trusted.
+     */
+    private void startMavenCentralSearch(JarScan jarScan, String jarFilePath) {
+        if (jarScan.getPomFilePath() != null || (trustMachineReadableLicenses && !auditMachineReadableLicenses)) {
+            return;
+        }
+        JarMetadata jarMetadata = new JarMetadata(jarFilePath, getJarFileName(jarFilePath));
+        if (StringUtils.isNotBlank(jarMetadata.getVersion())) {
+            mavenCentralSearch.searchArtifact(jarMetadata.getName(), jarMetadata.getVersion(), jarMetadata.getClassifier());
+        }
+    }
+
+    /**
+     * Starts resolving the artifacts the processing of a scanned JAR with a POM will need, so that they are downloaded
+     * while the JARs before it are processed: its sources JAR, its parent POM if it declares no license, and the
+     * dependencies its embedded JARs come from.
+     */
+    private void startArtifactResolutions(JarScan jarScan, String jarFilePath) {
+        if (jarScan.getPomFilePath() == null) {
+            return;
+        }
+        Model model;
+        try {
+            model = new MavenXpp3Reader().read(new ByteArrayInputStream(jarScan.getPomContents()));
+        } catch (IOException | XmlPullParserException e) {
+            // reported when the JAR is processed
+            return;
+        }
+        List<Artifact> artifacts = new ArrayList<>();
+        Parent parent = model.getParent();
+        if (model.getLicenses().isEmpty() && parent != null) {
+            artifacts.add(new DefaultArtifact(parent.getGroupId(), parent.getArtifactId(), "pom", parent.getVersion()));
+        }
+        Map<String, Dependency> artifactToDep = new HashMap<>();
+        for (Dependency dependency : model.getDependencies()) {
+            artifactToDep.put(dependency.getArtifactId(), dependency);
+        }
+        for (JarScan.Entry jarScanEntry : jarScan.getEntries()) {
+            if (jarScanEntry.getType() == JarScan.EntryType.EMBEDDED_JAR) {
+                JarMetadata embeddedJarMetadata = new JarMetadata(jarFilePath, getJarFileName(jarScanEntry.getName()));
+                Dependency dependency = artifactToDep.get(embeddedJarMetadata.getName());
+                if (dependency != null) {
+                    artifacts.add(new DefaultArtifact(dependency.getGroupId(), dependency.getArtifactId(), null, "jar", embeddedJarMetadata.getVersion()));
+                }
+            }
+        }
+        boolean hasLicense = !model.getLicenses().isEmpty();
+        boolean hasNotice = false;
+        for (JarScan.Entry jarScanEntry : jarScan.getEntries()) {
+            hasLicense |= jarScanEntry.getType() == JarScan.EntryType.LICENSE;
+            hasNotice |= jarScanEntry.getType() == JarScan.EntryType.NOTICE;
+        }
+        // the sources are of no use when the declared licenses are trusted, which is only known once they are resolved
+        if ((!hasLicense || !hasNotice) && (!trustMachineReadableLicenses || auditMachineReadableLicenses)) {
+            String groupId = model.getGroupId() != null ? model.getGroupId() : (parent != null ? parent.getGroupId() : null);
+            String version = model.getVersion() != null ? model.getVersion() : (parent != null ? parent.getVersion() : null);
+            artifacts.add(new DefaultArtifact(groupId, model.getArtifactId(), "sources", "jar", version));
+        }
+        artifactResolver.prefetch(artifacts);
+    }
+
+    /**
+     * Sources JARs are the most expensive artifacts to download and read, so they are only used as a fallback when the
+     * binary JAR and its POM didn't provide both a license and a notice.
+     */
+    private boolean needsSourcesJar(JarMetadata contextJarMetadata, String indent) {
+        boolean licenseFound = contextJarMetadata.getLicenseFiles() != null && !contextJarMetadata.getLicenseFiles().isEmpty();
+        boolean noticeFound = contextJarMetadata.getNoticeFiles() != null && !contextJarMetadata.getNoticeFiles().isEmpty();
+        if (licenseFound && noticeFound) {
+            output(indent, "License and notice found for " + contextJarMetadata + ", not looking for its sources JAR");
+            avoidedSourcesJars++;
+            return false;
+        }
+        neededSourcesJars++;
+        return true;
+    }
+
+    private static class PendingJarFile {
+        private final JarLocation jarLocation;
+        private final String scanCacheKey;
+        private final ScanCacheEntry scanCacheEntry;
+        private Future<JarScan> jarScan;
+
+        PendingJarFile(JarLocation jarLocation, String scanCacheKey, ScanCacheEntry scanCacheEntry) {
+            this.jarLocation = jarLocation;
+            this.scanCacheKey = scanCacheKey;
+            this.scanCacheEntry = scanCacheEntry;
+        }
+    }
+
+    /**
+     * A JAR to process: either a file of the scan directory or a JAR found inside a container archive such as a WAR,
+     * an EAR or a KAR, which is then read directly from its container instead of being extracted.
+     */
+    private class JarLocation {
+        private final String path;
+        private final File file;
+        private final ZipArchive containerArchive;
+        private final ZipArchive.Entry containerEntry;
+
+        JarLocation(File file) {
+            this.path = file.getPath();
+            this.file = file;
+            this.containerArchive = null;
+            this.containerEntry = null;
+        }
+
+        JarLocation(String path, ZipArchive containerArchive, ZipArchive.Entry containerEntry) {
+            this.path = path;
+            this.file = null;
+            this.containerArchive = containerArchive;
+            this.containerEntry = containerEntry;
+        }
+
+        String getPath() {
+            return path;
+        }
+
+        ArchiveSource open() throws IOException {
+            if (file != null) {
+                return openArchiveSource(file);
+            }
+            return openArchiveEntry(containerArchive, containerEntry);
+        }
+    }
+
+    private boolean isContainerArchive(String fileName) {
+        return containerArchiveExtensions.contains(FilenameUtils.getExtension(fileName).toLowerCase());
+    }
+
+    private void addContainerArchiveJarLocations(File containerArchiveFile, List<JarLocation> jarLocations, List<ArchiveSource> containerArchiveSources) {
+        try {
+            ArchiveSource containerArchiveSource = openArchiveSource(containerArchiveFile);
+            containerArchiveSources.add(containerArchiveSource);
+            addContainerArchiveJarLocations(new ZipArchive(containerArchiveSource), containerArchiveFile.getPath(), jarLocations, containerArchiveSources);
+        } catch (IOException e) {
+            output(START_INDENT, "Error reading archive " + containerArchiveFile.getPath() + ":" + e.getMessage() + ". This file will be ignored.", true, true);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Looks for the JARs inside a container archive, recursing into the container archives it contains, so that they
+     * are processed just as if the archives had been extracted into the scan directory.
+     */
+    private void addContainerArchiveJarLocations(ZipArchive containerArchive, String containerArchivePath, List<JarLocation> jarLocations, List<ArchiveSource> containerArchiveSources) throws IOException {
+        for (ZipArchive.Entry entry : containerArchive.getEntries()) {
+            if (entry.isDirectory()) {
+                continue;
+            }
+            String entryPath = containerArchivePath + "!/" + entry.getName();
+            if (entry.getName().toLowerCase().endsWith(".jar")) {
+                jarLocations.add(new JarLocation(entryPath, containerArchive, entry));
+            } else if (isContainerArchive(entry.getName())) {
+                ArchiveSource nestedArchiveSource = openArchiveEntry(containerArchive, entry);
+                containerArchiveSources.add(nestedArchiveSource);
+                try {
+                    addContainerArchiveJarLocations(new ZipArchive(nestedArchiveSource), entryPath, jarLocations, containerArchiveSources);
+                } catch (ZipException e) {
+                    output(START_INDENT, "Error reading archive " + entryPath + ":" + e.getMessage() + ". This file will be ignored.", true, true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gives access to an archive stored in another archive: in place if it is stored uncompressed, through a copy
+     * otherwise.
+     */
+    private ArchiveSource openArchiveEntry(ZipArchive containerArchive, ZipArchive.Entry entry) throws IOException {
+        if (entry.getMethod() == ZipArchive.STORED) {
+            return containerArchive.getStoredEntrySource(entry);
+        }
+        InputStream entryInputStream = containerArchive.getInputStream(entry);
+        try {
+            return copyEmbeddedJar(entryInputStream);
+        } finally {
+            IOUtils.closeQuietly(entryInputStream);
+        }
+    }
+
+    /**
+     * Processes a JAR found in the scan directory, replaying the results of a previous build if it was cached, and
+     * using its scan if it was already read by a scanning thread.
+     */
+    private void processJarFile(JarLocation jarLocation, String scanCacheKey, ScanCacheEntry scanCacheEntry, Future<JarScan> jarScan) {
+        String additionalTermsFingerprint = scanCache != null ? getAdditionalTermsFingerprint() : null;
+        if (scanCacheEntry != null && additionalTermsFingerprint.equals(scanCacheEntry.getAdditionalTermsFingerprint())) {
+            output(START_INDENT, "Using cached results for JAR " + jarLocation.getPath(), false, true);
+            restoreScanCacheEntry(scanCacheEntry);
+            return;
+        }
+
+        Set<String> previousJarDatabaseKeys = null;
+        int previousDuplicatedNotices = duplicatedNotices.size();
+        if (scanCache != null) {
+            previousJarDatabaseKeys = new HashSet<>(jarDatabase.keySet());
+            currentScanCacheEntry = new ScanCacheEntry();
+            currentScanCacheEntry.setAdditionalTermsFingerprint(additionalTermsFingerprint);
+        }
+        ArchiveSource jarArchiveSource = null;
+        try {
+            if (jarScan != null) {
+                output(START_INDENT, "Processing JAR " + jarLocation.getPath() + "...", false, true);
+                processJarScan(jarScan.get(), jarLocation.getPath(), null, true, 0, true, true, false);
+            } else {
+                jarArchiveSource = jarLocation.open();
+                processJarFile(jarArchiveSource, jarLocation.getPath(), null, true, 0, true, true, false);
+            }
+            if (currentScanCacheEntry != null && scanCacheKey != null) {
+                storeScanCacheEntry(scanCacheKey, getJarFileName(jarLocation.getPath()), previousJarDatabaseKeys, previousDuplicatedNotices);
+            }
+        } catch (ExecutionException e) {
+            if (!(e.getCause() instanceof IOException)) {
+                throw new RuntimeException("Error scanning JAR " + jarLocation.getPath(), e.getCause());
+            }
+            output(START_INDENT, "Error handling JAR " + jarLocation.getPath() + ":" + e.getCause().getMessage() + ". This file will be ignored.", true, true);
+            e.getCause().printStackTrace();
+        } catch (IOException e) {
+            output(START_INDENT, "Error handling JAR " + jarLocation.getPath() + ":" + e.getMessage() + ". This file will be ignored.", true, true);
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while scanning JARs", e);
+        } finally {
+            currentScanCacheEntry = null;
+            IOUtils.closeQuietly(jarArchiveSource);
+        }
+    }
+
+    private ScanCacheEntry getScanCacheEntry(String scanCacheKey) {
+        return scanCacheKey != null ? scanCache.get(scanCacheKey) : null;
+    }
+
+    /**
+     * The cached results contain the name and path of the JAR they were computed for, in the JAR database keys, the
+     * origins of its license files and the ids of its additional terms, so they are only reused for the same JAR
+     * contents at the same location. As they outlive the build, the contents are identified by the digest of all the
+     * archive data rather than by its central directory, see {@link ZipArchive#getDigest()}.
+     *
+     * @return the key of the cached results of the JAR, or null if there is no scan cache or the JAR couldn't be read
+     */
+    private String getScanCacheKey(JarLocation jarLocation) {
+        if (scanCache == null) {
+            return null;
+        }
+        ArchiveSource archiveSource = null;
+        try {
+            archiveSource = jarLocation.open();
+            String digest = Digests.digest(new ArchiveSourceInputStream(archiveSource, 0, archiveSource.size()));
+            return Digests.toHex(Digests.newDigest().digest((digest + "\0" + jarLocation.getPath()).getBytes("UTF-8")));
+        } catch (IOException e) {
+            // let the processing report the error
+            return null;
+        } finally {
+            IOUtils.closeQuietly(archiveSource);
+        }
+    }
+
+    private void storeScanCacheEntry(String scanCacheKey, String jarFileName, Set<String> previousJarDatabaseKeys, int previousDuplicatedNotices) {
+        for (Map.Entry<String, JarMetadata> jarDatabaseEntry : jarDatabase.entrySet()) {
+            if (!previousJarDatabaseKeys.contains(jarDatabaseEntry.getKey()) || jarDatabaseEntry.getKey().equals(jarFileName)) {
+                currentScanCacheEntry.getJarDatabaseEntries().put(jarDatabaseEntry.getKey(), jarDatabaseEntry.getValue());
+                Map<String, List<String>> knownLicenseIds = new TreeMap<>();
+                for (Map.Entry<String, LicenseFile> licenseFileEntry : jarDatabaseEntry.getValue().getLicenseFiles().entrySet()) {
+                    knownLicenseIds.put(licenseFileEntry.getKey(), getKnownLicenseIds(licenseFileEntry.getValue()));
+                }
+                currentScanCacheEntry.getLicenseFileKnownLicenseIds().put(jarDatabaseEntry.getKey(), knownLicenseIds);
+            }
+        }
+        for (ScanCacheEntry.LicenseEvent licenseEvent : currentScanCacheEntry.getLicenseEvents()) {
+            if (licenseEvent.getLicenseFile() != null) {
+                licenseEvent.setKnownLicenseIds(getKnownLicenseIds(licenseEvent.getLicenseFile()));
+            }
+        }
+        synchronized (duplicatedNotices) {
+            currentScanCacheEntry.getDuplicatedNotices().addAll(duplicatedNotices.subList(previousDuplicatedNotices, duplicatedNotices.size()));
+        }
+        try {
+            scanCache.put(scanCacheKey, currentScanCacheEntry);
+        } catch (IOException e) {
+            output(START_INDENT, "Couldn't store scan cache entry for " + jarFileName + ": " + e.getMessage(), true, false);
+        }
+    }
+
+    private void restoreScanCacheEntry(ScanCacheEntry scanCacheEntry) {
+        for (ScanCacheEntry.LicenseEvent licenseEvent : scanCacheEntry.getLicenseEvents()) {
+            KnownLicense additionalTermsLicense = licenseEvent.getAdditionalTermsLicense();
+            if (additionalTermsLicense != null) {
+                registerAdditionalTermsLicense(createAdditionalTermsLicense(additionalTermsLicense.getId(),
+                        additionalTermsLicense.getName(), additionalTermsLicense.getTextToUse(), additionalTermsLicense.isViral()));
+            } else {
+                KnownLicense knownLicense = knownLicenses.getLicenses().get(licenseEvent.getKnownLicenseId());
+                if (knownLicense != null) {
+                    restoreKnownLicenses(licenseEvent.getLicenseFile(), licenseEvent.getKnownLicenseIds());
+                    addKnownLicenseFound(knownLicense, licenseEvent.getLicenseFile());
+                }
+            }
+        }
+        for (Map.Entry<String, JarMetadata> jarDatabaseEntry : scanCacheEntry.getJarDatabaseEntries().entrySet()) {
+            JarMetadata cachedJarMetadata = jarDatabaseEntry.getValue();
+            cachedJarMetadata.setLicenseFiles(new TreeMap<>(cachedJarMetadata.getLicenseFiles()));
+            cachedJarMetadata.setNoticeFiles(new TreeMap<>(cachedJarMetadata.getNoticeFiles()));
+            Map<String, List<String>> knownLicenseIds = scanCacheEntry.getLicenseFileKnownLicenseIds().get(jarDatabaseEntry.getKey());
+            for (Map.Entry<String, LicenseFile> licenseFileEntry : cachedJarMetadata.getLicenseFiles().entrySet()) {
+                restoreKnownLicenses(licenseFileEntry.getValue(), knownLicenseIds != null ? knownLicenseIds.get(licenseFileEntry.getKey()) : null);
+            }
+            JarMetadata jarMetadata = jarDatabase.putIfAbsent(jarDatabaseEntry.getKey(), cachedJarMetadata);
+            if (jarMetadata != null) {
+                jarMetadata.getLicenseFiles().putAll(cachedJarMetadata.getLicenseFiles());
+                jarMetadata.getNoticeFiles().putAll(cachedJarMetadata.getNoticeFiles());
+                jarMetadata.getPackages().addAll(cachedJarMetadata.getPackages());
+                jarMetadata.getEmbeddedJars().addAll(cachedJarMetadata.getEmbeddedJars());
+            }
+        }
+        duplicatedNotices.addAll(scanCacheEntry.getDuplicatedNotices());
+    }
+
+    private List<String> getKnownLicenseIds(LicenseFile licenseFile) {
+        List<String> knownLicenseIds = new ArrayList<>();
+        for (KnownLicense knownLicense : licenseFile.getKnownLicenses()) {
+            knownLicenseIds.add(knownLicense.getId());
+        }
+        return knownLicenseIds;
+    }
+
+    private void restoreKnownLicenses(LicenseFile licenseFile, List<String> knownLicenseIds) {
+        List<KnownLicense> licenseFileKnownLicenses = new ArrayList<>();
+        if (knownLicenseIds != null) {
+            for (String knownLicenseId : knownLicenseIds) {
+                KnownLicense knownLicense = knownLicenses.getLicenses().get(knownLicenseId);
+                if (knownLicense != null) {
+                    licenseFileKnownLicenses.add(knownLicense);
+                }
+            }
+        }
+        licenseFile.setKnownLicenses(licenseFileKnownLicenses);
+    }
+
+    private void registerAdditionalTermsLicense(KnownLicense knownLicense) {
+        knownLicenses.getLicenses().put(knownLicense.getId(), knownLicense);
+        licenseMatcher.addLicense(knownLicense);
+        licenseNameIndex.addLicense(knownLicense);
+        synchronized (this) {
+            if (closestLicenseIndex != null) {
+                closestLicenseIndex.addLicense(knownLicense);
+            }
+        }
+        additionalTermsLicenseTexts.put(knownLicense.getId(), knownLicense.getTextToUse());
+    }
+
+    /**
+     * A digest of the additional license terms created so far. As they are matched against the license files of the
+     * next JARs, cached results are only valid if they were computed with the same ones.
+     */
+    private String getAdditionalTermsFingerprint() {
+        MessageDigest additionalTermsDigest = Digests.newDigest();
+        try {
+            for (Map.Entry<String, String> additionalTermsLicenseText : additionalTermsLicenseTexts.entrySet()) {
+                additionalTermsDigest.update(additionalTermsLicenseText.getKey().getBytes("UTF-8"));
+                additionalTermsDigest.update((byte) 0);
+                additionalTermsDigest.update(additionalTermsLicenseText.getValue().getBytes("UTF-8"));
+                additionalTermsDigest.update((byte) 0);
+            }
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new IllegalStateException(e);
+        }
+        return Digests.toHex(additionalTermsDigest.digest());
+    }
+
+    /**
+     * Groups the JARs that have identical contents, in the order they were found, so that each content is only
+     * processed once. The contents are compared by the digests of the central directories, which only read the end of
+     * each archive, see {@link ZipArchive#getDigest()}: this is enough to recognize the copies of an artifact found in
+     * the same scan, which are reported as duplicates of the processed one.
+     */
+    private Map<String, List<JarLocation>> getJarLocationsByDigest(Collection<JarLocation> jarLocations) {
+        Map<String, List<JarLocation>> jarLocationsByDigest = new LinkedHashMap<>();
+        for (JarLocation jarLocation : jarLocations) {
+            String digest;
+            try {
+                digest = getArchiveDigest(jarLocation);
+            } catch (IOException e) {
+                // let the processing report the error
+                digest = jarLocation.getPath();
+            }
+            List<JarLocation> identicalJarLocations = jarLocationsByDigest.get(digest);
+            if (identicalJarLocations == null) {
+                identicalJarLocations = new ArrayList<>();
+                jarLocationsByDigest.put(digest, identicalJarLocations);
+            } else {
+                output(START_INDENT, "JAR " + jarLocation.getPath() + " is identical to " + identicalJarLocations.get(0).getPath() + ", it won't be processed again");
+            }
+            identicalJarLocations.add(jarLocation);
+        }
+        return jarLocationsByDigest;
+    }
+
+    private String getArchiveDigest(JarLocation jarLocation) throws IOException {
+        ArchiveSource archiveSource = jarLocation.open();
+        try {
+            return new ZipArchive(archiveSource).getDigest();
+        } catch (ZipException e) {
+            return Digests.digest(new ArchiveSourceInputStream(archiveSource, 0, archiveSource.size()));
+        } finally {
+            IOUtils.closeQuietly(archiveSource);
+        }
+    }
+
+    /**
+     * Attributes the digest and the paths of all the identical copies of the processed JARs to their metadata.
+     */
+    private void recordJarDigests(Map<String, List<JarLocation>> jarLocationsByDigest) {
+        for (Map.Entry<String, List<JarLocation>> jarLocationsByDigestEntry : jarLocationsByDigest.entrySet()) {
+            List<JarLocation> identicalJarLocations = jarLocationsByDigestEntry.getValue();
+            JarMetadata jarMetadata = jarDatabase.get(getJarFileName(identicalJarLocations.get(0).getPath()));
+            if (jarMetadata == null) {
+                continue;
+            }
+            jarMetadata.setDigest(jarLocationsByDigestEntry.getKey());
+            for (JarLocation identicalJarLocation : identicalJarLocations.subList(1, identicalJarLocations.size())) {
+                jarMetadata.getDuplicatePaths().add(identicalJarLocation.getPath());
+            }
+        }
+    }
+
+    private ArchiveSource openArchiveSource(File archiveFile) throws IOException {
+        if (memoryMappedArchiveThreshold >= 0 && archiveFile.length() >= memoryMappedArchiveThreshold) {
+            return new MappedArchiveSource(archiveFile);
+        }
+        return new FileArchiveSource(archiveFile);
+    }
+
+    private KnownLicense createAdditionalTermsLicense(String id, String name, String additionalLicenseText, boolean viral) {
+        KnownLicense knownLicense = new KnownLicense();
+        knownLicense.setId(id);
+        knownLicense.setName(name);
+        List<TextVariant> textVariants = new ArrayList<>();
+        TextVariant textVariant = new TextVariant();
+        textVariant.setId("default");
+        textVariant.setDefaultVariant(true);
+        textVariant.setText(Pattern.quote(additionalLicenseText));
+        textVariants.add(textVariant);
+        knownLicense.setTextVariants(textVariants);
+        knownLicense.setTextToUse(additionalLicenseText);
+        knownLicense.setViral(viral);
+        return knownLicense;
+    }
+
+    private void addKnownLicenseFound(KnownLicense knownLicense, LicenseFile licenseFile) {
+        if (currentScanCacheEntry != null) {
+            currentScanCacheEntry.getLicenseEvents().add(new ScanCacheEntry.LicenseEvent(knownLicense.getId(), licenseFile));
+        }
+        SortedSet<LicenseFile> licenseFiles = knownLicensesFound.get(knownLicense);
+        if (licenseFiles == null) {
+            licenseFiles = new ConcurrentSkipListSet<>();
+            SortedSet<LicenseFile> existingLicenseFiles = knownLicensesFound.putIfAbsent(knownLicense, licenseFiles);
+            if (existingLicenseFiles != null) {
+                licenseFiles = existingLicenseFiles;
+            }
+        }
+        licenseFiles.add(licenseFile);
     }
 
     private void outputPackageLicenses() {
@@ -273,40 +884,45 @@ class LegalArtifactAggregator {
     }
 
     private void loadKnownLicenses() {
-        URL knownLicensesJSONURL = this.getClass().getClassLoader().getResource("known-licenses.json");
-        if (knownLicensesJSONURL != null) {
+        URL precompiledKnownLicensesURL = this.getClass().getClassLoader().getResource(KnownLicensesDatabase.PRECOMPILED_RESOURCE);
+        if (precompiledKnownLicensesURL != null) {
             try {
-                knownLicenses = mapper.readValue(knownLicensesJSONURL, KnownLicenses.class);
+                KnownLicensesDatabase.Precompiled precompiledKnownLicenses = KnownLicensesDatabase.readPrecompiled(precompiledKnownLicensesURL);
+                knownLicenses = precompiledKnownLicenses.getKnownLicenses();
+                licenseNameIndex = precompiledKnownLicenses.getLicenseNameIndex();
+                knownLicensesResources.add(precompiledKnownLicensesURL);
             } catch (IOException e) {
-                e.printStackTrace();
+                output(START_INDENT, "Couldn't read the precompiled known licenses database, using " + KnownLicensesDatabase.JSON_RESOURCE + " instead: " + e.getMessage(), true, false);
             }
         }
-        for (KnownLicense knownLicense : knownLicenses.getLicenses().values()) {
-            for (TextVariant textVariant : knownLicense.getTextVariants()) {
-                URL textVariantURL = this.getClass().getClassLoader().getResource("known-licenses/" + knownLicense.getId() + "/variants/" + textVariant.getId() + ".txt");
-                if (textVariantURL != null) {
-                    try {
-                        String textVariantText = IOUtils.toString(textVariantURL);
-                        textVariant.setText(textVariantText);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                }
-            }
-            knownLicense.setTextVariants(knownLicense.getTextVariants());
-            if (knownLicense.getTextToUse() != null && knownLicense.getTextToUse().startsWith("classpath:")) {
-                String textToUseLocation = knownLicense.getTextToUse().substring("classpath:".length());
-                URL textToUseURL = this.getClass().getClassLoader().getResource("known-licenses/" + knownLicense.getId() + "/" + textToUseLocation);
-                if (textToUseURL != null) {
-                    try {
-                        String realTextToUse = IOUtils.toString(textToUseURL);
-                        knownLicense.setTextToUse(realTextToUse);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                }
+        if (knownLicensesResources.isEmpty()) {
+            knownLicenses = KnownLicensesDatabase.readJson(mapper, this.getClass().getClassLoader(), knownLicensesResources);
+        }
+        licenseMatcher = new LicenseMatcher(knownLicenses, licenseFingerprintMatching, licenseMatchTimeout, licenseMatchCharacterBudget);
+        if (licenseNameIndex == null) {
+            licenseNameIndex = new LicenseNameIndex(knownLicenses);
+        }
+    }
+
+    /**
+     * A digest of the whole known licenses database, used to invalidate cached results when it changes. As the license
+     * texts are only read when they are first needed, it is computed from the location, size and modification time
+     * of the resources they are read from instead of their contents.
+     */
+    private String getKnownLicensesFingerprint() {
+        MessageDigest knownLicensesDigest = Digests.newDigest();
+        try {
+            for (URL knownLicensesResource : knownLicensesResources) {
+                URLConnection knownLicensesResourceConnection = knownLicensesResource.openConnection();
+                knownLicensesDigest.update((knownLicensesResource + "\0" + knownLicensesResourceConnection.getContentLengthLong() + "\0" +
+                        knownLicensesResourceConnection.getLastModified() + "\0").getBytes("UTF-8"));
+                // opening the connection opens the stream of a file resource
+                IOUtils.closeQuietly(knownLicensesResourceConnection.getInputStream());
             }
+        } catch (IOException e) {
+            e.printStackTrace();
         }
+        return Digests.toHex(knownLicensesDigest.digest());
     }
 
     private void saveKnownLicenses() {
@@ -404,31 +1020,214 @@ class LegalArtifactAggregator {
                 output(INDENT_STEP, missing, false, true);
             }
         }
+
+        if (forLicenses && !timedOutLicenseFiles.isEmpty()) {
+            output(START_INDENT, "License matching timed out for the following " + timedOutLicenseFiles.size() +
+                    " license files. Please check them manually:", false, true);
+            for (String timedOutLicenseFile : timedOutLicenseFiles) {
+                output(INDENT_STEP, timedOutLicenseFile, false, true);
+            }
+        }
     }
 
-    private void processJarFile(InputStream inputStream, String jarFilePath, JarMetadata contextJarMetadata, boolean processMavenPom, int level, boolean lookForNotice, boolean lookForLicense, boolean processingSources) throws IOException {
+    private void processJarFile(ArchiveSource archiveSource, String jarFilePath, JarMetadata contextJarMetadata, boolean processMavenPom, int level, boolean lookForNotice, boolean lookForLicense, boolean processingSources) throws IOException {
         // if we don't need to find either a license or notice, don't process the jar at all
         if (!lookForLicense && !lookForNotice) {
             return;
         }
 
-        final String indent = getIndent(level);
-        output(indent, "Processing JAR " + jarFilePath + "...", false, true);
+        output(getIndent(level), "Processing JAR " + jarFilePath + "...", false, true);
+
+        JarScan jarScan = scanJar(archiveSource, jarFilePath, processMavenPom, lookForNotice, lookForLicense);
+        processJarScan(jarScan, jarFilePath, contextJarMetadata, processMavenPom, level, lookForNotice, lookForLicense, processingSources);
+    }
+
+    /**
+     * Reads the legal content of a JAR without modifying any of the aggregator's state, so that this may be called
+     * from multiple threads at the same time. Only the entries we are interested in are read from the archive, using
+     * its central directory.
+     */
+    private JarScan scanJar(ArchiveSource archiveSource, String jarFilePath, boolean processMavenPom, boolean lookForNotice, boolean lookForLicense) throws IOException {
+        ZipArchive zipArchive;
+        try {
+            zipArchive = new ZipArchive(archiveSource);
+        } catch (ZipException e) {
+            output(START_INDENT, "Couldn't read central directory of JAR " + jarFilePath + " (" + e.getMessage() + "), reading it sequentially instead", true, false);
+            return scanJarSequentially(new ArchiveSourceInputStream(archiveSource, 0, archiveSource.size()), jarFilePath, processMavenPom, lookForNotice, lookForLicense);
+        }
+
+        JarScan jarScan = new JarScan(jarFilePath);
+        for (ZipArchive.Entry zipEntry : zipArchive.getEntries()) {
+            if (zipEntry.isDirectory()) {
+                continue;
+            }
+            final String fileName = zipEntry.getName();
+            if (JarFile.MANIFEST_NAME.equalsIgnoreCase(fileName)) {
+                InputStream manifestInputStream = zipArchive.getInputStream(zipEntry);
+                try {
+                    setManifestLicenses(jarScan, new Manifest(manifestInputStream));
+                } finally {
+                    IOUtils.closeQuietly(manifestInputStream);
+                }
+                continue;
+            }
+            JarScan.EntryType entryType = getEntryType(fileName, jarFilePath, processMavenPom, lookForNotice, lookForLicense);
+            if (entryType == JarScan.EntryType.CLASS) {
+                addPackage(jarScan, fileName);
+            } else if (entryType == JarScan.EntryType.EMBEDDED_JAR && zipEntry.getMethod() == ZipArchive.STORED) {
+                // uncompressed embedded JARs are read in place
+                jarScan.addEmbeddedJar(fileName, scanEmbeddedJar(zipArchive.getStoredEntrySource(zipEntry), jarFilePath + "!/" + fileName));
+            } else if (entryType != null) {
+                InputStream entryInputStream = zipArchive.getInputStream(zipEntry);
+                try {
+                    addJarScanEntry(jarScan, entryType, fileName, entryInputStream, jarFilePath);
+                } finally {
+                    IOUtils.closeQuietly(entryInputStream);
+                }
+            }
+        }
+        return jarScan;
+    }
+
+    private JarScan scanJarSequentially(InputStream inputStream, String jarFilePath, boolean processMavenPom, boolean lookForNotice, boolean lookForLicense) throws IOException {
+        JarScan jarScan = new JarScan(jarFilePath);
 
-        // JarFile realJarFile = new JarFile(jarFile);
         JarInputStream jarInputStream = new JarInputStream(inputStream);
-        String bundleLicense = null;
         Manifest manifest = jarInputStream.getManifest();
         if (manifest != null && manifest.getMainAttributes() != null) {
-            bundleLicense = manifest.getMainAttributes().getValue("Bundle-License");
-            if (bundleLicense != null) {
-                output(indent, "Found Bundle-License attribute with value:" + bundleLicense);
-                KnownLicense knownLicense = getKnowLicenseByName(bundleLicense);
-                // this data is not reliable, especially on the ServiceMix repackaged bundles
+            setManifestLicenses(jarScan, manifest);
+        }
+
+        JarEntry curJarEntry = null;
+        while ((curJarEntry = jarInputStream.getNextJarEntry()) != null) {
+
+            if (!curJarEntry.isDirectory()) {
+                final String fileName = curJarEntry.getName();
+                JarScan.EntryType entryType = getEntryType(fileName, jarFilePath, processMavenPom, lookForNotice, lookForLicense);
+                if (entryType == JarScan.EntryType.CLASS) {
+                    addPackage(jarScan, fileName);
+                } else if (entryType != null) {
+                    addJarScanEntry(jarScan, entryType, fileName, jarInputStream, jarFilePath);
+                }
+            }
+            jarInputStream.closeEntry();
+        }
+
+        jarInputStream.close();
+        return jarScan;
+    }
+
+    private void setManifestLicenses(JarScan jarScan, Manifest manifest) {
+        jarScan.setBundleLicense(manifest.getMainAttributes().getValue("Bundle-License"));
+        jarScan.setSpdxLicenseIdentifier(manifest.getMainAttributes().getValue(SPDX_LICENSE_IDENTIFIER));
+    }
+
+    /**
+     * @return the type of content of a JAR entry based on its name only, or null if the entry is of no interest.
+     */
+    private JarScan.EntryType getEntryType(String fileName, String jarFilePath, boolean processMavenPom, boolean lookForNotice, boolean lookForLicense) {
+        if (lookForNotice && isNotice(fileName, jarFilePath)) {
+            return JarScan.EntryType.NOTICE;
+        } else if (processMavenPom && fileName.endsWith("pom.xml")) {
+            return JarScan.EntryType.POM;
+        } else if (processMavenPom && fileName.endsWith("pom.properties")) {
+            return JarScan.EntryType.POM_PROPERTIES;
+        } else if (lookForLicense && isLicense(fileName, jarFilePath)) {
+            return JarScan.EntryType.LICENSE;
+        } else if (fileName.endsWith(".jar")) {
+            return JarScan.EntryType.EMBEDDED_JAR;
+        } else if (fileName.endsWith(".class")) {
+            return JarScan.EntryType.CLASS;
+        }
+        return null;
+    }
+
+    private void addJarScanEntry(JarScan jarScan, JarScan.EntryType entryType, String fileName, InputStream entryInputStream, String jarFilePath) throws IOException {
+        switch (entryType) {
+            case NOTICE:
+            case LICENSE:
+                try {
+                    jarScan.addEntry(entryType, fileName, TextEntryReader.read(entryInputStream, MAX_TEXT_ENTRY_SIZE));
+                } catch (TextEntryReader.RejectedEntryException e) {
+                    output(START_INDENT, "Ignoring " + fileName + " in JAR " + jarFilePath + ": " + e.getMessage(), true, false);
+                }
+                break;
+            case POM:
+                // remember pom file path in case we need it
+                jarScan.setPom(fileName, IOUtils.toByteArray(entryInputStream));
+                break;
+            case POM_PROPERTIES:
+                Properties pomProperties = new Properties();
+                pomProperties.load(entryInputStream);
+                jarScan.addPomProperties(pomProperties);
+                break;
+            case EMBEDDED_JAR:
+                ArchiveSource embeddedJarArchiveSource = copyEmbeddedJar(entryInputStream);
+                try {
+                    jarScan.addEmbeddedJar(fileName, scanEmbeddedJar(embeddedJarArchiveSource, jarFilePath + "!/" + fileName));
+                } finally {
+                    IOUtils.closeQuietly(embeddedJarArchiveSource);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Embedded JARs are scanned while their enclosing JAR is being read so that only the scan result is kept, and
+     * always look for notices, licenses and POM whatever their enclosing JAR is being scanned for.
+     */
+    private JarScan scanEmbeddedJar(ArchiveSource embeddedJarArchiveSource, String embeddedJarPath) throws IOException {
+        return scanJar(embeddedJarArchiveSource, embeddedJarPath, true, true, true);
+    }
+
+    /**
+     * Copies a compressed embedded JAR so that it can be randomly accessed: in memory if it is small enough, in a
+     * temporary file otherwise, so that memory usage doesn't grow with the size of the embedded JARs.
+     */
+    private ArchiveSource copyEmbeddedJar(InputStream embeddedJarInputStream) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(inMemoryEmbeddedJarThreshold + 1, 65536)];
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(buffer.length);
+        int bytesRead;
+        while ((bytesRead = embeddedJarInputStream.read(buffer)) != -1) {
+            byteArrayOutputStream.write(buffer, 0, bytesRead);
+            if (byteArrayOutputStream.size() > inMemoryEmbeddedJarThreshold) {
+                File temporaryFile = File.createTempFile("legal-embedded-", ".jar");
+                OutputStream temporaryFileOutputStream = null;
+                try {
+                    temporaryFileOutputStream = new FileOutputStream(temporaryFile);
+                    byteArrayOutputStream.writeTo(temporaryFileOutputStream);
+                    byteArrayOutputStream = null;
+                    IOUtils.copyLarge(embeddedJarInputStream, temporaryFileOutputStream, buffer);
+                    temporaryFileOutputStream.close();
+                    return new TemporaryFileArchiveSource(temporaryFile);
+                } catch (IOException e) {
+                    IOUtils.closeQuietly(temporaryFileOutputStream);
+                    temporaryFile.delete();
+                    throw e;
+                }
             }
         }
-        String pomFilePath = null;
-        byte[] pomByteArray = null;
+        return new ByteArrayArchiveSource(byteArrayOutputStream.toByteArray());
+    }
+
+    private void addPackage(JarScan jarScan, String fileName) {
+        String className = fileName.substring(0, fileName.length() - ".class".length()).replaceAll("/", ".");
+        int lastPoint = className.lastIndexOf(".");
+        if (lastPoint > 0) {
+            jarScan.getPackages().add(className.substring(0, lastPoint));
+        }
+    }
+
+    private void processJarScan(JarScan jarScan, String jarFilePath, JarMetadata contextJarMetadata, boolean processMavenPom, int level, boolean lookForNotice, boolean lookForLicense, boolean processingSources) throws IOException {
+        final String indent = getIndent(level);
+
+        String bundleLicense = jarScan.getBundleLicense();
+        if (bundleLicense != null) {
+            output(indent, "Found Bundle-License attribute with value:" + bundleLicense);
+        }
+        String pomFilePath = jarScan.getPomFilePath();
 
         final String jarFileName = getJarFileName(jarFilePath);
         if (contextJarMetadata == null) {
@@ -436,138 +1235,114 @@ class LegalArtifactAggregator {
             if (contextJarMetadata == null) {
                 // compute project name
                 contextJarMetadata = new JarMetadata(jarFilePath, jarFileName);
+                JarMetadata existingJarMetadata = jarDatabase.putIfAbsent(jarFileName, contextJarMetadata);
+                if (existingJarMetadata != null) {
+                    contextJarMetadata = existingJarMetadata;
+                }
+            }
+        }
+
+        // machine-readable license declarations are not always reliable, especially on the ServiceMix repackaged
+        // bundles, so they are only used if asked to
+        LicenseFile declaredLicenseFile = trustMachineReadableLicenses && !processingSources ? getDeclaredLicenseFile(jarScan, jarFilePath) : null;
+        boolean useDeclaredLicenses = declaredLicenseFile != null && !auditMachineReadableLicenses;
+        if (useDeclaredLicenses) {
+            output(indent, "Using licenses " + declaredLicenseFile.getKnownLicenseKeys() + " declared in " + declaredLicenseFile.getFileName() + " of " + jarFilePath);
+            for (KnownLicense knownLicense : declaredLicenseFile.getKnownLicenses()) {
+                addKnownLicenseFound(knownLicense, declaredLicenseFile);
             }
-            jarDatabase.put(jarFileName, contextJarMetadata);
+            contextJarMetadata.getLicenseFiles().put(declaredLicenseFile.getFileName(), declaredLicenseFile);
         }
+        Set<String> licenseFileKnownLicenseIds = new TreeSet<>();
 
         Notice notice;
-        JarEntry curJarEntry = null;
-        while ((curJarEntry = jarInputStream.getNextJarEntry()) != null) {
+        for (JarScan.Entry jarScanEntry : jarScan.getEntries()) {
+            final String fileName = jarScanEntry.getName();
+            if (jarScanEntry.getType() == JarScan.EntryType.NOTICE) {
+
+                output(indent, "Processing notice found in " + fileName + "...");
+
+                notice = new Notice(jarScanEntry.getText());
+
+                Map<String,Notice> notices = contextJarMetadata.getNoticeFiles();
+                if (notices == null) {
+                    notices = new TreeMap<>();
+                    notices.put(fileName, notice);
+                    output(indent, "Found first notice " + fileName);
+                } else if (!notices.containsValue(notice)) {
+                    output(indent, "Found additional notice " + fileName);
+                    notices.put(fileName, notice);
+                } else {
+                    output(indent, "Duplicated notice in " + fileName);
+                    notices.put(fileName, notice);
+                    duplicatedNotices.add(jarFilePath);
+                }
 
-            if (!curJarEntry.isDirectory()) {
-                final String fileName = curJarEntry.getName();
-                if (lookForNotice && isNotice(fileName, jarFilePath)) {
-
-                    output(indent, "Processing notice found in " + curJarEntry + "...");
-
-                    InputStream noticeInputStream = jarInputStream;
-                    List<String> noticeLines = IOUtils.readLines(noticeInputStream);
-                    notice = new Notice(noticeLines);
-
-                    Map<String,Notice> notices = contextJarMetadata.getNoticeFiles();
-                    if (notices == null) {
-                        notices = new TreeMap<>();
-                        notices.put(fileName, notice);
-                        output(indent, "Found first notice " + curJarEntry);
-                    } else if (!notices.containsValue(notice)) {
-                        output(indent, "Found additional notice " + curJarEntry);
-                        notices.put(fileName, notice);
-                    } else {
-                        output(indent, "Duplicated notice in " + curJarEntry);
-                        notices.put(fileName, notice);
-                        duplicatedNotices.add(jarFilePath);
-                    }
+            } else if (jarScanEntry.getType() == JarScan.EntryType.LICENSE && useDeclaredLicenses) {
 
-                    // IOUtils.closeQuietly(noticeInputStream);
-                } else if (processMavenPom && fileName.endsWith("pom.xml")) {
-                    // remember pom file path in case we need it
-                    pomFilePath = curJarEntry.getName();
-                    ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-                    IOUtils.copy(jarInputStream, byteArrayOutputStream);
-                    pomByteArray = byteArrayOutputStream.toByteArray();
-
-                } else if (lookForLicense && isLicense(fileName, jarFilePath)) {
-
-                    output(indent, "Processing license found in " + curJarEntry + "...");
-                    InputStream licenseInputStream = jarInputStream;
-                    List<String> licenseLines = IOUtils.readLines(licenseInputStream);
-
-                    LicenseFile licenseFile = new LicenseFile(jarFilePath, fileName, jarFilePath, licenseLines);
-
-                    resolveKnownLicensesByText(licenseFile);
-
-                    if (StringUtils.isNotBlank(licenseFile.getAdditionalLicenseText()) &&
-                            StringUtils.isNotBlank(licenseFile.getAdditionalLicenseText().trim())) {
-                        KnownLicense knownLicense = new KnownLicense();
-                        knownLicense.setId(FilenameUtils.getBaseName(jarFilePath) + "-additional-terms");
-                        knownLicense.setName("Additional license terms from " + FilenameUtils.getBaseName(jarFilePath));
-                        List<TextVariant> textVariants = new ArrayList<>();
-                        TextVariant textVariant = new TextVariant();
-                        textVariant.setId("default");
-                        textVariant.setDefaultVariant(true);
-                        textVariant.setText(Pattern.quote(licenseFile.getAdditionalLicenseText()));
-                        textVariants.add(textVariant);
-                        knownLicense.setTextVariants(textVariants);
-                        knownLicense.setTextToUse(licenseFile.getAdditionalLicenseText());
-                        knownLicense.setViral(licenseFile.getText().toLowerCase().contains("gpl"));
-                        knownLicenses.getLicenses().put(knownLicense.getId(), knownLicense);
-                        licenseFile.getKnownLicenses().add(knownLicense);
-                        licenseFile.getKnownLicenseKeys().add(knownLicense.getId());
-                    }
+                output(indent, "Skipping license found in " + fileName + ", using the declared licenses instead");
 
-                    for (KnownLicense knownLicense : licenseFile.getKnownLicenses()) {
-                        SortedSet<LicenseFile> licenseFiles = knownLicensesFound.get(knownLicense);
-                        if (licenseFiles != null) {
-                            if (!licenseFiles.contains(licenseFile)) {
-                                licenseFiles.add(licenseFile);
-                            }
-                            knownLicensesFound.put(knownLicense, licenseFiles);
-                        } else {
-                            licenseFiles = new TreeSet<>();
-                            licenseFiles.add(licenseFile);
-                            knownLicensesFound.put(knownLicense, licenseFiles);
-                        }
-                    }
+            } else if (jarScanEntry.getType() == JarScan.EntryType.LICENSE) {
 
-                    Map<String,LicenseFile> licenseFiles = contextJarMetadata.getLicenseFiles();
-                    if (licenseFiles == null) {
-                        licenseFiles = new TreeMap<>();
-                    }
-                    if (licenseFiles.containsKey(fileName)) {
-                        // warning we already have a license file here, what should we do ?
-                        output(indent, "License file already exists for " + jarFilePath + " will override it !", true, false);
-                        licenseFiles.remove(fileName);
-                    }
-                    licenseFiles.put(fileName, licenseFile);
+                output(indent, "Processing license found in " + fileName + "...");
 
-                    // IOUtils.closeQuietly(licenseInputStream);
+                LicenseFile licenseFile = new LicenseFile(jarFilePath, fileName, jarFilePath, jarScanEntry.getText());
 
-                } else if (fileName.endsWith(".jar")) {
-                    InputStream embeddedJarInputStream = jarInputStream;
-                    ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-                    IOUtils.copy(embeddedJarInputStream, byteArrayOutputStream);
-                    final JarMetadata embeddedJarMetadata = new JarMetadata(jarFilePath, getJarFileName(fileName));
+                resolveKnownLicensesByText(licenseFile);
 
-                    if (embeddedJarMetadata != null) {
-                        embeddedJarMetadata.setJarContents(byteArrayOutputStream.toByteArray());
-                        contextJarMetadata.getEmbeddedJars().add(embeddedJarMetadata);
+                if (StringUtils.isNotBlank(licenseFile.getAdditionalLicenseText()) &&
+                        StringUtils.isNotBlank(licenseFile.getAdditionalLicenseText().trim())) {
+                    KnownLicense knownLicense = createAdditionalTermsLicense(FilenameUtils.getBaseName(jarFilePath) + "-additional-terms",
+                            "Additional license terms from " + FilenameUtils.getBaseName(jarFilePath),
+                            licenseFile.getAdditionalLicenseText(),
+                            licenseFile.getText().toLowerCase().contains("gpl"));
+                    registerAdditionalTermsLicense(knownLicense);
+                    if (currentScanCacheEntry != null) {
+                        currentScanCacheEntry.getLicenseEvents().add(new ScanCacheEntry.LicenseEvent(knownLicense));
                     }
-                } else if (fileName.endsWith(".class")) {
-                    String className = fileName.substring(0, fileName.length() - ".class".length()).replaceAll("/", ".");
-                    int lastPoint = className.lastIndexOf(".");
-                    String packageName = null;
-                    if (lastPoint > 0) {
-                        packageName = className.substring(0, lastPoint);
-                        SortedSet<String> currentJarPackages = jarDatabase.get(FilenameUtils.getBaseName(jarFilePath)).getPackages();
-                        if (currentJarPackages == null) {
-                            currentJarPackages = new TreeSet<>();
-                        }
-                        currentJarPackages.add(packageName);
+                    licenseFile.getKnownLicenses().add(knownLicense);
+                    licenseFile.getKnownLicenseKeys().add(knownLicense.getId());
+                }
+
+                for (KnownLicense knownLicense : licenseFile.getKnownLicenses()) {
+                    addKnownLicenseFound(knownLicense, licenseFile);
+                    if (!additionalTermsLicenseTexts.containsKey(knownLicense.getId())) {
+                        licenseFileKnownLicenseIds.add(knownLicense.getId());
                     }
                 }
 
+                Map<String,LicenseFile> licenseFiles = contextJarMetadata.getLicenseFiles();
+                if (licenseFiles == null) {
+                    licenseFiles = new TreeMap<>();
+                }
+                if (licenseFiles.containsKey(fileName)) {
+                    // warning we already have a license file here, what should we do ?
+                    output(indent, "License file already exists for " + jarFilePath + " will override it !", true, false);
+                    licenseFiles.remove(fileName);
+                }
+                licenseFiles.put(fileName, licenseFile);
+
+            } else if (jarScanEntry.getType() == JarScan.EntryType.EMBEDDED_JAR) {
+                final JarMetadata embeddedJarMetadata = new JarMetadata(jarFilePath, getJarFileName(fileName));
+                embeddedJarMetadata.setJarScan(jarScanEntry.getEmbeddedJarScan());
+                contextJarMetadata.getEmbeddedJars().add(embeddedJarMetadata);
             }
-            jarInputStream.closeEntry();
         }
 
-        jarInputStream.close();
-        jarInputStream = null;
+        if (declaredLicenseFile != null && auditMachineReadableLicenses) {
+            auditDeclaredLicenses(declaredLicenseFile, licenseFileKnownLicenseIds, jarFilePath, indent);
+        }
+
+        if (!jarScan.getPackages().isEmpty()) {
+            SortedSet<String> currentJarPackages = jarDatabase.get(FilenameUtils.getBaseName(jarFilePath)).getPackages();
+            currentJarPackages.addAll(jarScan.getPackages());
+        }
 
         if (!contextJarMetadata.getEmbeddedJars().isEmpty()) {
             for (JarMetadata embeddedJarMetadata : contextJarMetadata.getEmbeddedJars()) {
-                if (embeddedJarMetadata.getJarContents() != null) {
-                    ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(embeddedJarMetadata.getJarContents());
-                    processJarFile(byteArrayInputStream, contextJarMetadata.toString(), null, true, level, true, true, processingSources);
+                if (embeddedJarMetadata.getJarScan() != null) {
+                    output(indent, "Processing JAR " + contextJarMetadata + "...", false, true);
+                    processJarScan(embeddedJarMetadata.getJarScan(), contextJarMetadata.toString(), null, true, level, true, true, processingSources);
                 } else {
                     output(indent, "Couldn't find dependency for embedded JAR " + contextJarMetadata, true, false);
                 }
@@ -580,8 +1355,9 @@ class LegalArtifactAggregator {
                 output(indent, "No POM found in " + jarFilePath);
             } else {
                 output(indent, "Processing POM found at " + pomFilePath + " in " + jarFilePath + "...");
-                ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(pomByteArray);
-                processJarPOM(byteArrayInputStream, pomFilePath, jarFilePath, contextJarMetadata, lookForNotice, lookForLicense, contextJarMetadata.getEmbeddedJars(), level + 1, processingSources);
+                ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(jarScan.getPomContents());
+                // the sources are of no use when the declared licenses are trusted
+                processJarPOM(byteArrayInputStream, pomFilePath, jarFilePath, contextJarMetadata, lookForNotice, lookForLicense, contextJarMetadata.getEmbeddedJars(), level + 1, processingSources, processingSources || useDeclaredLicenses);
             }
         }
 
@@ -593,7 +1369,7 @@ class LegalArtifactAggregator {
                 output(indent, "No notice found in " + jarFilePath);
             }
 
-            if (pomFilePath == null && lookForLicense && lookForNotice) {
+            if (pomFilePath == null && lookForLicense && lookForNotice && !useDeclaredLicenses) {
                 if (StringUtils.isBlank(contextJarMetadata.getVersion())) {
                     output(indent, "Couldn't resolve version for JAR " + contextJarMetadata + ", can't query Maven Central repository without version !");
                 } else {
@@ -604,12 +1380,17 @@ class LegalArtifactAggregator {
                         if (resolvedArtifact != null) {
                             // we have a copy of the local artifact, let's request the sources for it.
                             if (!processingSources && !"sources".equals(contextJarMetadata.getClassifier())) {
-                                final Artifact artifact = new DefaultArtifact(resolvedArtifact.getGroupId(), resolvedArtifact.getArtifactId(), "sources", "jar", resolvedArtifact.getVersion());
-                                File sourceJar = getArtifactFile(artifact, level);
-                                if (sourceJar != null && sourceJar.exists()) {
-                                    FileInputStream sourceJarInputStream = new FileInputStream(sourceJar);
-                                    processJarFile(sourceJarInputStream, sourceJar.getPath(), contextJarMetadata, false, level + 1, lookForNotice, lookForLicense, true);
-                                    IOUtils.closeQuietly(sourceJarInputStream);
+                                if (needsSourcesJar(contextJarMetadata, indent)) {
+                                    final Artifact artifact = new DefaultArtifact(resolvedArtifact.getGroupId(), resolvedArtifact.getArtifactId(), "sources", "jar", resolvedArtifact.getVersion());
+                                    File sourceJar = getArtifactFile(artifact, level);
+                                    if (sourceJar != null && sourceJar.exists()) {
+                                        ArchiveSource sourceJarArchiveSource = openArchiveSource(sourceJar);
+                                        try {
+                                            processJarFile(sourceJarArchiveSource, sourceJar.getPath(), contextJarMetadata, false, level + 1, lookForNotice, lookForLicense, true);
+                                        } finally {
+                                            IOUtils.closeQuietly(sourceJarArchiveSource);
+                                        }
+                                    }
                                 }
                             } else {
                                 // we are already processing a sources artifact, we need to load the pom artifact to extract information from there
@@ -617,7 +1398,7 @@ class LegalArtifactAggregator {
                                 File artifactPom = getArtifactFile(artifact, level);
                                 if (artifactPom != null && artifactPom.exists()) {
                                     output(indent, "Processing POM for " + artifact + "...");
-                                    processPOM(lookForNotice, lookForLicense, jarFilePath, contextJarMetadata, contextJarMetadata.getEmbeddedJars(), level + 1, new FileInputStream(artifactPom), processingSources);
+                                    processPOM(lookForNotice, lookForLicense, jarFilePath, contextJarMetadata, contextJarMetadata.getEmbeddedJars(), level + 1, new FileInputStream(artifactPom), processingSources, true);
                                 }
                             }
                         } else {
@@ -634,6 +1415,168 @@ class LegalArtifactAggregator {
 
     }
 
+    /**
+     * Resolves the licenses a JAR declares in a machine-readable form: an SPDX license identifier in its manifest or
+     * license files, its Bundle-License manifest header or the licenses of its own embedded POM, the first one found
+     * being used. The POM is only used if its coordinates are the ones of the single pom.properties of the JAR, as
+     * shaded JARs may contain the POMs of other projects.
+     *
+     * @return a license file holding the declared licenses, or null if the JAR declares none or if any of them isn't
+     * a known license
+     */
+    private LicenseFile getDeclaredLicenseFile(JarScan jarScan, String jarFilePath) {
+        String spdxLicenseIdentifier = jarScan.getSpdxLicenseIdentifier();
+        if (spdxLicenseIdentifier == null) {
+            spdxLicenseIdentifier = findSpdxLicenseIdentifier(jarScan);
+        }
+        if (spdxLicenseIdentifier != null) {
+            return getDeclaredLicenseFile(jarFilePath, SPDX_LICENSE_IDENTIFIER, spdxLicenseIdentifier, getSpdxExpressionLicenses(spdxLicenseIdentifier));
+        }
+        if (jarScan.getBundleLicense() != null) {
+            return getDeclaredLicenseFile(jarFilePath, "Bundle-License", jarScan.getBundleLicense(), getBundleLicenses(jarScan.getBundleLicense()));
+        }
+        if (jarScan.getPomContents() != null && jarScan.getPomProperties().size() == 1) {
+            Model model;
+            try {
+                model = new MavenXpp3Reader().read(new ByteArrayInputStream(jarScan.getPomContents()));
+            } catch (IOException | XmlPullParserException e) {
+                return null;
+            }
+            Properties pomProperties = jarScan.getPomProperties().get(0);
+            String version = model.getVersion() != null ? model.getVersion() : (model.getParent() != null ? model.getParent().getVersion() : null);
+            if (model.getLicenses().isEmpty() || !StringUtils.equals(model.getArtifactId(), pomProperties.getProperty("artifactId")) ||
+                    !StringUtils.equals(version, pomProperties.getProperty("version"))) {
+                return null;
+            }
+            List<KnownLicense> pomLicenses = new ArrayList<>();
+            List<String> pomLicenseNames = new ArrayList<>();
+            for (License license : model.getLicenses()) {
+                KnownLicense knownLicense = getKnowLicenseByName(license.getName());
+                if (knownLicense == null) {
+                    knownLicense = getKnownLicenseByUrl(license.getUrl());
+                }
+                if (knownLicense == null) {
+                    return null;
+                }
+                pomLicenses.add(knownLicense);
+                pomLicenseNames.add(license.getName() != null ? license.getName() : license.getUrl());
+            }
+            return getDeclaredLicenseFile(jarFilePath, jarScan.getPomFilePath(), StringUtils.join(pomLicenseNames, ", "), pomLicenses);
+        }
+        return null;
+    }
+
+    private LicenseFile getDeclaredLicenseFile(String jarFilePath, String source, String declaration, List<KnownLicense> declaredLicenses) {
+        if (declaredLicenses == null || declaredLicenses.isEmpty()) {
+            return null;
+        }
+        LicenseFile declaredLicenseFile = new LicenseFile(jarFilePath, source, jarFilePath, declaration);
+        for (KnownLicense declaredLicense : declaredLicenses) {
+            if (!declaredLicenseFile.getKnownLicenseKeys().contains(declaredLicense.getId())) {
+                declaredLicenseFile.getKnownLicenses().add(declaredLicense);
+                declaredLicenseFile.getKnownLicenseKeys().add(declaredLicense.getId());
+            }
+        }
+        return declaredLicenseFile;
+    }
+
+    /**
+     * @return the value of the first SPDX-License-Identifier tag found in the license files of the JAR, or null if
+     * there is none
+     */
+    private String findSpdxLicenseIdentifier(JarScan jarScan) {
+        for (JarScan.Entry jarScanEntry : jarScan.getEntries()) {
+            if (jarScanEntry.getType() != JarScan.EntryType.LICENSE) {
+                continue;
+            }
+            String text = jarScanEntry.getText();
+            int tagStart = text.indexOf(SPDX_LICENSE_IDENTIFIER + ":");
+            if (tagStart >= 0) {
+                int lineEnd = text.indexOf('\n', tagStart);
+                String value = text.substring(tagStart + SPDX_LICENSE_IDENTIFIER.length() + 1, lineEnd >= 0 ? lineEnd : text.length());
+                // leave out the end of a comment the tag may be in
+                value = StringUtils.removeEnd(StringUtils.removeEnd(value.trim(), "*/"), "-->").trim();
+                return value.isEmpty() ? null : value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the licenses of an SPDX license expression combining license identifiers with AND and OR, or null if
+     * any of them isn't known or if the expression uses exceptions or "or later" versions, which known licenses don't
+     * cover
+     */
+    private List<KnownLicense> getSpdxExpressionLicenses(String spdxExpression) {
+        List<KnownLicense> spdxExpressionLicenses = new ArrayList<>();
+        for (String token : StringUtils.split(spdxExpression, " \t()")) {
+            if (token.equalsIgnoreCase("AND") || token.equalsIgnoreCase("OR")) {
+                continue;
+            }
+            if (token.equalsIgnoreCase("WITH") || token.endsWith("+")) {
+                return null;
+            }
+            KnownLicense knownLicense = getKnowLicenseByName(token);
+            if (knownLicense == null) {
+                return null;
+            }
+            spdxExpressionLicenses.add(knownLicense);
+        }
+        return spdxExpressionLicenses;
+    }
+
+    /**
+     * @return the licenses of a Bundle-License header, made of comma separated license names, usually SPDX
+     * identifiers or URLs, each one possibly followed by a link attribute, or null if any of them isn't known
+     */
+    private List<KnownLicense> getBundleLicenses(String bundleLicense) {
+        List<KnownLicense> bundleLicenses = new ArrayList<>();
+        for (String clause : splitOutsideQuotes(bundleLicense, ',')) {
+            List<String> clauseParts = splitOutsideQuotes(clause, ';');
+            KnownLicense knownLicense = getKnowLicenseByName(StringUtils.strip(clauseParts.get(0).trim(), "\""));
+            for (int i = 1; knownLicense == null && i < clauseParts.size(); i++) {
+                String attribute = clauseParts.get(i).trim();
+                if (attribute.startsWith("link=")) {
+                    knownLicense = getKnownLicenseByUrl(StringUtils.strip(attribute.substring("link=".length()).trim(), "\""));
+                }
+            }
+            if (knownLicense == null) {
+                return null;
+            }
+            bundleLicenses.add(knownLicense);
+        }
+        return bundleLicenses;
+    }
+
+    private List<String> splitOutsideQuotes(String value, char separator) {
+        List<String> parts = new ArrayList<>();
+        boolean quoted = false;
+        int partStart = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == separator && !quoted) {
+                parts.add(value.substring(partStart, i));
+                partStart = i + 1;
+            }
+        }
+        parts.add(value.substring(partStart));
+        return parts;
+    }
+
+    private void auditDeclaredLicenses(LicenseFile declaredLicenseFile, Set<String> licenseFileKnownLicenseIds, String jarFilePath, String indent) {
+        Set<String> declaredLicenseIds = new TreeSet<>(declaredLicenseFile.getKnownLicenseKeys());
+        if (licenseFileKnownLicenseIds.isEmpty()) {
+            output(indent, "No license file to cross-check licenses " + declaredLicenseIds + " declared in " + declaredLicenseFile.getFileName() + " of " + jarFilePath);
+        } else if (declaredLicenseIds.equals(licenseFileKnownLicenseIds)) {
+            output(indent, "Licenses " + declaredLicenseIds + " declared in " + declaredLicenseFile.getFileName() + " of " + jarFilePath + " match its license files");
+        } else {
+            output(indent, "===>  Licenses " + declaredLicenseIds + " declared in " + declaredLicenseFile.getFileName() + " of " + jarFilePath +
+                    " differ from licenses " + licenseFileKnownLicenseIds + " found in its license files", false, true);
+        }
+    }
+
     private String getIndent(int level) {
         String indent = START_INDENT;
         int i = level;
@@ -714,18 +1657,23 @@ class LegalArtifactAggregator {
         return isLicense;
     }
 
-    private void processJarPOM(InputStream pomInputStream, String pomFilePath, String jarFilePath, JarMetadata contextJarMetadata, boolean lookForNotice, boolean lookForLicense, Set<JarMetadata> embeddedJarNames, int level, boolean processingSources) throws
+    private void processJarPOM(InputStream pomInputStream, String pomFilePath, String jarFilePath, JarMetadata contextJarMetadata, boolean lookForNotice, boolean lookForLicense, Set<JarMetadata> embeddedJarNames, int level, boolean processingSources, boolean skipSourcesJar) throws
             IOException {
         // if we're not looking for notice or license and don't have embedded jars, don't process at all
         if (embeddedJarNames.isEmpty() && !lookForNotice && !lookForLicense) {
             return;
         }
 
-        processPOM(lookForNotice, lookForLicense, jarFilePath, contextJarMetadata, embeddedJarNames, level, pomInputStream, processingSources);
+        processPOM(lookForNotice, lookForLicense, jarFilePath, contextJarMetadata, embeddedJarNames, level, pomInputStream, processingSources, skipSourcesJar);
 
     }
 
-    private void processPOM(boolean lookForNotice, boolean lookForLicense, String jarFilePath, JarMetadata contextJarMetadata, Set<JarMetadata> embeddedJarNames, int level, InputStream pomInputStream, boolean processingSources) throws IOException {
+    /**
+     * @param processingSources whether the POM is the one of a sources JAR
+     * @param skipSourcesJar    whether the sources JAR of the artifact mustn't be looked for, such as when it is being
+     *                          processed or when the declared licenses are trusted
+     */
+    private void processPOM(boolean lookForNotice, boolean lookForLicense, String jarFilePath, JarMetadata contextJarMetadata, Set<JarMetadata> embeddedJarNames, int level, InputStream pomInputStream, boolean processingSources, boolean skipSourcesJar) throws IOException {
         MavenXpp3Reader reader = new MavenXpp3Reader();
         final String indent = getIndent(level);
         try {
@@ -761,16 +1709,15 @@ class LegalArtifactAggregator {
                     String licenseName = license.getName();
                     // let's try to resolve the license by name
                     KnownLicense knownLicense = getKnowLicenseByName(licenseName);
+                    if (knownLicense == null) {
+                        // the URL of a well-known license avoids downloading its text
+                        knownLicense = getKnownLicenseByUrl(license.getUrl());
+                    }
                     if (knownLicense != null) {
-                        SortedSet<LicenseFile> licenseFiles = knownLicensesFound.get(knownLicense);
-                        if (licenseFiles == null) {
-                            licenseFiles = new TreeSet<>();
-                        }
                         LicenseFile licenseFile = new LicenseFile(jarFilePath, FilenameUtils.getBaseName(jarFilePath), jarFilePath, knownLicense.getTextToUse());
                         licenseFile.getKnownLicenses().add(knownLicense);
                         licenseFile.getKnownLicenseKeys().add(knownLicense.getId());
-                        licenseFiles.add(licenseFile);
-                        knownLicensesFound.put(knownLicense, licenseFiles);
+                        addKnownLicenseFound(knownLicense, licenseFile);
                         // found a license for this project, let's see if we can resolve it
                         Map<String, LicenseFile> projectLicenseFiles = contextJarMetadata.getLicenseFiles();
                         if (projectLicenseFiles == null) {
@@ -779,9 +1726,12 @@ class LegalArtifactAggregator {
                         projectLicenseFiles.put("pom.xml", licenseFile);
                     } else if (license.getUrl() != null) {
                         try {
-                            URL licenseURL = new URL(license.getUrl());
-                            String licenseText = IOUtils.toString(licenseURL);
-                            if (StringUtils.isNotBlank(licenseText)) {
+                            String licenseText = licenseDownloader.download(license.getUrl());
+                            if (licenseText == null) {
+                                output(indent, "Not downloading license URL " + license.getUrl() + " in offline mode", true, true);
+                                // the license is downloaded when the JAR is processed again by an online build
+                                currentScanCacheEntry = null;
+                            } else if (StringUtils.isNotBlank(licenseText)) {
                                 // found a license for this project, let's see if we can resolve it
                                 Map<String, LicenseFile> licenseFiles = contextJarMetadata.getLicenseFiles();
                                 if (licenseFiles == null) {
@@ -801,6 +1751,10 @@ class LegalArtifactAggregator {
                             }
                         } catch (MalformedURLException mue) {
                             output(indent, "Invalid license URL : " + license.getUrl() + ": " + mue.getMessage());
+                        } catch (IOException e) {
+                            output(indent, "Couldn't download license URL " + license.getUrl() + ": " + e.getMessage(), true, true);
+                            // the download is tried again at the next build
+                            currentScanCacheEntry = null;
                         }
                     } else {
                         // couldn't resolve the license
@@ -812,7 +1766,8 @@ class LegalArtifactAggregator {
                     Artifact resolvedParentArtifact = resolveArtifact(parentArtifact, level);
                     if (resolvedParentArtifact != null) {
                         output(indent, "Processing parent POM " + parentArtifact + "...");
-                        processPOM(lookForNotice, lookForLicense, jarFilePath, contextJarMetadata, embeddedJarNames, level + 1, new FileInputStream(resolvedParentArtifact.getFile()), processingSources);
+                        // the sources JAR is the artifact's, whose POM decides whether it is needed once its parents are processed
+                        processPOM(lookForNotice, lookForLicense, jarFilePath, contextJarMetadata, embeddedJarNames, level + 1, new FileInputStream(resolvedParentArtifact.getFile()), processingSources, true);
                     } else {
                         output(indent, "Couldn't resolve parent POM " + parentArtifact + " !");
                     }
@@ -864,9 +1819,12 @@ class LegalArtifactAggregator {
                     if (dependency != null) {
                         File jarFile = getArtifactFile(new DefaultArtifact(dependency.getGroupId(), dependency.getArtifactId(), null, "jar", jarName.version), level);
                         if (jarFile != null && jarFile.exists()) {
-                            FileInputStream jarInputStream = new FileInputStream(jarFile);
-                            processJarFile(jarInputStream, jarFile.getPath(), null, true, level, true, true, processingSources);
-                            IOUtils.closeQuietly(jarInputStream);
+                            ArchiveSource jarArchiveSource = openArchiveSource(jarFile);
+                            try {
+                                processJarFile(jarArchiveSource, jarFile.getPath(), null, true, level, true, true, processingSources);
+                            } finally {
+                                IOUtils.closeQuietly(jarArchiveSource);
+                            }
                         } else {
                             output(indent, "Couldn't find dependency for embedded JAR " + jarName, true, false);
                         }
@@ -874,16 +1832,19 @@ class LegalArtifactAggregator {
                 }
             }
 
-            if (!processingSources && (lookForLicense || lookForNotice)) {
+            if (!skipSourcesJar && (lookForLicense || lookForNotice) && needsSourcesJar(contextJarMetadata, indent)) {
                 final String groupId = model.getGroupId() != null ? model.getGroupId() : parentGroupId;
                 final String version = model.getVersion() != null ? model.getVersion() : parentVersion;
                 final Artifact artifact = new DefaultArtifact(groupId, model.getArtifactId(), "sources", "jar", version);
 
                 File sourceJar = getArtifactFile(artifact, level);
                 if (sourceJar != null && sourceJar.exists()) {
-                    FileInputStream sourceJarInputStream = new FileInputStream(sourceJar);
-                    processJarFile(sourceJarInputStream, sourceJar.getPath(), contextJarMetadata, false, level, lookForNotice, lookForLicense, true);
-                    IOUtils.closeQuietly(sourceJarInputStream);
+                    ArchiveSource sourceJarArchiveSource = openArchiveSource(sourceJar);
+                    try {
+                        processJarFile(sourceJarArchiveSource, sourceJar.getPath(), contextJarMetadata, false, level, lookForNotice, lookForLicense, true);
+                    } finally {
+                        IOUtils.closeQuietly(sourceJarArchiveSource);
+                    }
                 }
             }
         } catch (XmlPullParserException e) {
@@ -892,20 +1853,42 @@ class LegalArtifactAggregator {
     }
 
     private Artifact resolveArtifact(Artifact artifact, int level) {
-        ArtifactRequest request = new ArtifactRequest();
-        request.setArtifact(artifact);
-        request.setRepositories(remoteRepositories);
-
-        ArtifactResult artifactResult;
+        if (offline && offlineMisses.contains("artifact " + artifact)) {
+            // the artifact may be resolved online, so the JAR is processed again at the next build
+            currentScanCacheEntry = null;
+            return null;
+        }
         try {
-            artifactResult = repositorySystem.resolveArtifact(repositorySystemSession, request);
-            return artifactResult.getArtifact();
+            return artifactResolver.resolve(artifact);
         } catch (ArtifactResolutionException e) {
             output(getIndent(level), "Couldn't find artifact " + artifact + " : " + e.getMessage(), true, true);
+            if (offline) {
+                offlineMisses.add("artifact " + artifact);
+            }
+            if (offline || !isMissing(e)) {
+                // the artifact may be resolved online and a transfer error may not happen again, so the JAR is
+                // processed again at the next build
+                currentScanCacheEntry = null;
+            }
         }
         return null;
     }
 
+    /**
+     * @return true if the artifact isn't in any of the repositories, as opposed to not having been downloaded
+     */
+    private static boolean isMissing(ArtifactResolutionException e) {
+        if (e.getResults().isEmpty()) {
+            return false;
+        }
+        for (ArtifactResult artifactResult : e.getResults()) {
+            if (!artifactResult.isResolved() && !artifactResult.isMissing()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private File getArtifactFile(Artifact artifact, int level) {
         Artifact resolvedArtifact = resolveArtifact(artifact, level);
         if (resolvedArtifact == null) {
@@ -916,8 +1899,9 @@ class LegalArtifactAggregator {
 
     private static Client getRestClient(String targetUrl) {
 
-        if (clients.containsKey(targetUrl)) {
-            return clients.get(targetUrl);
+        Client existingClient = clients.get(targetUrl);
+        if (existingClient != null) {
+            return existingClient;
         }
 
         Client client = null;
@@ -968,53 +1952,37 @@ class LegalArtifactAggregator {
         HttpAuthenticationFeature feature = HttpAuthenticationFeature.basic(contextServerSettings.getContextServerUsername(), contextServerSettings.getContextServerPassword());
         client.register(feature);
         */
-        clients.put(targetUrl, client);
+        existingClient = clients.putIfAbsent(targetUrl, client);
+        if (existingClient != null) {
+            client.close();
+            return existingClient;
+        }
         return client;
     }
 
     /**
-     * This method will use the public REST API at search.maven.org to search for Maven dependencies that contain
+     * This method will use the REST API of the Maven Central search to search for Maven dependencies that contain
      * a package using an URL such as :
      *
      * http://search.maven.org/solrsearch/select?q=fc:%22com.mchange.v2.c3p0%22&rows=20&wt=json
      *
      * @param packageName
      */
-    public static List<String> findPackageInMavenCentral(String packageName) {
+    public List<String> findPackageInMavenCentral(String packageName) {
         List<String> artifactResults = new ArrayList<String>();
-        Client client = getRestClient(MAVEN_SEARCH_HOST_URL);
-
-        WebTarget target = client.target(MAVEN_SEARCH_HOST_URL).path("solrsearch/select")
-                .queryParam("q", "fc:\"" + packageName + "\"")
-                .queryParam("rows", "5")
-                .queryParam("wt", "json");
-
-        Invocation.Builder invocationBuilder =
-                target.request(MediaType.APPLICATION_JSON_TYPE);
-
-        Map<String, Object> searchResults = null;
         try {
-            Response response = invocationBuilder.get();
-            searchResults= (Map<String, Object>) response.readEntity(Map.class);
-        } catch (ProcessingException pe) {
-            artifactResults.add(NETWORK_ERROR_PREFIX + pe.getMessage());
-        }
-
-        if (searchResults != null) {
-            Map<String,Object> searchResponse = (Map<String,Object>) searchResults.get("response");
-            Integer searchResultCount = (Integer) searchResponse.get("numFound");
-            List<Map<String,Object>> docs = (List<Map<String,Object>>) searchResponse.get("docs");
-            for (Map<String,Object> doc : docs) {
-                String artifactId = (String) doc.get("id");
-                artifactResults.add(artifactId);
+            List<String> foundIds = mavenCentralSearch.findPackage(packageName);
+            if (foundIds != null) {
+                artifactResults.addAll(foundIds);
             }
+        } catch (IOException e) {
+            artifactResults.add(NETWORK_ERROR_PREFIX + e.getMessage());
         }
-
         return artifactResults;
     }
 
     /**
-     * This method will use the public REST API at search.maven.org to search for Maven dependencies that match
+     * This method will use the REST API of the Maven Central search to search for Maven dependencies that match
      * the artifactId and version ID as in the following example
      *
      * http://search.maven.org/solrsearch/select?q=g:%22com.google.inject%22%20AND%20a:%22guice%22%20AND%20v:%223.0%22%20AND%20l:%22javadoc%22%20AND%20p:%22jar%22&rows=20&wt=json
@@ -1025,45 +1993,24 @@ class LegalArtifactAggregator {
      */
     public List<Artifact> findArtifactInMavenCentral(String artifactId, String version, String classifier) {
         List<Artifact> artifactResults = new ArrayList<Artifact>();
-        Client client = getRestClient(MAVEN_SEARCH_HOST_URL);
-
-        StringBuilder query = new StringBuilder();
-        if (artifactId != null) {
-            query.append("a:\"" + artifactId + "\"");
-        }
-        if (version != null) {
-            query.append(" AND v:\"" + version + "\"");
-        }
-        if (classifier != null) {
-            query.append(" AND l:\"" + classifier + "\"");
-        }
-
-        WebTarget target = client.target(MAVEN_SEARCH_HOST_URL).path("solrsearch/select")
-                .queryParam("q", query.toString())
-                .queryParam("rows", "5")
-                .queryParam("wt", "json");
-
-        Invocation.Builder invocationBuilder =
-                target.request(MediaType.APPLICATION_JSON_TYPE);
-
-        Map<String, Object> searchResults = null;
+        List<String> foundIds;
         try {
-            Response response = invocationBuilder.get();
-            searchResults= (Map<String, Object>) response.readEntity(Map.class);
-        } catch (ProcessingException pe) {
-            pe.printStackTrace();
-        }
-
-        if (searchResults != null) {
-            Map<String,Object> searchResponse = (Map<String,Object>) searchResults.get("response");
-            Integer searchResultCount = (Integer) searchResponse.get("numFound");
-            List<Map<String,Object>> docs = (List<Map<String,Object>>) searchResponse.get("docs");
-            for (Map<String,Object> doc : docs) {
-                String foundId = (String) doc.get("id");
-                artifactResults.add(new DefaultArtifact(foundId));
+            foundIds = mavenCentralSearch.findArtifact(artifactId, version, classifier);
+            if (foundIds == null) {
+                // the search is done by the next online build
+                currentScanCacheEntry = null;
+                return artifactResults;
             }
+        } catch (IOException e) {
+            output(START_INDENT, "Couldn't search Maven Central for " + artifactId + " " + version + ": " + e.getMessage(), true, true);
+            e.printStackTrace();
+            // the search is done again at the next build
+            currentScanCacheEntry = null;
+            return artifactResults;
+        }
+        for (String foundId : foundIds) {
+            artifactResults.add(new DefaultArtifact(foundId));
         }
-
         return artifactResults;
     }
 
@@ -1075,18 +2022,14 @@ class LegalArtifactAggregator {
      * @return
      */
     public KnownLicense findClosestMatchingKnownLicense(LicenseFile licenseFile) {
-        KnownLicense closestMatchingKnownLicense = null;
-        int smallestEditDistance = Integer.MAX_VALUE;
-        for (KnownLicense knownLicense : knownLicenses.getLicenses().values()) {
-            for (TextVariant textVariant : knownLicense.getTextVariants()) {
-                int editDistance = StringUtils.getLevenshteinDistance(textVariant.getText(), licenseFile.getText(), EDIT_DISTANCE_THRESHOLD);
-                if (editDistance >= 0 && editDistance < smallestEditDistance) {
-                    smallestEditDistance = editDistance;
-                    closestMatchingKnownLicense = knownLicense;
-                }
-            }
+        return getClosestLicenseIndex().findClosestLicense(licenseFile.getText(), EDIT_DISTANCE_THRESHOLD);
+    }
+
+    private synchronized ClosestLicenseIndex getClosestLicenseIndex() {
+        if (closestLicenseIndex == null) {
+            closestLicenseIndex = new ClosestLicenseIndex(knownLicenses.getLicenses().values());
         }
-        return closestMatchingKnownLicense;
+        return closestLicenseIndex;
     }
 
     public void resolveKnownLicensesByText(LicenseFile licenseFile) {
@@ -1095,23 +2038,38 @@ class LegalArtifactAggregator {
         if (knownLicenses.getLicenses() == null) {
             return;
         }
-        SortedMap<TextVariant,KnownLicense> textVariantsBySize = new TreeMap<>(new Comparator<TextVariant>() {
-            @Override
-            public int compare(TextVariant o1, TextVariant o2) {
-                return o2.getText().length() - o1.getText().length();
-            }
-        });
-        for (KnownLicense knownLicense : knownLicenses.getLicenses().values()) {
-            for (TextVariant textVariant : knownLicense.getTextVariants()) {
-                textVariantsBySize.put(textVariant, knownLicense);
-            }
+        List<LicenseMatcher.Match> matches;
+        try {
+            matches = licenseMatcher.findMatches(licenseText);
+        } catch (LicenseMatcher.MatchTimeoutException e) {
+            output(START_INDENT, "License match timed out for license file " + licenseFile.getFileName() + " (" + e.getMessage() + ")", true, true);
+            timedOutLicenseFiles.add(licenseFile.getProjectOrigin() + " " + licenseFile.getFileName());
+            licenseFile.setKnownLicenses(foundLicenses);
+            // whether the budget is exceeded depends on the machine, so the JAR is processed again at the next build
+            currentScanCacheEntry = null;
+            return;
         }
-        for (SortedMap.Entry<TextVariant,KnownLicense> textVariantBySizeEntry : textVariantsBySize.entrySet()) {
-            Matcher textVariantMatcher = textVariantBySizeEntry.getKey().getCompiledTextPattern().matcher(licenseText);
-            if (textVariantMatcher.find()) {
-                foundLicenses.add(textVariantBySizeEntry.getValue());
-                licenseText = licenseText.substring(textVariantMatcher.end());
-                break;
+        if (matches.size() > 0) {
+            // the text before the first license, usually a copyright header, isn't part of the additional terms, only
+            // what isn't matched by any license after it is
+            StringBuilder additionalLicenseText = new StringBuilder();
+            int unmatchedStart = matches.get(0).getEnd();
+            for (LicenseMatcher.Match match : matches) {
+                if (!foundLicenses.contains(match.getKnownLicense())) {
+                    foundLicenses.add(match.getKnownLicense());
+                }
+                appendUnmatchedText(licenseText, unmatchedStart, match.getStart(), additionalLicenseText);
+                unmatchedStart = Math.max(unmatchedStart, match.getEnd());
+            }
+            appendUnmatchedText(licenseText, unmatchedStart, licenseText.length(), additionalLicenseText);
+            licenseText = additionalLicenseText.toString();
+            if (matches.size() > 1) {
+                StringBuilder matchesDescription = new StringBuilder();
+                for (LicenseMatcher.Match match : matches) {
+                    matchesDescription.append(" ").append(match.getKnownLicense().getId())
+                            .append(" [").append(match.getStart()).append("-").append(match.getEnd()).append("]");
+                }
+                output(START_INDENT, "Found " + matches.size() + " licenses in license file " + licenseFile.getFileName() + ":" + matchesDescription, false, false);
             }
         }
         if (foundLicenses.size() == 0) {
@@ -1123,19 +2081,17 @@ class LegalArtifactAggregator {
         }
     }
 
-    public KnownLicense getKnowLicenseByName(String licenseName) {
-        for (KnownLicense knownLicense : knownLicenses.getLicenses().values()) {
-            if (knownLicense.getName().equals(licenseName)) {
-                return knownLicense;
-            }
-            if (knownLicense.getAliases() != null && knownLicense.getAliases().size() > 0) {
-                for (String alias : knownLicense.getAliases()) {
-                    if (alias.equals(licenseName)) {
-                        return knownLicense;
-                    }
-                }
-            }
+    private void appendUnmatchedText(String licenseText, int start, int end, StringBuilder unmatchedText) {
+        if (start < end && StringUtils.isNotBlank(licenseText.substring(start, end))) {
+            unmatchedText.append(licenseText, start, end);
         }
-        return null;
+    }
+
+    public KnownLicense getKnowLicenseByName(String licenseName) {
+        return licenseNameIndex.findByName(licenseName);
+    }
+
+    public KnownLicense getKnownLicenseByUrl(String licenseUrl) {
+        return licenseNameIndex.findByUrl(licenseUrl);
     }
 }
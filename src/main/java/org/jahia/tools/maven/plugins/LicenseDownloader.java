@@ -0,0 +1,296 @@
+package org.jahia.tools.maven.plugins;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Downloads the license texts that POMs only reference by URL.
+ *
+ * Connecting and reading are bounded by a timeout so that a server that doesn't answer can't stall the build, and each
+ * URL is only ever downloaded once per build, later requests waiting for the running download and getting its result or
+ * failure. The texts are kept in an on-disk cache: they are used as they are for a given time, after which they are
+ * revalidated with their ETag and Last-Modified date, and a stale text is still used if the server can't be reached.
+ *
+ * In offline mode, only the cached texts are used and the other URLs are recorded as missed instead of being
+ * downloaded.
+ */
+class LicenseDownloader {
+
+    /**
+     * A downloaded license text as it is cached on disk, along with what is needed to revalidate it.
+     */
+    public static class CachedEntry {
+        private String url;
+        private String etag;
+        private String lastModified;
+        private String text;
+
+        public String getUrl() {
+            return url;
+        }
+
+        public void setUrl(String url) {
+            this.url = url;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public void setEtag(String etag) {
+            this.etag = etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public void setLastModified(String lastModified) {
+            this.lastModified = lastModified;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public void setText(String text) {
+            this.text = text;
+        }
+    }
+
+    // HttpURLConnection doesn't follow redirects from HTTP to HTTPS, which most license sites now use
+    private static final int MAX_REDIRECTS = 5;
+
+    private final File cacheDirectory;
+    private final long cacheTtlMillis;
+    private final int timeoutMillis;
+    private final int maxSize;
+    private final boolean offline;
+    private final ConcurrentMap<String, Future<String>> downloads = new ConcurrentHashMap<>();
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Set<String> offlineMisses = Collections.synchronizedSet(new LinkedHashSet<String>());
+    private int serverDownloads = 0;
+    private int cachedDownloads = 0;
+
+    /**
+     * @param cacheDirectory the directory the texts are cached in, or null to not cache them on disk
+     * @param cacheTtlMillis how long the cached texts are used for before being revalidated
+     * @param timeoutMillis  the connect and read timeout, 0 for no limit
+     * @param maxSize        the maximum size of a license text in bytes
+     */
+    LicenseDownloader(File cacheDirectory, long cacheTtlMillis, int timeoutMillis, int maxSize, boolean offline) {
+        this.cacheDirectory = cacheDirectory;
+        this.cacheTtlMillis = cacheTtlMillis;
+        this.timeoutMillis = timeoutMillis;
+        this.maxSize = maxSize;
+        this.offline = offline;
+        mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    /**
+     * @return the license text, or null if it can't be downloaded in offline mode
+     * @throws IOException if the download failed and no cached text is available
+     */
+    String download(final String url) throws IOException {
+        Future<String> download = downloads.get(url);
+        if (download == null) {
+            FutureTask<String> newDownload = new FutureTask<>(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return downloadOrReadCache(url);
+                }
+            });
+            download = downloads.putIfAbsent(url, newDownload);
+            if (download == null) {
+                download = newDownload;
+                newDownload.run();
+            }
+        }
+        try {
+            return download.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while downloading " + url, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    synchronized int getServerDownloads() {
+        return serverDownloads;
+    }
+
+    synchronized int getCachedDownloads() {
+        return cachedDownloads;
+    }
+
+    /**
+     * @return the URLs that were neither cached nor downloaded because of the offline mode
+     */
+    List<String> getOfflineMisses() {
+        synchronized (offlineMisses) {
+            return new ArrayList<>(offlineMisses);
+        }
+    }
+
+    private String downloadOrReadCache(String url) throws IOException {
+        File cacheFile = getCacheFile(url);
+        CachedEntry cachedEntry = readCachedEntry(cacheFile, url);
+        if (cachedEntry != null && (offline || System.currentTimeMillis() - cacheFile.lastModified() <= cacheTtlMillis)) {
+            countCachedDownload();
+            return cachedEntry.getText();
+        }
+        if (offline) {
+            offlineMisses.add("license URL " + url);
+            return null;
+        }
+        try {
+            return downloadFromServer(url, cacheFile, cachedEntry);
+        } catch (IOException e) {
+            if (cachedEntry == null) {
+                throw e;
+            }
+            System.err.println("Couldn't revalidate license " + url + ", using the cached text: " + e.getMessage());
+            countCachedDownload();
+            return cachedEntry.getText();
+        }
+    }
+
+    private String downloadFromServer(String url, File cacheFile, CachedEntry cachedEntry) throws IOException {
+        URL currentUrl = new URL(url);
+        for (int redirects = 0; ; redirects++) {
+            URLConnection connection = currentUrl.openConnection();
+            connection.setConnectTimeout(timeoutMillis);
+            connection.setReadTimeout(timeoutMillis);
+            if (!(connection instanceof HttpURLConnection)) {
+                return readText(connection);
+            }
+            HttpURLConnection httpConnection = (HttpURLConnection) connection;
+            httpConnection.setInstanceFollowRedirects(false);
+            if (cachedEntry != null) {
+                if (cachedEntry.getEtag() != null) {
+                    httpConnection.setRequestProperty("If-None-Match", cachedEntry.getEtag());
+                }
+                if (cachedEntry.getLastModified() != null) {
+                    httpConnection.setRequestProperty("If-Modified-Since", cachedEntry.getLastModified());
+                }
+            }
+            try {
+                int responseCode = httpConnection.getResponseCode();
+                if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cachedEntry != null) {
+                    // the cached text is used for another period
+                    cacheFile.setLastModified(System.currentTimeMillis());
+                    countCachedDownload();
+                    return cachedEntry.getText();
+                }
+                if (responseCode >= 300 && responseCode < 400 && httpConnection.getHeaderField("Location") != null) {
+                    if (redirects == MAX_REDIRECTS) {
+                        throw new IOException("Too many redirects for " + url);
+                    }
+                    currentUrl = new URL(currentUrl, httpConnection.getHeaderField("Location"));
+                    continue;
+                }
+                if (responseCode != HttpURLConnection.HTTP_OK) {
+                    throw new IOException("Server returned HTTP " + responseCode + " for " + currentUrl);
+                }
+                synchronized (this) {
+                    serverDownloads++;
+                }
+                String text = readText(httpConnection);
+                writeCachedEntry(cacheFile, url, httpConnection.getHeaderField("ETag"), httpConnection.getHeaderField("Last-Modified"), text);
+                return text;
+            } finally {
+                httpConnection.disconnect();
+            }
+        }
+    }
+
+    private String readText(URLConnection connection) throws IOException {
+        InputStream inputStream = connection.getInputStream();
+        try {
+            return TextEntryReader.read(inputStream, maxSize);
+        } finally {
+            IOUtils.closeQuietly(inputStream);
+        }
+    }
+
+    private synchronized void countCachedDownload() {
+        cachedDownloads++;
+    }
+
+    private CachedEntry readCachedEntry(File cacheFile, String url) {
+        if (cacheFile == null || !cacheFile.exists()) {
+            return null;
+        }
+        try {
+            CachedEntry cachedEntry = mapper.readValue(cacheFile, CachedEntry.class);
+            // guards against digest collisions
+            if (url.equals(cachedEntry.getUrl()) && cachedEntry.getText() != null) {
+                return cachedEntry;
+            }
+        } catch (IOException e) {
+            // a corrupted entry is downloaded again
+        }
+        return null;
+    }
+
+    private void writeCachedEntry(File cacheFile, String url, String etag, String lastModified, String text) {
+        if (cacheFile == null) {
+            return;
+        }
+        CachedEntry cachedEntry = new CachedEntry();
+        cachedEntry.setUrl(url);
+        cachedEntry.setEtag(etag);
+        cachedEntry.setLastModified(lastModified);
+        cachedEntry.setText(text);
+        try {
+            cacheDirectory.mkdirs();
+            // written to a temporary file first so that concurrent builds never read a partial entry
+            File temporaryFile = File.createTempFile("license-", ".tmp", cacheDirectory);
+            mapper.writeValue(temporaryFile, cachedEntry);
+            if (!temporaryFile.renameTo(cacheFile)) {
+                cacheFile.delete();
+                if (!temporaryFile.renameTo(cacheFile)) {
+                    temporaryFile.delete();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Couldn't cache license " + url + ": " + e.getMessage());
+        }
+    }
+
+    private File getCacheFile(String url) {
+        if (cacheDirectory == null || cacheTtlMillis <= 0) {
+            return null;
+        }
+        try {
+            return new File(cacheDirectory, Digests.toHex(Digests.newDigest().digest(url.getBytes("UTF-8"))) + ".json");
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -90,18 +90,6 @@ public class LicenseFile implements Comparable<LicenseFile> {
     public LicenseFile() {
     }
 
-    LicenseFile(String fullPath, String fileName, String projectOrigin, List<String> licenseLines) {
-        this.fullPath = fullPath;
-        this.fileName = fileName;
-        this.projectOrigin = projectOrigin;
-        StringBuilder stringBuilder = new StringBuilder(4096);
-        for (String licenseLine : licenseLines) {
-            stringBuilder.append(licenseLine).append("\n");
-        }
-        text = stringBuilder.toString();
-        hash = text.hashCode();
-    }
-
     public LicenseFile(String fullPath, String fileName, String projectOrigin, String text) {
         this.fullPath = fullPath;
         this.fileName = fileName;
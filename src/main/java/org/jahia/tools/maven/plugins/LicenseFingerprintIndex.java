@@ -0,0 +1,408 @@
+package org.jahia.tools.maven.plugins;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Recognizes licenses whatever their formatting: texts are reduced to their lower-cased words, leaving out whitespace,
+ * comment markers, punctuation, HTML tags and entities, and a license is found when most of the shingles, i.e. runs of
+ * consecutive words, of its text are present in the license file. This lets a single fingerprint per license recognize
+ * the commented, HTML or justified copies that would each need their own text variant otherwise.
+ *
+ * All the shingles are kept in a single index so that looking for all the licenses in a text takes a single pass over
+ * its words. A license is only looked for in the runs of the text where its shingles follow each other closely, so that
+ * the span reported for a license doesn't stretch to the shingles of it found elsewhere in the text, such as in another
+ * license.
+ *
+ * Literal text variants that are only another formatting of the text of their license, such as a commented or
+ * justified copy, can be verified by their fingerprint instead of their regular expression, see
+ * {@link #isFormattingVariant(String, long[])}.
+ */
+class LicenseFingerprintIndex {
+
+    private static final int SHINGLE_SIZE = 5;
+    // licenses with fewer shingles are too short to be recognized reliably
+    private static final int MIN_LICENSE_SHINGLES = 20;
+    private static final double MIN_COVERAGE = 0.9;
+    // the share of the shingles of a text variant that its license must have for the variant to be verified by the
+    // fingerprint of the license
+    private static final double MIN_FORMATTING_VARIANT_COVERAGE = 0.99;
+    // a changed word makes a gap of a shingle size between the shingles found
+    private static final int MAX_CLUSTER_GAP = 2 * SHINGLE_SIZE;
+    private static final int MAX_HTML_MARKUP_LENGTH = 1024;
+
+    /**
+     * The words of a text along with the offset of each of them in the original text.
+     */
+    static class Words {
+        private final long[] hashes;
+        private final int[] starts;
+        private final int[] ends;
+        private final int count;
+        private final int textLength;
+
+        Words(long[] hashes, int[] starts, int[] ends, int count, int textLength) {
+            this.hashes = hashes;
+            this.starts = starts;
+            this.ends = ends;
+            this.count = count;
+            this.textLength = textLength;
+        }
+
+        long getShingleHash(int start) {
+            long shingleHash = 17;
+            for (int i = start; i < start + SHINGLE_SIZE; i++) {
+                shingleHash = shingleHash * 1000003L + hashes[i];
+            }
+            return shingleHash;
+        }
+
+        /**
+         * @return the offset right after the word preceding the shingle, so that the punctuation or markup opening the
+         * shingle, such as a comment marker, is part of it
+         */
+        int getShingleStart(int start) {
+            return start > 0 ? ends[start - 1] : 0;
+        }
+
+        int getShingleCount() {
+            return Math.max(0, count - SHINGLE_SIZE + 1);
+        }
+
+        /**
+         * @return the offset of the word following the shingle, so that the punctuation or markup closing the shingle
+         * is part of it
+         */
+        int getShingleEnd(int start) {
+            return start + SHINGLE_SIZE < count ? starts[start + SHINGLE_SIZE] : textLength;
+        }
+    }
+
+    private final KnownLicense[] licenses;
+    private final int[] licenseShingleCounts;
+    private final Map<Long, int[]> licensesByShingle = new HashMap<>();
+
+    LicenseFingerprintIndex(List<KnownLicense> knownLicenses) {
+        List<KnownLicense> indexedLicenses = new ArrayList<>();
+        List<Integer> indexedLicenseShingleCounts = new ArrayList<>();
+        for (KnownLicense knownLicense : knownLicenses) {
+            // precompiled for the known licenses database, so that their texts aren't read
+            long[] licenseShingles = knownLicense.getTextToUseShingles();
+            if (licenseShingles == null || licenseShingles.length < MIN_LICENSE_SHINGLES) {
+                continue;
+            }
+            int licenseIndex = indexedLicenses.size();
+            indexedLicenses.add(knownLicense);
+            indexedLicenseShingleCounts.add(licenseShingles.length);
+            for (long licenseShingle : licenseShingles) {
+                int[] shingleLicenses = licensesByShingle.get(licenseShingle);
+                if (shingleLicenses == null) {
+                    shingleLicenses = new int[]{licenseIndex};
+                } else {
+                    shingleLicenses = Arrays.copyOf(shingleLicenses, shingleLicenses.length + 1);
+                    shingleLicenses[shingleLicenses.length - 1] = licenseIndex;
+                }
+                licensesByShingle.put(licenseShingle, shingleLicenses);
+            }
+        }
+        licenses = indexedLicenses.toArray(new KnownLicense[indexedLicenses.size()]);
+        licenseShingleCounts = new int[licenses.length];
+        for (int i = 0; i < licenseShingleCounts.length; i++) {
+            licenseShingleCounts[i] = indexedLicenseShingleCounts.get(i);
+        }
+    }
+
+    /**
+     * @return the license with the most shingles found in the text among the ones with enough of their shingles found,
+     * or null if there are none
+     */
+    LicenseMatcher.Match findBestMatch(String text) {
+        Map<KnownLicense, LicenseMatcher.Match> matches = findMatches(text);
+        return matches.isEmpty() ? null : matches.values().iterator().next();
+    }
+
+    /**
+     * Looks for the licenses with enough of their shingles found in a run of the text. As licenses may share most of
+     * their text, such as the versions of a license, a license is only kept if it has the most shingles found among the
+     * licenses found in the same part of the text.
+     *
+     * @return the licenses found in the text, the ones with the most shingles found first
+     */
+    Map<KnownLicense, LicenseMatcher.Match> findMatches(String text) {
+        Words words = getWords(text);
+        // the positions in the text of the shingles of each license
+        int[][] licensePositions = new int[licenses.length][];
+        int[] licensePositionCounts = new int[licenses.length];
+        long[] shingleHashes = new long[words.getShingleCount()];
+        for (int i = 0; i < shingleHashes.length; i++) {
+            shingleHashes[i] = words.getShingleHash(i);
+            int[] shingleLicenses = licensesByShingle.get(shingleHashes[i]);
+            if (shingleLicenses == null) {
+                continue;
+            }
+            for (int licenseIndex : shingleLicenses) {
+                if (licensePositions[licenseIndex] == null) {
+                    licensePositions[licenseIndex] = new int[16];
+                } else if (licensePositionCounts[licenseIndex] == licensePositions[licenseIndex].length) {
+                    licensePositions[licenseIndex] = Arrays.copyOf(licensePositions[licenseIndex], licensePositionCounts[licenseIndex] * 2);
+                }
+                licensePositions[licenseIndex][licensePositionCounts[licenseIndex]++] = i;
+            }
+        }
+        List<Run> runs = new ArrayList<>();
+        for (int i = 0; i < licenses.length; i++) {
+            // a license can't have enough distinct shingles found if it doesn't have enough shingles found at all
+            if (licensePositionCounts[i] >= MIN_COVERAGE * licenseShingleCounts[i]) {
+                Run run = findBestRun(i, licensePositions[i], licensePositionCounts[i], shingleHashes);
+                if (run.foundShingleCount >= MIN_COVERAGE * licenseShingleCounts[i]) {
+                    runs.add(run);
+                }
+            }
+        }
+        Collections.sort(runs, new Comparator<Run>() {
+            @Override
+            public int compare(Run o1, Run o2) {
+                int result = Integer.compare(o2.foundShingleCount, o1.foundShingleCount);
+                return result != 0 ? result : Integer.compare(o1.licenseIndex, o2.licenseIndex);
+            }
+        });
+        Map<KnownLicense, LicenseMatcher.Match> matches = new LinkedHashMap<>();
+        List<Run> keptRuns = new ArrayList<>();
+        for (Run run : runs) {
+            if (overlapsAny(run, keptRuns)) {
+                continue;
+            }
+            keptRuns.add(run);
+            matches.put(licenses[run.licenseIndex], new LicenseMatcher.Match(licenses[run.licenseIndex],
+                    words.getShingleStart(run.firstPosition), words.getShingleEnd(run.lastPosition)));
+        }
+        return matches;
+    }
+
+    /**
+     * @return whether a text variant is a literal copy of the license text, only formatted differently, so that the
+     * license's fingerprint recognizes it as well as the variant's regular expression
+     */
+    static boolean isFormattingVariant(String textVariantPattern, long[] licenseShingles) {
+        String literalPattern = textVariantPattern.trim();
+        if (licenseShingles == null || licenseShingles.length < MIN_LICENSE_SHINGLES || !literalPattern.startsWith("\\Q")) {
+            return false;
+        }
+        int quoteEnd = literalPattern.indexOf("\\E");
+        if (quoteEnd >= 0 && quoteEnd != literalPattern.length() - 2) {
+            return false;
+        }
+        long[] textVariantShingles = getShingles(literalPattern.substring(2, quoteEnd >= 0 ? quoteEnd : literalPattern.length()));
+        int commonShingleCount = 0;
+        int i = 0;
+        int j = 0;
+        while (i < textVariantShingles.length && j < licenseShingles.length) {
+            if (textVariantShingles[i] == licenseShingles[j]) {
+                commonShingleCount++;
+                i++;
+                j++;
+            } else if (textVariantShingles[i] < licenseShingles[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        // a copy of the variant must be recognized by the fingerprint, and the span found must be the whole copy, which
+        // may not have more than a few words that aren't in the license
+        return commonShingleCount >= MIN_COVERAGE * licenseShingles.length
+                && commonShingleCount >= MIN_FORMATTING_VARIANT_COVERAGE * textVariantShingles.length;
+    }
+
+    boolean contains(KnownLicense knownLicense) {
+        for (KnownLicense license : licenses) {
+            if (license == knownLicense) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean overlapsAny(Run run, List<Run> runs) {
+        for (Run otherRun : runs) {
+            if (run.firstPosition <= otherRun.lastPosition && otherRun.firstPosition <= run.lastPosition) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Splits the positions of the shingles of a license found in the text into runs where they are at most a few
+     * shingles apart, and trims the sparse ends of the runs.
+     *
+     * @return the run with the most distinct shingles of the license
+     */
+    private Run findBestRun(int licenseIndex, int[] positions, int positionCount, long[] shingleHashes) {
+        // allows for a few changed words, such as a copyright holder, and for the shingles repeated in the license
+        int maxGap = 2 * SHINGLE_SIZE + licenseShingleCounts[licenseIndex] / 10;
+        Run bestRun = null;
+        int runStart = 0;
+        for (int i = 1; i <= positionCount; i++) {
+            if (i < positionCount && positions[i] - positions[i - 1] <= maxGap) {
+                continue;
+            }
+            int runEnd = i - 1;
+            // a few shingles shared with another text, such as the license following this one, are separated from the
+            // rest of the run by many more shingles than their number, unlike the parts of the license around a few
+            // changed words
+            while (runEnd > runStart) {
+                int clusterStart = getClusterStart(positions, runStart, runEnd);
+                if (clusterStart == runStart || SHINGLE_SIZE * (runEnd - clusterStart + 1) >= positions[clusterStart] - positions[clusterStart - 1]) {
+                    break;
+                }
+                runEnd = clusterStart - 1;
+            }
+            int trimmedRunStart = runStart;
+            while (trimmedRunStart < runEnd) {
+                int clusterEnd = getClusterEnd(positions, trimmedRunStart, runEnd);
+                if (clusterEnd == runEnd || SHINGLE_SIZE * (clusterEnd - trimmedRunStart + 1) >= positions[clusterEnd + 1] - positions[clusterEnd]) {
+                    break;
+                }
+                trimmedRunStart = clusterEnd + 1;
+            }
+            Set<Long> runShingles = new HashSet<>();
+            for (int j = trimmedRunStart; j <= runEnd; j++) {
+                runShingles.add(shingleHashes[positions[j]]);
+            }
+            if (bestRun == null || runShingles.size() > bestRun.foundShingleCount) {
+                bestRun = new Run(licenseIndex, runShingles.size(), positions[trimmedRunStart], positions[runEnd]);
+            }
+            runStart = i;
+        }
+        return bestRun;
+    }
+
+    /**
+     * @return the index of the first position of the cluster of close positions ending at the given index
+     */
+    private static int getClusterStart(int[] positions, int start, int end) {
+        int clusterStart = end;
+        while (clusterStart > start && positions[clusterStart] - positions[clusterStart - 1] <= MAX_CLUSTER_GAP) {
+            clusterStart--;
+        }
+        return clusterStart;
+    }
+
+    /**
+     * @return the index of the last position of the cluster of close positions starting at the given index
+     */
+    private static int getClusterEnd(int[] positions, int start, int end) {
+        int clusterEnd = start;
+        while (clusterEnd < end && positions[clusterEnd + 1] - positions[clusterEnd] <= MAX_CLUSTER_GAP) {
+            clusterEnd++;
+        }
+        return clusterEnd;
+    }
+
+    private static class Run {
+        private final int licenseIndex;
+        private final int foundShingleCount;
+        private final int firstPosition;
+        private final int lastPosition;
+
+        Run(int licenseIndex, int foundShingleCount, int firstPosition, int lastPosition) {
+            this.licenseIndex = licenseIndex;
+            this.foundShingleCount = foundShingleCount;
+            this.firstPosition = firstPosition;
+            this.lastPosition = lastPosition;
+        }
+    }
+
+    /**
+     * @return the distinct shingle hashes of the text, sorted
+     */
+    static long[] getShingles(String text) {
+        Words words = getWords(text);
+        Set<Long> shingles = new HashSet<>();
+        for (int i = 0; i < words.getShingleCount(); i++) {
+            shingles.add(words.getShingleHash(i));
+        }
+        long[] sortedShingles = new long[shingles.size()];
+        int i = 0;
+        for (Long shingle : shingles) {
+            sortedShingles[i++] = shingle;
+        }
+        Arrays.sort(sortedShingles);
+        return sortedShingles;
+    }
+
+    static Words getWords(String text) {
+        long[] hashes = new long[Math.max(16, text.length() / 6)];
+        int[] starts = new int[hashes.length];
+        int[] ends = new int[hashes.length];
+        int count = 0;
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (c == '<' && i + 1 < text.length() && isHtmlMarkupStart(text.charAt(i + 1))) {
+                int markupEnd = text.indexOf('>', i + 1);
+                if (markupEnd > 0 && markupEnd - i <= MAX_HTML_MARKUP_LENGTH) {
+                    i = markupEnd + 1;
+                    continue;
+                }
+            } else if (c == '&') {
+                int entityEnd = getHtmlEntityEnd(text, i);
+                if (entityEnd > 0) {
+                    i = entityEnd;
+                    continue;
+                }
+            }
+            if (!Character.isLetterOrDigit(c)) {
+                i++;
+                continue;
+            }
+            int start = i;
+            long hash = 0;
+            while (i < text.length() && Character.isLetterOrDigit(text.charAt(i))) {
+                hash = hash * 31 + Character.toLowerCase(text.charAt(i));
+                i++;
+            }
+            if (count == hashes.length) {
+                hashes = Arrays.copyOf(hashes, count * 2);
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            hashes[count] = hash;
+            starts[count] = start;
+            ends[count] = i;
+            count++;
+        }
+        return new Words(hashes, starts, ends, count, text.length());
+    }
+
+    private static boolean isHtmlMarkupStart(char c) {
+        return Character.isLetter(c) || c == '/' || c == '!' || c == '?';
+    }
+
+    /**
+     * @return the offset right after the HTML entity, such as &amp;quot; or &amp;#160;, starting at the given offset, or
+     * -1 if there is none
+     */
+    private static int getHtmlEntityEnd(String text, int start) {
+        int i = start + 1;
+        if (i < text.length() && text.charAt(i) == '#') {
+            i++;
+        }
+        int nameStart = i;
+        while (i < text.length() && i - nameStart < 10 && Character.isLetterOrDigit(text.charAt(i))) {
+            i++;
+        }
+        if (i > nameStart && i < text.length() && text.charAt(i) == ';') {
+            return i + 1;
+        }
+        return -1;
+    }
+}
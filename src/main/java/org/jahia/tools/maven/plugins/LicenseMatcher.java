@@ -0,0 +1,507 @@
+package org.jahia.tools.maven.plugins;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Matches license texts against the text variants of the known licenses. The variants are sorted once, when the
+ * matcher is built, instead of for every license file: longest variants first so that the most specific license wins,
+ * then in the order the licenses and their variants were defined so that variants of the same length are all kept and
+ * always tried in the same order.
+ *
+ * A text may contain several licenses, such as dual licensing terms or the licenses of bundled libraries appended to
+ * the main one: once a license is found, the text before and after it is looked up again, until no more licenses are
+ * found, so that each license is reported with its offsets and only the spans that matched no license are left.
+ *
+ * Lookups work on an immutable snapshot of the sorted variants so they may be done from multiple threads, while
+ * licenses added afterwards, such as additional license terms, replace the snapshot.
+ *
+ * Before verifying the variants with their regular expressions, a single pass over the text looks for anchor phrases
+ * taken from the literal parts of each variant, so that only the variants whose anchors are all present are verified.
+ *
+ * When fingerprint matching is enabled, the literal variants that are only another formatting of the text of their
+ * license, such as commented or justified copies, are verified in their turn by looking for the license's fingerprint
+ * in the text instead of running their regular expressions, and their texts are never read. When none of the variants
+ * matches, the license may still be recognized by its fingerprint, whatever its formatting. The fingerprints are looked
+ * for at most once per span of the text.
+ *
+ * The variants are only sorted and indexed, and the fingerprints indexed, when the first text is looked up. The lengths,
+ * anchor phrases and fingerprints of the known licenses come precompiled from the known licenses database, so the text
+ * of a variant is only read, and its regular expression compiled, when a text contains all its anchor phrases, and no
+ * license text is read when all the results come from the scan cache.
+ *
+ * As the regular expressions run against texts coming from third-party JARs, the matching of each text may be given a
+ * time and character budget: a text whose matching exceeds it is reported with a {@link MatchTimeoutException} instead
+ * of blocking the build.
+ *
+ * As most license files are identical copies of a few common licenses, the results of the lookups are also kept in a
+ * bounded cache keyed by a digest of the text, which is emptied whenever a license is added.
+ */
+class LicenseMatcher {
+
+    static class Match {
+        private final KnownLicense knownLicense;
+        private final int start;
+        private final int end;
+
+        Match(KnownLicense knownLicense, int start, int end) {
+            this.knownLicense = knownLicense;
+            this.start = start;
+            this.end = end;
+        }
+
+        KnownLicense getKnownLicense() {
+            return knownLicense;
+        }
+
+        /**
+         * @return the offset in the matched text of the beginning of the matched license
+         */
+        int getStart() {
+            return start;
+        }
+
+        /**
+         * @return the offset in the matched text right after the matched license
+         */
+        int getEnd() {
+            return end;
+        }
+    }
+
+    /**
+     * Thrown when matching a text exceeds its budget, see {@link BoundedCharSequence}.
+     */
+    static class MatchTimeoutException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        MatchTimeoutException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * The results of the last looked up texts, by digest of the text, the least recently used ones being evicted first.
+     */
+    private static class MatchCache extends LinkedHashMap<String, List<Match>> {
+        private static final long serialVersionUID = 1L;
+
+        MatchCache() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, List<Match>> eldest) {
+            return size() > MATCH_CACHE_SIZE;
+        }
+    }
+
+    private static class Candidate {
+        private final KnownLicense knownLicense;
+        private final TextVariant textVariant;
+        private final int licenseOrder;
+        private final int variantOrder;
+        // phrases that any text matching the variant contains, null if they couldn't be determined
+        private final List<String> anchorPhrases;
+        // whether the variant is verified by the fingerprint of its license instead of its regular expression
+        private final boolean fingerprintVerified;
+
+        Candidate(KnownLicense knownLicense, TextVariant textVariant, int licenseOrder, int variantOrder, LicenseFingerprintIndex fingerprintIndex) {
+            this.knownLicense = knownLicense;
+            this.textVariant = textVariant;
+            this.licenseOrder = licenseOrder;
+            this.variantOrder = variantOrder;
+            this.anchorPhrases = textVariant.getAnchorPhrases();
+            this.fingerprintVerified = fingerprintIndex != null && fingerprintIndex.contains(knownLicense)
+                    && textVariant.isFormattingVariant(knownLicense.getTextToUseShingles());
+        }
+    }
+
+    /**
+     * The candidates sorted by priority along with the automaton looking for all their anchor phrases at once.
+     */
+    private static class CandidateIndex {
+        private final Candidate[] candidates;
+        // for each candidate, the identifiers of its anchor phrases in the automaton
+        private final int[][] candidateAnchorPhraseIds;
+        private final PhraseAutomaton anchorPhraseAutomaton;
+
+        CandidateIndex(Candidate[] candidates) {
+            this.candidates = candidates;
+            candidateAnchorPhraseIds = new int[candidates.length][];
+            Map<String, Integer> anchorPhraseIds = new LinkedHashMap<>();
+            for (int i = 0; i < candidates.length; i++) {
+                if (candidates[i].anchorPhrases == null) {
+                    continue;
+                }
+                candidateAnchorPhraseIds[i] = new int[candidates[i].anchorPhrases.size()];
+                for (int j = 0; j < candidates[i].anchorPhrases.size(); j++) {
+                    String anchorPhrase = candidates[i].anchorPhrases.get(j);
+                    Integer anchorPhraseId = anchorPhraseIds.get(anchorPhrase);
+                    if (anchorPhraseId == null) {
+                        anchorPhraseId = anchorPhraseIds.size();
+                        anchorPhraseIds.put(anchorPhrase, anchorPhraseId);
+                    }
+                    candidateAnchorPhraseIds[i][j] = anchorPhraseId;
+                }
+            }
+            anchorPhraseAutomaton = new PhraseAutomaton(new ArrayList<>(anchorPhraseIds.keySet()));
+        }
+    }
+
+    private static final Comparator<Candidate> PRIORITY_ORDER = new Comparator<Candidate>() {
+        @Override
+        public int compare(Candidate o1, Candidate o2) {
+            int result = Integer.compare(o2.textVariant.getTextLength(), o1.textVariant.getTextLength());
+            if (result == 0) {
+                result = Integer.compare(o1.licenseOrder, o2.licenseOrder);
+            }
+            if (result == 0) {
+                result = Integer.compare(o1.variantOrder, o2.variantOrder);
+            }
+            return result;
+        }
+    };
+
+    private static final Comparator<Match> OFFSET_ORDER = new Comparator<Match>() {
+        @Override
+        public int compare(Match o1, Match o2) {
+            return Integer.compare(o1.getStart(), o2.getStart());
+        }
+    };
+
+    private static final int MATCH_CACHE_SIZE = 1024;
+    private static final int ANCHOR_PHRASE_LENGTH = 32;
+    private static final int MIN_ANCHOR_PHRASE_LENGTH = 8;
+
+    private final Map<String, Integer> licenseOrders = new HashMap<>();
+    private final KnownLicenses knownLicenses;
+    // built from the known licenses, including the ones added so far, when first needed
+    private volatile CandidateIndex candidateIndex;
+    // only built for the known licenses database, not for the additional license terms found afterwards
+    private final List<KnownLicense> fingerprintLicenses;
+    private LicenseFingerprintIndex fingerprintIndex;
+    private final Map<String, List<Match>> matchCache = new MatchCache();
+    private final AtomicLong matchCacheHits = new AtomicLong();
+    private final AtomicLong matchCacheMisses = new AtomicLong();
+    private final long matchTimeoutMillis;
+    private final long maxMatchCharacterReads;
+
+    /**
+     * @param matchTimeoutMillis     the time the regular expressions may spend on a text, 0 for no limit
+     * @param maxMatchCharacterReads the number of characters the regular expressions may read from a text, 0 for no
+     *                               limit
+     */
+    LicenseMatcher(KnownLicenses knownLicenses, boolean fingerprintMatching, long matchTimeoutMillis, long maxMatchCharacterReads) {
+        this.knownLicenses = knownLicenses;
+        this.matchTimeoutMillis = matchTimeoutMillis;
+        this.maxMatchCharacterReads = maxMatchCharacterReads;
+        fingerprintLicenses = fingerprintMatching ? new ArrayList<>(knownLicenses.getLicenses().values()) : null;
+    }
+
+    /**
+     * Adds a license to match against, replacing the variants of any license with the same id which keeps its
+     * priority among the licenses of the same length. The license must already be one of the known licenses.
+     */
+    synchronized void addLicense(KnownLicense knownLicense) {
+        if (candidateIndex == null) {
+            // the known licenses the candidates will be built from already include it
+            synchronized (matchCache) {
+                matchCache.clear();
+            }
+            return;
+        }
+        List<Candidate> newCandidates = new ArrayList<>();
+        for (Candidate candidate : candidateIndex.candidates) {
+            if (!candidate.knownLicense.getId().equals(knownLicense.getId())) {
+                newCandidates.add(candidate);
+            }
+        }
+        addCandidates(knownLicense, newCandidates);
+        Candidate[] sortedCandidates = newCandidates.toArray(new Candidate[newCandidates.size()]);
+        Arrays.sort(sortedCandidates, PRIORITY_ORDER);
+        CandidateIndex newCandidateIndex = new CandidateIndex(sortedCandidates);
+        synchronized (matchCache) {
+            candidateIndex = newCandidateIndex;
+            matchCache.clear();
+        }
+    }
+
+    /**
+     * @return the licenses found in the given text sorted by their offset, an empty list if none was found
+     * @throws MatchTimeoutException if the matching of the text exceeded its budget
+     */
+    List<Match> findMatches(String text) {
+        String textDigest = getTextDigest(text);
+        synchronized (matchCache) {
+            List<Match> matches = matchCache.get(textDigest);
+            if (matches != null) {
+                matchCacheHits.incrementAndGet();
+                return matches;
+            }
+        }
+        matchCacheMisses.incrementAndGet();
+        CandidateIndex currentCandidateIndex = getCandidateIndex();
+        List<Match> matches = Collections.unmodifiableList(findMatches(text, currentCandidateIndex));
+        synchronized (matchCache) {
+            // don't cache a result computed with licenses that have been replaced since
+            if (currentCandidateIndex == candidateIndex) {
+                matchCache.put(textDigest, matches);
+            }
+        }
+        return matches;
+    }
+
+    private synchronized CandidateIndex getCandidateIndex() {
+        if (candidateIndex == null) {
+            List<Candidate> initialCandidates = new ArrayList<>();
+            for (KnownLicense knownLicense : knownLicenses.getLicenses().values()) {
+                addCandidates(knownLicense, initialCandidates);
+            }
+            Candidate[] sortedCandidates = initialCandidates.toArray(new Candidate[initialCandidates.size()]);
+            Arrays.sort(sortedCandidates, PRIORITY_ORDER);
+            candidateIndex = new CandidateIndex(sortedCandidates);
+        }
+        return candidateIndex;
+    }
+
+    private synchronized LicenseFingerprintIndex getFingerprintIndex() {
+        if (fingerprintIndex == null && fingerprintLicenses != null) {
+            fingerprintIndex = new LicenseFingerprintIndex(fingerprintLicenses);
+        }
+        return fingerprintIndex;
+    }
+
+    long getMatchCacheHits() {
+        return matchCacheHits.get();
+    }
+
+    long getMatchCacheMisses() {
+        return matchCacheMisses.get();
+    }
+
+    private List<Match> findMatches(String text, CandidateIndex candidateIndex) {
+        // the anchor phrases are looked for once in the whole text, a phrase found in another span only costs an
+        // unnecessary verification
+        boolean[] foundAnchorPhrases = candidateIndex.anchorPhraseAutomaton.findPhrases(text);
+        BoundedCharSequence boundedText = new BoundedCharSequence(text, matchTimeoutMillis, maxMatchCharacterReads);
+        List<Match> matches = new ArrayList<>();
+        LinkedList<int[]> unmatchedSpans = new LinkedList<>();
+        unmatchedSpans.add(new int[]{0, text.length()});
+        while (!unmatchedSpans.isEmpty()) {
+            int[] unmatchedSpan = unmatchedSpans.removeFirst();
+            Match match = findFirstMatch(text, boundedText, unmatchedSpan[0], unmatchedSpan[1], candidateIndex, foundAnchorPhrases);
+            if (match == null) {
+                continue;
+            }
+            matches.add(match);
+            if (match.getEnd() > match.getStart()) {
+                unmatchedSpans.add(new int[]{unmatchedSpan[0], match.getStart()});
+                unmatchedSpans.add(new int[]{match.getEnd(), unmatchedSpan[1]});
+            }
+        }
+        Collections.sort(matches, OFFSET_ORDER);
+        return matches;
+    }
+
+    /**
+     * @return the license with the highest priority found between the given offsets of the text, or null if none was
+     * found
+     */
+    private Match findFirstMatch(String text, BoundedCharSequence boundedText, int start, int end, CandidateIndex candidateIndex, boolean[] foundAnchorPhrases) {
+        if (StringUtils.isBlank(text.substring(start, end))) {
+            return null;
+        }
+        // the licenses whose fingerprints are found in the span, looked for when first needed
+        Map<KnownLicense, Match> fingerprintMatches = null;
+        for (int i = 0; i < candidateIndex.candidates.length; i++) {
+            if (!containsAll(foundAnchorPhrases, candidateIndex.candidateAnchorPhraseIds[i])) {
+                continue;
+            }
+            Candidate candidate = candidateIndex.candidates[i];
+            if (candidate.fingerprintVerified) {
+                if (fingerprintMatches == null) {
+                    fingerprintMatches = findFingerprintMatches(text, start, end);
+                }
+                Match match = fingerprintMatches.get(candidate.knownLicense);
+                if (match != null) {
+                    return match;
+                }
+                continue;
+            }
+            Pattern textVariantPattern = candidate.textVariant.getCompiledTextPattern();
+            if (textVariantPattern == null) {
+                // the text couldn't be read
+                continue;
+            }
+            Matcher textVariantMatcher = textVariantPattern.matcher(boundedText);
+            textVariantMatcher.region(start, end);
+            if (textVariantMatcher.find()) {
+                return new Match(candidate.knownLicense, textVariantMatcher.start(), textVariantMatcher.end());
+            }
+        }
+        if (fingerprintMatches == null) {
+            fingerprintMatches = findFingerprintMatches(text, start, end);
+        }
+        return fingerprintMatches.isEmpty() ? null : fingerprintMatches.values().iterator().next();
+    }
+
+    /**
+     * @return the licenses whose fingerprints are found between the given offsets of the text, the ones with the most
+     * shingles found first, with their offsets in the whole text
+     */
+    private Map<KnownLicense, Match> findFingerprintMatches(String text, int start, int end) {
+        LicenseFingerprintIndex currentFingerprintIndex = getFingerprintIndex();
+        if (currentFingerprintIndex == null) {
+            return Collections.emptyMap();
+        }
+        Map<KnownLicense, Match> fingerprintMatches = new LinkedHashMap<>();
+        for (Match match : currentFingerprintIndex.findMatches(text.substring(start, end)).values()) {
+            fingerprintMatches.put(match.getKnownLicense(), new Match(match.getKnownLicense(), start + match.getStart(), start + match.getEnd()));
+        }
+        return fingerprintMatches;
+    }
+
+    private static boolean containsAll(boolean[] foundAnchorPhrases, int[] anchorPhraseIds) {
+        if (anchorPhraseIds == null) {
+            return true;
+        }
+        for (int anchorPhraseId : anchorPhraseIds) {
+            if (!foundAnchorPhrases[anchorPhraseId]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds phrases that any text matching a variant's regular expression contains, taken from its literal parts.
+     * Only expressions made of literals separated by wildcards, as the known license variants are, are supported,
+     * as an alternation or a group could make any literal optional.
+     *
+     * @return the anchor phrases of the variant or null if they couldn't be determined
+     */
+    static List<String> getAnchorPhrases(String textPattern) {
+        List<String> literals = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < textPattern.length()) {
+            char c = textPattern.charAt(i);
+            if (textPattern.startsWith("\\Q", i)) {
+                int quoteEnd = textPattern.indexOf("\\E", i + 2);
+                if (quoteEnd < 0) {
+                    quoteEnd = textPattern.length();
+                }
+                literal.append(textPattern, i + 2, quoteEnd);
+                i = quoteEnd + 2;
+                continue;
+            }
+            if (c == '\\' && i + 1 < textPattern.length()) {
+                char escaped = textPattern.charAt(i + 1);
+                if (escaped == 's' || escaped == 'S') {
+                    addLiteral(literal, literals);
+                } else if (!Character.isLetterOrDigit(escaped)) {
+                    literal.append(escaped);
+                } else {
+                    return null;
+                }
+                i += 2;
+                continue;
+            }
+            if (c == '.') {
+                addLiteral(literal, literals);
+            } else if (c == '*' || c == '?' || c == '+' || c == '{') {
+                // the quantifier applies to the last character
+                if (literal.length() > 0) {
+                    literal.setLength(literal.length() - 1);
+                }
+                addLiteral(literal, literals);
+                if (c == '{') {
+                    int quantifierEnd = textPattern.indexOf('}', i);
+                    if (quantifierEnd < 0) {
+                        return null;
+                    }
+                    i = quantifierEnd;
+                }
+            } else if ("()[]|^$}".indexOf(c) >= 0) {
+                return null;
+            } else {
+                literal.append(c);
+            }
+            i++;
+        }
+        addLiteral(literal, literals);
+
+        String longestLiteral = "";
+        for (String candidateLiteral : literals) {
+            if (candidateLiteral.length() > longestLiteral.length()) {
+                longestLiteral = candidateLiteral;
+            }
+        }
+        List<String> anchorPhrases = new ArrayList<>();
+        if (longestLiteral.length() < MIN_ANCHOR_PHRASE_LENGTH) {
+            return anchorPhrases;
+        }
+        // the beginning, the middle and the end of the longest literal and the beginning and end of the whole text
+        addAnchorPhrase(longestLiteral.substring(0, Math.min(ANCHOR_PHRASE_LENGTH, longestLiteral.length())), anchorPhrases);
+        int middle = Math.max(0, (longestLiteral.length() - ANCHOR_PHRASE_LENGTH) / 2);
+        addAnchorPhrase(longestLiteral.substring(middle, Math.min(middle + ANCHOR_PHRASE_LENGTH, longestLiteral.length())), anchorPhrases);
+        addAnchorPhrase(longestLiteral.substring(Math.max(0, longestLiteral.length() - ANCHOR_PHRASE_LENGTH)), anchorPhrases);
+        String firstLiteral = literals.get(0);
+        addAnchorPhrase(firstLiteral.substring(0, Math.min(ANCHOR_PHRASE_LENGTH, firstLiteral.length())), anchorPhrases);
+        String lastLiteral = literals.get(literals.size() - 1);
+        addAnchorPhrase(lastLiteral.substring(Math.max(0, lastLiteral.length() - ANCHOR_PHRASE_LENGTH)), anchorPhrases);
+        return anchorPhrases;
+    }
+
+    private static void addLiteral(StringBuilder literal, List<String> literals) {
+        if (literal.length() > 0) {
+            literals.add(literal.toString());
+            literal.setLength(0);
+        }
+    }
+
+    private static void addAnchorPhrase(String anchorPhrase, List<String> anchorPhrases) {
+        if (anchorPhrase.length() >= MIN_ANCHOR_PHRASE_LENGTH && !anchorPhrases.contains(anchorPhrase)) {
+            anchorPhrases.add(anchorPhrase);
+        }
+    }
+
+    private String getTextDigest(String text) {
+        try {
+            return Digests.toHex(Digests.newDigest().digest(text.getBytes("UTF-8")));
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void addCandidates(KnownLicense knownLicense, List<Candidate> candidateList) {
+        Integer licenseOrder = licenseOrders.get(knownLicense.getId());
+        if (licenseOrder == null) {
+            licenseOrder = licenseOrders.size();
+            licenseOrders.put(knownLicense.getId(), licenseOrder);
+        }
+        LicenseFingerprintIndex currentFingerprintIndex = getFingerprintIndex();
+        int variantOrder = 0;
+        for (TextVariant textVariant : knownLicense.getTextVariants()) {
+            if (textVariant.hasText()) {
+                candidateList.add(new Candidate(knownLicense, textVariant, licenseOrder, variantOrder, currentFingerprintIndex));
+            }
+            variantOrder++;
+        }
+    }
+}
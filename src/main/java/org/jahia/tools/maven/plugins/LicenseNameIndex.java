@@ -0,0 +1,184 @@
+package org.jahia.tools.maven.plugins;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Finds known licenses by the names used in POMs and Bundle-License headers without going through all the licenses
+ * and their aliases. Names are looked up as they are first, then by a normalized key ignoring case, punctuation,
+ * whitespace and the different ways of writing versions, so that "Apache License, Version 2.0" and
+ * "apache license version 2" both find the same license. SPDX identifiers are indexed like names, and license URLs by
+ * a key ignoring their scheme, "www." prefix and file extension.
+ *
+ * When several licenses have the same key, the first one in the order of the licenses wins, as when the licenses were
+ * compared one after the other.
+ */
+class LicenseNameIndex {
+
+    private static final Pattern VERSION_NUMBER = Pattern.compile("v?(\\d+(\\.\\d+)*)");
+    private static final Pattern URL_SCHEME = Pattern.compile("^[a-z][a-z0-9+.-]*://");
+    private static final String[] URL_EXTENSIONS = {".txt", ".html", ".htm", ".php"};
+
+    // license ids by key, resolved against the known licenses when looked up so that replaced licenses are found
+    private final Map<String, String> licenseIdsByName = new HashMap<>();
+    private final Map<String, String> licenseIdsByNormalizedName = new HashMap<>();
+    private final Map<String, String> licenseIdsByUrl = new HashMap<>();
+    private final KnownLicenses knownLicenses;
+
+    LicenseNameIndex(KnownLicenses knownLicenses) {
+        this.knownLicenses = knownLicenses;
+        for (KnownLicense knownLicense : knownLicenses.getLicenses().values()) {
+            addLicense(knownLicense);
+        }
+    }
+
+    /**
+     * Builds the index from the tables precompiled with the known licenses database.
+     */
+    LicenseNameIndex(KnownLicenses knownLicenses, Map<String, String> licenseIdsByName,
+                     Map<String, String> licenseIdsByNormalizedName, Map<String, String> licenseIdsByUrl) {
+        this.knownLicenses = knownLicenses;
+        this.licenseIdsByName.putAll(licenseIdsByName);
+        this.licenseIdsByNormalizedName.putAll(licenseIdsByNormalizedName);
+        this.licenseIdsByUrl.putAll(licenseIdsByUrl);
+    }
+
+    synchronized Map<String, String> getLicenseIdsByName() {
+        return new HashMap<>(licenseIdsByName);
+    }
+
+    synchronized Map<String, String> getLicenseIdsByNormalizedName() {
+        return new HashMap<>(licenseIdsByNormalizedName);
+    }
+
+    synchronized Map<String, String> getLicenseIdsByUrl() {
+        return new HashMap<>(licenseIdsByUrl);
+    }
+
+    synchronized void addLicense(KnownLicense knownLicense) {
+        List<String> names = new ArrayList<>();
+        names.add(knownLicense.getName());
+        if (knownLicense.getAliases() != null) {
+            names.addAll(knownLicense.getAliases());
+        }
+        for (String name : names) {
+            if (name != null) {
+                putIfAbsent(licenseIdsByName, name, knownLicense.getId());
+            }
+        }
+        if (knownLicense.getSpdxId() != null) {
+            names.add(knownLicense.getSpdxId());
+            // the explicit form of the SPDX identifiers of the licenses without the "or later" option
+            names.add(knownLicense.getSpdxId() + "-only");
+            putIfAbsent(licenseIdsByUrl, normalizeUrl("https://spdx.org/licenses/" + knownLicense.getSpdxId()), knownLicense.getId());
+            putIfAbsent(licenseIdsByUrl, normalizeUrl("https://opensource.org/licenses/" + knownLicense.getSpdxId()), knownLicense.getId());
+        }
+        for (String name : names) {
+            if (name != null) {
+                putIfAbsent(licenseIdsByNormalizedName, normalizeName(name), knownLicense.getId());
+            }
+        }
+        if (knownLicense.getUrls() != null) {
+            for (String url : knownLicense.getUrls()) {
+                putIfAbsent(licenseIdsByUrl, normalizeUrl(url), knownLicense.getId());
+            }
+        }
+    }
+
+    /**
+     * @return the license with the given name, alias, SPDX identifier or URL, or null if there is none
+     */
+    synchronized KnownLicense findByName(String name) {
+        if (name == null) {
+            return null;
+        }
+        String licenseId = licenseIdsByName.get(name);
+        if (licenseId == null) {
+            licenseId = isUrl(name) ? licenseIdsByUrl.get(normalizeUrl(name)) : licenseIdsByNormalizedName.get(normalizeName(name));
+        }
+        return licenseId != null ? knownLicenses.getLicenses().get(licenseId) : null;
+    }
+
+    /**
+     * @return the license with the given URL, or null if there is none
+     */
+    synchronized KnownLicense findByUrl(String url) {
+        if (url == null) {
+            return null;
+        }
+        String licenseId = licenseIdsByUrl.get(normalizeUrl(url));
+        return licenseId != null ? knownLicenses.getLicenses().get(licenseId) : null;
+    }
+
+    static String normalizeName(String name) {
+        StringBuilder normalizedName = new StringBuilder();
+        for (String token : name.toLowerCase(Locale.ENGLISH).split("[^a-z0-9.]+")) {
+            token = trimDots(token);
+            if (token.isEmpty() || token.equals("the") || token.equals("version") || token.equals("v")) {
+                continue;
+            }
+            if (token.equals("licence")) {
+                token = "license";
+            }
+            if (VERSION_NUMBER.matcher(token).matches()) {
+                // 2, 2.0 and v2 are the same version
+                token = token.startsWith("v") ? token.substring(1) : token;
+                while (token.endsWith(".0")) {
+                    token = token.substring(0, token.length() - 2);
+                }
+            }
+            if (normalizedName.length() > 0) {
+                normalizedName.append(' ');
+            }
+            normalizedName.append(token);
+        }
+        return normalizedName.toString();
+    }
+
+    static String normalizeUrl(String url) {
+        String normalizedUrl = URL_SCHEME.matcher(url.trim().toLowerCase(Locale.ENGLISH)).replaceFirst("");
+        int fragmentStart = normalizedUrl.indexOf('#');
+        if (fragmentStart >= 0) {
+            normalizedUrl = normalizedUrl.substring(0, fragmentStart);
+        }
+        if (normalizedUrl.startsWith("www.")) {
+            normalizedUrl = normalizedUrl.substring("www.".length());
+        }
+        while (normalizedUrl.endsWith("/")) {
+            normalizedUrl = normalizedUrl.substring(0, normalizedUrl.length() - 1);
+        }
+        for (String urlExtension : URL_EXTENSIONS) {
+            if (normalizedUrl.endsWith(urlExtension)) {
+                normalizedUrl = normalizedUrl.substring(0, normalizedUrl.length() - urlExtension.length());
+                break;
+            }
+        }
+        return normalizedUrl;
+    }
+
+    private static boolean isUrl(String name) {
+        return URL_SCHEME.matcher(name.trim().toLowerCase(Locale.ENGLISH)).find() || name.trim().startsWith("www.");
+    }
+
+    private static String trimDots(String token) {
+        int start = 0;
+        int end = token.length();
+        while (start < end && token.charAt(start) == '.') {
+            start++;
+        }
+        while (end > start && token.charAt(end - 1) == '.') {
+            end--;
+        }
+        return token.substring(start, end);
+    }
+
+    private static void putIfAbsent(Map<String, String> licenseIds, String key, String licenseId) {
+        if (!key.isEmpty() && !licenseIds.containsKey(key)) {
+            licenseIds.put(key, licenseId);
+        }
+    }
+}
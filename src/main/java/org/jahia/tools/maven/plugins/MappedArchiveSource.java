@@ -0,0 +1,62 @@
+package org.jahia.tools.maven.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An archive source that memory-maps the archive file so that the central directory and the entries are read straight
+ * from the page cache instead of going through read system calls. As a single mapping is limited to 2GB, larger
+ * archives are mapped in several regions.
+ *
+ * Note that the mapping is only released once the buffers are garbage collected, not when the source is closed.
+ */
+class MappedArchiveSource implements ArchiveSource {
+
+    private static final long REGION_SIZE = 1L << 30;
+
+    private final long size;
+    private final MappedByteBuffer[] regions;
+
+    MappedArchiveSource(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel fileChannel = randomAccessFile.getChannel();
+            size = fileChannel.size();
+            regions = new MappedByteBuffer[(int) ((size + REGION_SIZE - 1) / REGION_SIZE)];
+            for (int i = 0; i < regions.length; i++) {
+                long regionStart = i * REGION_SIZE;
+                regions[i] = fileChannel.map(FileChannel.MapMode.READ_ONLY, regionStart, Math.min(REGION_SIZE, size - regionStart));
+            }
+        } finally {
+            // the mappings stay valid once the channel is closed
+            randomAccessFile.close();
+        }
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public int read(long position, byte[] buffer, int offset, int length) {
+        if (position >= size) {
+            return -1;
+        }
+        int regionIndex = (int) (position / REGION_SIZE);
+        // duplicate the region so that concurrent reads don't share the same buffer position
+        ByteBuffer region = regions[regionIndex].duplicate();
+        region.position((int) (position - regionIndex * REGION_SIZE));
+        int bytesToRead = Math.min(length, region.remaining());
+        region.get(buffer, offset, bytesToRead);
+        return bytesToRead;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,338 @@
+package org.jahia.tools.maven.plugins;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Searches artifacts with the REST API of the Maven Central search, such as:
+ *
+ * http://search.maven.org/solrsearch/select?q=a:%22guice%22%20AND%20v:%223.0%22&rows=5&wt=json
+ *
+ * Searches are run by a bounded pool of threads so that the aggregator may start the searches of the JARs it will
+ * process next while it processes the current one, and the same search is only ever run once, later requests waiting
+ * for the running one. The results are kept in an on-disk cache for a given time so that the next builds don't need to
+ * query the server again. Failed searches are not cached.
+ *
+ * In offline mode, only the cached results are used, however old they are, and the other searches are recorded as
+ * missed instead of being sent to the server.
+ */
+class MavenCentralSearch {
+
+    /**
+     * The part of the JSON results of the search server that is used.
+     */
+    public static class SearchResults {
+        private SearchResponse response;
+
+        public SearchResponse getResponse() {
+            return response;
+        }
+
+        public void setResponse(SearchResponse response) {
+            this.response = response;
+        }
+    }
+
+    public static class SearchResponse {
+        private List<SearchDoc> docs;
+
+        public List<SearchDoc> getDocs() {
+            return docs;
+        }
+
+        public void setDocs(List<SearchDoc> docs) {
+            this.docs = docs;
+        }
+    }
+
+    public static class SearchDoc {
+        private String id;
+
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+    }
+
+    /**
+     * The results of a search as they are cached on disk.
+     */
+    public static class CachedResults {
+        private String query;
+        private List<String> artifactIds;
+
+        public String getQuery() {
+            return query;
+        }
+
+        public void setQuery(String query) {
+            this.query = query;
+        }
+
+        public List<String> getArtifactIds() {
+            return artifactIds;
+        }
+
+        public void setArtifactIds(List<String> artifactIds) {
+            this.artifactIds = artifactIds;
+        }
+    }
+
+    private final String baseUrl;
+    private final Client client;
+    private final File cacheDirectory;
+    private final long cacheTtlMillis;
+    private final ExecutorService executorService;
+    private final ConcurrentMap<String, Future<List<String>>> searches = new ConcurrentHashMap<>();
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final AtomicLong serverSearches = new AtomicLong();
+    private final AtomicLong cachedSearches = new AtomicLong();
+    private final boolean offline;
+    private final Set<String> offlineMisses = Collections.synchronizedSet(new LinkedHashSet<String>());
+
+    /**
+     * @param cacheDirectory the directory the results are cached in, or null to not cache them on disk
+     * @param cacheTtlMillis how long the cached results are used for
+     */
+    MavenCentralSearch(String baseUrl, Client client, int maxConcurrentSearches, File cacheDirectory, long cacheTtlMillis, boolean offline) {
+        this.baseUrl = baseUrl;
+        this.client = client;
+        this.cacheDirectory = cacheDirectory;
+        this.cacheTtlMillis = cacheTtlMillis;
+        this.offline = offline;
+        mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        this.executorService = Executors.newFixedThreadPool(Math.max(1, maxConcurrentSearches), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                // searches started for JARs that are never processed mustn't keep the build running
+                Thread thread = new Thread(runnable, "maven-central-search");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Starts searching an artifact by its artifactId, version and classifier, if it isn't already being searched.
+     *
+     * @return the ids of the artifacts found, as groupId:artifactId:version, or null if they couldn't be searched in
+     * offline mode
+     */
+    Future<List<String>> searchArtifact(String artifactId, String version, String classifier) {
+        StringBuilder query = new StringBuilder();
+        if (artifactId != null) {
+            query.append("a:\"" + artifactId + "\"");
+        }
+        if (version != null) {
+            query.append(" AND v:\"" + version + "\"");
+        }
+        if (classifier != null) {
+            query.append(" AND l:\"" + classifier + "\"");
+        }
+        return search(query.toString());
+    }
+
+    /**
+     * Starts searching the artifacts containing a package, if it isn't already being searched.
+     *
+     * @return the ids of the artifacts found, as groupId:artifactId:version, or null if they couldn't be searched in
+     * offline mode
+     */
+    Future<List<String>> searchPackage(String packageName) {
+        return search("fc:\"" + packageName + "\"");
+    }
+
+    /**
+     * @return the ids of the artifacts found, an empty list if none was found, or null if they couldn't be searched in
+     * offline mode
+     * @throws IOException if the search failed
+     */
+    List<String> findArtifact(String artifactId, String version, String classifier) throws IOException {
+        return get(searchArtifact(artifactId, version, classifier));
+    }
+
+    /**
+     * @return the ids of the artifacts found, an empty list if none was found, or null if they couldn't be searched in
+     * offline mode
+     * @throws IOException if the search failed
+     */
+    List<String> findPackage(String packageName) throws IOException {
+        return get(searchPackage(packageName));
+    }
+
+    long getServerSearches() {
+        return serverSearches.get();
+    }
+
+    long getCachedSearches() {
+        return cachedSearches.get();
+    }
+
+    /**
+     * @return the searches that were neither cached nor sent because of the offline mode
+     */
+    List<String> getOfflineMisses() {
+        synchronized (offlineMisses) {
+            return new ArrayList<>(offlineMisses);
+        }
+    }
+
+    void close() {
+        executorService.shutdownNow();
+    }
+
+    private List<String> get(Future<List<String>> search) throws IOException {
+        try {
+            return search.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while searching Maven Central", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private Future<List<String>> search(final String query) {
+        Future<List<String>> search = searches.get(query);
+        if (search != null) {
+            return search;
+        }
+        FutureTask<List<String>> newSearch = new FutureTask<>(new Callable<List<String>>() {
+            @Override
+            public List<String> call() throws Exception {
+                List<String> artifactIds = readCachedResults(query);
+                if (artifactIds != null) {
+                    cachedSearches.incrementAndGet();
+                    return artifactIds;
+                }
+                if (offline) {
+                    offlineMisses.add("Maven Central search " + query);
+                    return null;
+                }
+                serverSearches.incrementAndGet();
+                artifactIds = searchServer(query);
+                writeCachedResults(query, artifactIds);
+                return artifactIds;
+            }
+        });
+        search = searches.putIfAbsent(query, newSearch);
+        if (search != null) {
+            return search;
+        }
+        executorService.execute(newSearch);
+        return newSearch;
+    }
+
+    /**
+     * @throws IOException         if the server didn't return the expected results, which mustn't be cached
+     * @throws ProcessingException if the server couldn't be reached
+     */
+    private List<String> searchServer(String query) throws IOException, ProcessingException {
+        WebTarget target = client.target(baseUrl).path("solrsearch/select")
+                .queryParam("q", query)
+                .queryParam("rows", "5")
+                .queryParam("wt", "json");
+        Response response = target.request(MediaType.APPLICATION_JSON_TYPE).get();
+        String entity;
+        try {
+            if (response.getStatus() != Response.Status.OK.getStatusCode()) {
+                throw new IOException("Maven Central search returned HTTP " + response.getStatus() + " for " + query);
+            }
+            entity = response.readEntity(String.class);
+        } finally {
+            response.close();
+        }
+        SearchResults searchResults = mapper.readValue(entity, SearchResults.class);
+        if (searchResults == null || searchResults.getResponse() == null || searchResults.getResponse().getDocs() == null) {
+            throw new IOException("Maven Central search returned no response documents for " + query);
+        }
+        List<String> artifactIds = new ArrayList<>();
+        for (SearchDoc doc : searchResults.getResponse().getDocs()) {
+            if (doc.getId() != null) {
+                artifactIds.add(doc.getId());
+            }
+        }
+        return artifactIds;
+    }
+
+    private List<String> readCachedResults(String query) {
+        File cacheFile = getCacheFile(query);
+        // in offline mode, outdated results are still better than none as the search can't be done again
+        if (cacheFile == null || !cacheFile.exists() || (!offline && System.currentTimeMillis() - cacheFile.lastModified() > cacheTtlMillis)) {
+            return null;
+        }
+        try {
+            CachedResults cachedResults = mapper.readValue(cacheFile, CachedResults.class);
+            // guards against digest collisions
+            if (query.equals(cachedResults.getQuery()) && cachedResults.getArtifactIds() != null) {
+                return cachedResults.getArtifactIds();
+            }
+        } catch (IOException e) {
+            // a corrupted entry is searched again
+        }
+        return null;
+    }
+
+    private void writeCachedResults(String query, List<String> artifactIds) {
+        File cacheFile = getCacheFile(query);
+        if (cacheFile == null) {
+            return;
+        }
+        CachedResults cachedResults = new CachedResults();
+        cachedResults.setQuery(query);
+        cachedResults.setArtifactIds(artifactIds);
+        try {
+            cacheDirectory.mkdirs();
+            // written to a temporary file first so that concurrent builds never read a partial entry
+            File temporaryFile = File.createTempFile("search-", ".tmp", cacheDirectory);
+            mapper.writeValue(temporaryFile, cachedResults);
+            if (!temporaryFile.renameTo(cacheFile)) {
+                cacheFile.delete();
+                if (!temporaryFile.renameTo(cacheFile)) {
+                    temporaryFile.delete();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Couldn't cache Maven Central search results for " + query + ": " + e.getMessage());
+        }
+    }
+
+    private File getCacheFile(String query) {
+        if (cacheDirectory == null || cacheTtlMillis <= 0) {
+            return null;
+        }
+        try {
+            return new File(cacheDirectory, Digests.toHex(Digests.newDigest().digest((baseUrl + "\0" + query).getBytes("UTF-8"))) + ".json");
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new IllegalStateException(e);
+        }
+    }
+}
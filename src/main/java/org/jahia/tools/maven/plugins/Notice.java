@@ -71,8 +71,6 @@
  */
 package org.jahia.tools.maven.plugins;
 
-import java.util.List;
-
 /**
  * @author Christophe Laprun
  */
@@ -83,10 +81,20 @@ public class Notice {
     public Notice() {
     }
 
-    Notice(List<String> noticeLines) {
-        StringBuilder stringBuilder = new StringBuilder(1024);
+    /**
+     * @param noticeText the text of the notice, each line ending with a new line
+     */
+    Notice(String noticeText) {
+        StringBuilder stringBuilder = new StringBuilder(noticeText.length());
         boolean skip = false;
-        for (String noticeLine : noticeLines) {
+        int lineStart = 0;
+        while (lineStart < noticeText.length()) {
+            int lineEnd = noticeText.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = noticeText.length();
+            }
+            String noticeLine = noticeText.substring(lineStart, lineEnd);
+            lineStart = lineEnd + 1;
             if (skip) {
                 skip = false;
                 continue;
@@ -0,0 +1,135 @@
+package org.jahia.tools.maven.plugins;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An Aho-Corasick automaton finding which of a set of phrases occur in a text in a single pass over the text, whatever
+ * the number of phrases.
+ */
+class PhraseAutomaton {
+
+    private static final int[] NO_PHRASES = new int[0];
+
+    private final int phraseCount;
+    // transitions of each state, sorted by character
+    private final char[][] transitionCharacters;
+    private final int[][] transitionStates;
+    private final int[] failureStates;
+    // the phrases ending at each state, including the ones reached through failure states
+    private final int[][] statePhrases;
+
+    PhraseAutomaton(List<String> phrases) {
+        phraseCount = phrases.size();
+
+        List<TreeMap<Character, Integer>> stateTransitions = new ArrayList<>();
+        List<List<Integer>> stateOwnPhrases = new ArrayList<>();
+        stateTransitions.add(new TreeMap<Character, Integer>());
+        stateOwnPhrases.add(new ArrayList<Integer>());
+        for (int phraseId = 0; phraseId < phrases.size(); phraseId++) {
+            String phrase = phrases.get(phraseId);
+            int state = 0;
+            for (int i = 0; i < phrase.length(); i++) {
+                Integer nextState = stateTransitions.get(state).get(phrase.charAt(i));
+                if (nextState == null) {
+                    nextState = stateTransitions.size();
+                    stateTransitions.add(new TreeMap<Character, Integer>());
+                    stateOwnPhrases.add(new ArrayList<Integer>());
+                    stateTransitions.get(state).put(phrase.charAt(i), nextState);
+                }
+                state = nextState;
+            }
+            stateOwnPhrases.get(state).add(phraseId);
+        }
+
+        int stateCount = stateTransitions.size();
+        transitionCharacters = new char[stateCount][];
+        transitionStates = new int[stateCount][];
+        for (int state = 0; state < stateCount; state++) {
+            transitionCharacters[state] = new char[stateTransitions.get(state).size()];
+            transitionStates[state] = new int[stateTransitions.get(state).size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> transition : stateTransitions.get(state).entrySet()) {
+                transitionCharacters[state][i] = transition.getKey();
+                transitionStates[state][i] = transition.getValue();
+                i++;
+            }
+        }
+
+        // compute the failure states breadth first so that the ones of the shorter prefixes are known
+        failureStates = new int[stateCount];
+        statePhrases = new int[stateCount][];
+        statePhrases[0] = toArray(stateOwnPhrases.get(0));
+        LinkedList<Integer> queue = new LinkedList<>();
+        for (int childState : transitionStates[0]) {
+            failureStates[childState] = 0;
+            statePhrases[childState] = toArray(stateOwnPhrases.get(childState));
+            queue.add(childState);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.removeFirst();
+            for (int i = 0; i < transitionCharacters[state].length; i++) {
+                char c = transitionCharacters[state][i];
+                int childState = transitionStates[state][i];
+                int failureState = failureStates[state];
+                while (failureState != 0 && getTransition(failureState, c) < 0) {
+                    failureState = failureStates[failureState];
+                }
+                int failureTransition = getTransition(failureState, c);
+                failureStates[childState] = failureTransition >= 0 ? failureTransition : 0;
+                statePhrases[childState] = merge(stateOwnPhrases.get(childState), statePhrases[failureStates[childState]]);
+                queue.add(childState);
+            }
+        }
+    }
+
+    /**
+     * @return for each phrase, in the order they were given, whether it occurs in the text
+     */
+    boolean[] findPhrases(CharSequence text) {
+        boolean[] foundPhrases = new boolean[phraseCount];
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int nextState = getTransition(state, c);
+            while (nextState < 0 && state != 0) {
+                state = failureStates[state];
+                nextState = getTransition(state, c);
+            }
+            state = nextState >= 0 ? nextState : 0;
+            for (int phraseId : statePhrases[state]) {
+                foundPhrases[phraseId] = true;
+            }
+        }
+        return foundPhrases;
+    }
+
+    private int getTransition(int state, char c) {
+        int transitionIndex = Arrays.binarySearch(transitionCharacters[state], c);
+        return transitionIndex >= 0 ? transitionStates[state][transitionIndex] : -1;
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        if (values.isEmpty()) {
+            return NO_PHRASES;
+        }
+        int[] result = new int[values.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = values.get(i);
+        }
+        return result;
+    }
+
+    private static int[] merge(List<Integer> ownPhrases, int[] inheritedPhrases) {
+        if (ownPhrases.isEmpty()) {
+            return inheritedPhrases;
+        }
+        int[] result = Arrays.copyOf(toArray(ownPhrases), ownPhrases.size() + inheritedPhrases.length);
+        System.arraycopy(inheritedPhrases, 0, result, ownPhrases.size(), inheritedPhrases.length);
+        return result;
+    }
+}
@@ -0,0 +1,84 @@
+package org.jahia.tools.maven.plugins;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.jaxb.JaxbAnnotationModule;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A persistent cache of the results of processing JARs, stored as one JSON file per JAR digest and location so that it
+ * survives across builds. Entries are only valid for the known licenses database they were computed with.
+ *
+ * The results also depend on lookups in the remote repositories and in Maven Central, which may give other results
+ * over time, such as a parent POM being published, so entries are only used for a limited time, except in offline mode
+ * where these lookups couldn't be done again anyway.
+ */
+class ScanCache {
+
+    // to be increased whenever the format of the entries or the way JARs are processed changes
+    private static final String FORMAT_VERSION = "3";
+
+    private final File cacheDirectory;
+    private final String knownLicensesFingerprint;
+    private final long ttlMillis;
+    private final boolean offline;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * @param ttlMillis how long the cached results are used for
+     */
+    ScanCache(File cacheDirectory, String knownLicensesFingerprint, long ttlMillis, boolean offline) {
+        this.cacheDirectory = cacheDirectory;
+        this.ttlMillis = ttlMillis;
+        this.offline = offline;
+        this.knownLicensesFingerprint = FORMAT_VERSION + "-" + knownLicensesFingerprint;
+        mapper.registerModule(new JaxbAnnotationModule());
+        mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    /**
+     * @return the cached results for the given key, or null if there are none or they are outdated
+     */
+    ScanCacheEntry get(String key) {
+        File entryFile = getEntryFile(key);
+        if (!entryFile.exists() || (!offline && System.currentTimeMillis() - entryFile.lastModified() > ttlMillis)) {
+            return null;
+        }
+        try {
+            ScanCacheEntry scanCacheEntry = mapper.readValue(entryFile, ScanCacheEntry.class);
+            if (knownLicensesFingerprint.equals(scanCacheEntry.getKnownLicensesFingerprint())) {
+                return scanCacheEntry;
+            }
+        } catch (IOException e) {
+            // a corrupted entry is simply recomputed
+        }
+        return null;
+    }
+
+    void put(String key, ScanCacheEntry scanCacheEntry) throws IOException {
+        if (!cacheDirectory.exists() && !cacheDirectory.mkdirs() && !cacheDirectory.exists()) {
+            throw new IOException("Couldn't create scan cache directory " + cacheDirectory);
+        }
+        scanCacheEntry.setKnownLicensesFingerprint(knownLicensesFingerprint);
+        // write to a temporary file first so that concurrent builds never read a partial entry
+        File temporaryEntryFile = File.createTempFile(key, ".tmp", cacheDirectory);
+        try {
+            mapper.writeValue(temporaryEntryFile, scanCacheEntry);
+            File entryFile = getEntryFile(key);
+            if (!temporaryEntryFile.renameTo(entryFile)) {
+                entryFile.delete();
+                if (!temporaryEntryFile.renameTo(entryFile)) {
+                    throw new IOException("Couldn't write scan cache entry " + entryFile);
+                }
+            }
+        } finally {
+            temporaryEntryFile.delete();
+        }
+    }
+
+    private File getEntryFile(String key) {
+        return new File(cacheDirectory, key + ".json");
+    }
+}
@@ -0,0 +1,127 @@
+package org.jahia.tools.maven.plugins;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Everything the processing of a JAR added to the aggregator's state, so that it can be replayed by later builds
+ * without processing the JAR again.
+ */
+public class ScanCacheEntry {
+
+    /**
+     * Either the creation of a license for additional license terms or a license found in a license file, kept in the
+     * order they happened as licenses may be redefined.
+     */
+    public static class LicenseEvent {
+        private KnownLicense additionalTermsLicense;
+        private String knownLicenseId;
+        private LicenseFile licenseFile;
+        private List<String> knownLicenseIds = new ArrayList<>();
+
+        public LicenseEvent() {
+        }
+
+        LicenseEvent(KnownLicense additionalTermsLicense) {
+            this.additionalTermsLicense = additionalTermsLicense;
+        }
+
+        LicenseEvent(String knownLicenseId, LicenseFile licenseFile) {
+            this.knownLicenseId = knownLicenseId;
+            this.licenseFile = licenseFile;
+        }
+
+        public KnownLicense getAdditionalTermsLicense() {
+            return additionalTermsLicense;
+        }
+
+        public void setAdditionalTermsLicense(KnownLicense additionalTermsLicense) {
+            this.additionalTermsLicense = additionalTermsLicense;
+        }
+
+        public String getKnownLicenseId() {
+            return knownLicenseId;
+        }
+
+        public void setKnownLicenseId(String knownLicenseId) {
+            this.knownLicenseId = knownLicenseId;
+        }
+
+        public LicenseFile getLicenseFile() {
+            return licenseFile;
+        }
+
+        public void setLicenseFile(LicenseFile licenseFile) {
+            this.licenseFile = licenseFile;
+        }
+
+        public List<String> getKnownLicenseIds() {
+            return knownLicenseIds;
+        }
+
+        public void setKnownLicenseIds(List<String> knownLicenseIds) {
+            this.knownLicenseIds = knownLicenseIds;
+        }
+    }
+
+    private String knownLicensesFingerprint;
+    private String additionalTermsFingerprint;
+    private Map<String, JarMetadata> jarDatabaseEntries = new TreeMap<>();
+    // the ids of the licenses recognized in each license file, by JAR and license file name
+    private Map<String, Map<String, List<String>>> licenseFileKnownLicenseIds = new TreeMap<>();
+    private List<LicenseEvent> licenseEvents = new ArrayList<>();
+    private List<String> duplicatedNotices = new ArrayList<>();
+
+    public ScanCacheEntry() {
+    }
+
+    public String getKnownLicensesFingerprint() {
+        return knownLicensesFingerprint;
+    }
+
+    public void setKnownLicensesFingerprint(String knownLicensesFingerprint) {
+        this.knownLicensesFingerprint = knownLicensesFingerprint;
+    }
+
+    public String getAdditionalTermsFingerprint() {
+        return additionalTermsFingerprint;
+    }
+
+    public void setAdditionalTermsFingerprint(String additionalTermsFingerprint) {
+        this.additionalTermsFingerprint = additionalTermsFingerprint;
+    }
+
+    public Map<String, JarMetadata> getJarDatabaseEntries() {
+        return jarDatabaseEntries;
+    }
+
+    public void setJarDatabaseEntries(Map<String, JarMetadata> jarDatabaseEntries) {
+        this.jarDatabaseEntries = jarDatabaseEntries;
+    }
+
+    public Map<String, Map<String, List<String>>> getLicenseFileKnownLicenseIds() {
+        return licenseFileKnownLicenseIds;
+    }
+
+    public void setLicenseFileKnownLicenseIds(Map<String, Map<String, List<String>>> licenseFileKnownLicenseIds) {
+        this.licenseFileKnownLicenseIds = licenseFileKnownLicenseIds;
+    }
+
+    public List<LicenseEvent> getLicenseEvents() {
+        return licenseEvents;
+    }
+
+    public void setLicenseEvents(List<LicenseEvent> licenseEvents) {
+        this.licenseEvents = licenseEvents;
+    }
+
+    public List<String> getDuplicatedNotices() {
+        return duplicatedNotices;
+    }
+
+    public void setDuplicatedNotices(List<String> duplicatedNotices) {
+        this.duplicatedNotices = duplicatedNotices;
+    }
+}
@@ -0,0 +1,37 @@
+package org.jahia.tools.maven.plugins;
+
+import java.io.IOException;
+
+/**
+ * A range of another archive source, used to read archives that are stored uncompressed inside another archive
+ * without copying them. Closing the slice doesn't close the parent source.
+ */
+class SliceArchiveSource implements ArchiveSource {
+
+    private final ArchiveSource parentArchiveSource;
+    private final long start;
+    private final long size;
+
+    SliceArchiveSource(ArchiveSource parentArchiveSource, long start, long size) {
+        this.parentArchiveSource = parentArchiveSource;
+        this.start = start;
+        this.size = size;
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public int read(long position, byte[] buffer, int offset, int length) throws IOException {
+        if (position >= size) {
+            return -1;
+        }
+        return parentArchiveSource.read(start + position, buffer, offset, (int) Math.min(length, size - position));
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,28 @@
+package org.jahia.tools.maven.plugins;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * An archive source for a temporary copy of an archive, the file is deleted once the source is closed.
+ */
+class TemporaryFileArchiveSource extends FileArchiveSource {
+
+    private final File temporaryFile;
+
+    TemporaryFileArchiveSource(File temporaryFile) throws IOException {
+        super(temporaryFile);
+        this.temporaryFile = temporaryFile;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            if (!temporaryFile.delete()) {
+                temporaryFile.deleteOnExit();
+            }
+        }
+    }
+}
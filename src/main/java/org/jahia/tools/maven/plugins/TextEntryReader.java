@@ -0,0 +1,215 @@
+package org.jahia.tools.maven.plugins;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * Reads the license and notice entries of JARs in a single pass into buffers reused by all the entries read on the
+ * same thread, so that the only copy made of a text is the resulting string.
+ *
+ * The charset is detected instead of relying on the platform one: a byte order mark selects UTF-8 or UTF-16, as does
+ * a text without one whose every other byte is a null byte, which is how UTF-16 encodes the Latin characters licenses
+ * are written with. Otherwise the text is decoded as UTF-8 if it is valid UTF-8 and as ISO-8859-1 if it isn't. Line
+ * separators are normalized to new lines, the text always ending with one as when it was read line by line. Entries
+ * that are too large or that are binary files, i.e. contain a null byte, are rejected.
+ *
+ * The buffers grow with the largest entry read, so the ones grown beyond a few typical license files are released once
+ * the entry is read instead of being kept by the thread.
+ */
+class TextEntryReader {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset UTF_16BE = Charset.forName("UTF-16BE");
+    private static final Charset UTF_16LE = Charset.forName("UTF-16LE");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    // only the beginning of an entry is looked at to recognize binary files
+    private static final int BINARY_CHECK_LENGTH = 8192;
+    private static final int INITIAL_BUFFER_SIZE = 16384;
+    // buffers grown beyond this size aren't kept for the next entries
+    private static final int MAX_RETAINED_BUFFER_SIZE = 262144;
+
+    private static final ThreadLocal<TextEntryReader> READERS = new ThreadLocal<TextEntryReader>() {
+        @Override
+        protected TextEntryReader initialValue() {
+            return new TextEntryReader();
+        }
+    };
+
+    /**
+     * Why an entry couldn't be read as text.
+     */
+    static class RejectedEntryException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        RejectedEntryException(String message) {
+            super(message);
+        }
+    }
+
+    private byte[] bytes = new byte[INITIAL_BUFFER_SIZE];
+    private char[] chars = new char[INITIAL_BUFFER_SIZE];
+
+    private TextEntryReader() {
+    }
+
+    /**
+     * Reads the rest of the stream, which isn't closed, as a text.
+     *
+     * @param maxSize the maximum size of the entry in bytes
+     * @throws RejectedEntryException if the entry is larger than the maximum size or is a binary file
+     */
+    static String read(InputStream inputStream, int maxSize) throws IOException {
+        return READERS.get().readText(inputStream, maxSize);
+    }
+
+    private String readText(InputStream inputStream, int maxSize) throws IOException {
+        try {
+            return readBufferedText(inputStream, maxSize);
+        } finally {
+            if (bytes.length > MAX_RETAINED_BUFFER_SIZE) {
+                bytes = new byte[INITIAL_BUFFER_SIZE];
+            }
+            if (chars.length > MAX_RETAINED_BUFFER_SIZE) {
+                chars = new char[INITIAL_BUFFER_SIZE];
+            }
+        }
+    }
+
+    private String readBufferedText(InputStream inputStream, int maxSize) throws IOException {
+        int length = 0;
+        int bytesRead;
+        while ((bytesRead = inputStream.read(bytes, length, bytes.length - length)) != -1) {
+            length += bytesRead;
+            if (length > maxSize) {
+                throw new RejectedEntryException("larger than " + maxSize + " bytes");
+            }
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.min(bytes.length * 2, maxSize + 1));
+            }
+        }
+
+        int start = 0;
+        Charset charset = null;
+        if (length >= 3 && (bytes[0] & 0xFF) == 0xEF && (bytes[1] & 0xFF) == 0xBB && (bytes[2] & 0xFF) == 0xBF) {
+            charset = UTF_8;
+            start = 3;
+        } else if (length >= 2 && (bytes[0] & 0xFF) == 0xFE && (bytes[1] & 0xFF) == 0xFF) {
+            charset = UTF_16BE;
+            start = 2;
+        } else if (length >= 2 && (bytes[0] & 0xFF) == 0xFF && (bytes[1] & 0xFF) == 0xFE) {
+            charset = UTF_16LE;
+            start = 2;
+        } else {
+            charset = detectUtf16(length);
+            if (charset == null) {
+                for (int i = 0; i < Math.min(length, BINARY_CHECK_LENGTH); i++) {
+                    if (bytes[i] == 0) {
+                        throw new RejectedEntryException("binary file");
+                    }
+                }
+            } else {
+                try {
+                    return toNormalizedString(decode(charset, start, length));
+                } catch (CharacterCodingException e) {
+                    throw new RejectedEntryException("binary file");
+                }
+            }
+        }
+
+        CharBuffer charBuffer;
+        if (charset != null) {
+            charBuffer = decode(charset, start, length);
+        } else {
+            try {
+                charBuffer = decode(UTF_8, start, length);
+            } catch (CharacterCodingException e) {
+                charBuffer = decode(ISO_8859_1, start, length);
+            }
+        }
+        return toNormalizedString(charBuffer);
+    }
+
+    /**
+     * Recognizes UTF-16 without a byte order mark by the null bytes its Latin characters have, either all in the even
+     * positions (big endian) or all in the odd ones (little endian), for at least half the characters.
+     *
+     * @return the UTF-16 charset the text is encoded with, or null if it doesn't look like UTF-16
+     */
+    private Charset detectUtf16(int length) {
+        if (length < 2 || length % 2 != 0) {
+            return null;
+        }
+        int checkLength = Math.min(length, BINARY_CHECK_LENGTH);
+        int evenNullBytes = 0;
+        int oddNullBytes = 0;
+        for (int i = 0; i + 1 < checkLength; i += 2) {
+            if (bytes[i] == 0) {
+                evenNullBytes++;
+            }
+            if (bytes[i + 1] == 0) {
+                oddNullBytes++;
+            }
+        }
+        int characters = checkLength / 2;
+        if (oddNullBytes == 0 && evenNullBytes * 2 >= characters) {
+            return UTF_16BE;
+        }
+        if (evenNullBytes == 0 && oddNullBytes * 2 >= characters) {
+            return UTF_16LE;
+        }
+        return null;
+    }
+
+    private CharBuffer decode(Charset charset, int start, int end) throws CharacterCodingException {
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        // a byte never decodes to more than one character in the supported charsets, plus the final new line
+        int maxLength = end - start + 1;
+        if (chars.length < maxLength) {
+            chars = new char[Math.max(maxLength, chars.length * 2)];
+        }
+        CharBuffer charBuffer = CharBuffer.wrap(chars);
+        ByteBuffer byteBuffer = ByteBuffer.wrap(bytes, start, end - start);
+        checkResult(decoder.decode(byteBuffer, charBuffer, true));
+        checkResult(decoder.flush(charBuffer));
+        charBuffer.flip();
+        return charBuffer;
+    }
+
+    private static void checkResult(CoderResult coderResult) throws CharacterCodingException {
+        if (coderResult.isError()) {
+            coderResult.throwException();
+        }
+    }
+
+    /**
+     * Replaces carriage returns and carriage return and new line pairs with new lines in place.
+     */
+    private String toNormalizedString(CharBuffer charBuffer) {
+        int length = charBuffer.limit();
+        int normalizedLength = 0;
+        for (int i = 0; i < length; i++) {
+            char c = chars[i];
+            if (c == '\r') {
+                if (i + 1 < length && chars[i + 1] == '\n') {
+                    i++;
+                }
+                c = '\n';
+            }
+            chars[normalizedLength++] = c;
+        }
+        if (normalizedLength > 0 && chars[normalizedLength - 1] != '\n') {
+            chars[normalizedLength++] = '\n';
+        }
+        return new String(chars, 0, normalizedLength);
+    }
+}
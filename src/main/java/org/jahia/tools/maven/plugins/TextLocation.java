@@ -0,0 +1,55 @@
+package org.jahia.tools.maven.plugins;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+/**
+ * Where a known license text is read from when it is first needed: either a whole resource, such as a text file of the
+ * known licenses source, or a range of bytes of a resource, such as a text of the precompiled known licenses database.
+ */
+class TextLocation {
+
+    private final URL url;
+    private final long offset;
+    private final int length;
+
+    /**
+     * The whole resource.
+     */
+    TextLocation(URL url) {
+        this(url, 0, -1);
+    }
+
+    /**
+     * @param offset the offset of the UTF-8 encoded text in the resource
+     * @param length the length of the UTF-8 encoded text in bytes
+     */
+    TextLocation(URL url, long offset, int length) {
+        this.url = url;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    String read() throws IOException {
+        if (length < 0) {
+            return IOUtils.toString(url, "UTF-8");
+        }
+        InputStream inputStream = url.openStream();
+        try {
+            IOUtils.skipFully(inputStream, offset);
+            byte[] bytes = new byte[length];
+            IOUtils.readFully(inputStream, bytes);
+            return new String(bytes, "UTF-8");
+        } finally {
+            IOUtils.closeQuietly(inputStream);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return length < 0 ? url.toString() : url + "[" + offset + "+" + length + "]";
+    }
+}
@@ -1,6 +1,9 @@
 package org.jahia.tools.maven.plugins;
 
 import javax.xml.bind.annotation.XmlTransient;
+import java.io.IOException;
+import java.net.URL;
+import java.util.List;
 import java.util.regex.Pattern;
 
 /**
@@ -10,6 +13,14 @@ public class TextVariant {
     private String id;
     private boolean defaultVariant = false;
     private String text;
+    // where the text is read from when it is first needed
+    private TextLocation textLocation;
+    // known without reading the text when it comes from the precompiled database, -1 otherwise
+    private int textLength = -1;
+    private List<String> anchorPhrases;
+    private boolean anchorPhrasesKnown = false;
+    private boolean formattingVariant;
+    private boolean formattingVariantKnown = false;
     private Pattern compiledTextPattern;
 
     public TextVariant() {
@@ -32,17 +43,101 @@ public class TextVariant {
     }
 
     @XmlTransient
-    public String getText() {
+    public synchronized String getText() {
+        if (textLocation != null) {
+            try {
+                text = textLocation.read();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            textLocation = null;
+        }
         return text;
     }
 
-    public void setText(String text) {
+    public synchronized void setText(String text) {
         this.text = text;
-        this.compiledTextPattern = Pattern.compile(text);
+        this.textLocation = null;
+        resetDerivedData();
+    }
+
+    /**
+     * The text will only be read, and compiled, when it is first needed.
+     */
+    synchronized void loadTextFrom(URL textLocation) {
+        loadTextFrom(new TextLocation(textLocation));
+    }
+
+    /**
+     * The text will only be read, and compiled, when it is first needed.
+     */
+    synchronized void loadTextFrom(TextLocation textLocation) {
+        this.text = null;
+        this.textLocation = textLocation;
+        resetDerivedData();
+    }
+
+    /**
+     * Sets what the license matcher needs to know about the text before verifying it, so that the text isn't read
+     * until then.
+     */
+    synchronized void setPrecompiledData(int textLength, List<String> anchorPhrases, boolean formattingVariant) {
+        this.textLength = textLength;
+        this.anchorPhrases = anchorPhrases;
+        this.anchorPhrasesKnown = true;
+        this.formattingVariant = formattingVariant;
+        this.formattingVariantKnown = true;
+    }
+
+    synchronized boolean hasText() {
+        return text != null || textLocation != null;
+    }
+
+    synchronized int getTextLength() {
+        if (textLength < 0 && getText() != null) {
+            textLength = getText().length();
+        }
+        return textLength;
+    }
+
+    /**
+     * @return the anchor phrases of the text, see {@link LicenseMatcher#getAnchorPhrases(String)}
+     */
+    synchronized List<String> getAnchorPhrases() {
+        if (!anchorPhrasesKnown && getText() != null) {
+            anchorPhrases = LicenseMatcher.getAnchorPhrases(getText());
+            anchorPhrasesKnown = true;
+        }
+        return anchorPhrases;
+    }
+
+    /**
+     * @param licenseShingles the shingles of the text to use of the variant's license
+     * @return whether the variant is only another formatting of the text of its license, see
+     * {@link LicenseFingerprintIndex#isFormattingVariant(String, long[])}
+     */
+    synchronized boolean isFormattingVariant(long[] licenseShingles) {
+        if (!formattingVariantKnown && getText() != null) {
+            formattingVariant = LicenseFingerprintIndex.isFormattingVariant(getText(), licenseShingles);
+            formattingVariantKnown = true;
+        }
+        return formattingVariant;
     }
 
     @XmlTransient
-    public Pattern getCompiledTextPattern() {
+    public synchronized Pattern getCompiledTextPattern() {
+        if (compiledTextPattern == null && getText() != null) {
+            compiledTextPattern = Pattern.compile(getText());
+        }
         return compiledTextPattern;
     }
+
+    private void resetDerivedData() {
+        textLength = -1;
+        anchorPhrases = null;
+        anchorPhrasesKnown = false;
+        formattingVariant = false;
+        formattingVariantKnown = false;
+        compiledTextPattern = null;
+    }
 }
@@ -0,0 +1,318 @@
+package org.jahia.tools.maven.plugins;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * A ZIP reader that only uses the central directory at the end of the archive to list the entries, so that only the
+ * entries that are actually opened get read and inflated. This is much cheaper than walking the archive with a
+ * JarInputStream when we are only interested in a few legal files among thousands of classes.
+ *
+ * A ZipException is thrown when the archive has no valid central directory (truncated or not a ZIP archive), in which
+ * case the archive may still be read sequentially.
+ */
+class ZipArchive {
+
+    private static final int LOCAL_FILE_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_DIRECTORY_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_EXTRA_FIELD_ID = 0x0001;
+
+    private static final int LOCAL_FILE_HEADER_LENGTH = 30;
+    private static final int CENTRAL_DIRECTORY_HEADER_LENGTH = 46;
+    private static final int END_OF_CENTRAL_DIRECTORY_LENGTH = 22;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LENGTH = 56;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_LENGTH = 20;
+    private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    static final int STORED = 0;
+    static final int DEFLATED = 8;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    static class Entry {
+        private final String name;
+        private final int method;
+        private final boolean encrypted;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+
+        Entry(String name, int method, boolean encrypted, long compressedSize, long size, long localHeaderOffset) {
+            this.name = name;
+            this.method = method;
+            this.encrypted = encrypted;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        int getMethod() {
+            return method;
+        }
+
+        long getCompressedSize() {
+            return compressedSize;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private final ArchiveSource archiveSource;
+    private byte[] centralDirectory;
+    private final List<Entry> entries;
+
+    ZipArchive(ArchiveSource archiveSource) throws IOException {
+        this.archiveSource = archiveSource;
+        this.entries = Collections.unmodifiableList(readCentralDirectory());
+    }
+
+    List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * A fingerprint of the archive contents computed without reading the entries: the central directory holds the
+     * name, sizes and CRC-32 of every entry, so two archives with the same central directory and size are copies of
+     * the same artifact. This doesn't guarantee that their data is identical, as an entry could be altered while
+     * keeping its sizes and CRC-32, so it should only be used to recognize the copies of an archive found together, not
+     * to reuse results computed from another archive.
+     */
+    String getDigest() throws IOException {
+        MessageDigest messageDigest = Digests.newDigest();
+        messageDigest.update(centralDirectory);
+        messageDigest.update(Long.toString(archiveSource.size()).getBytes(UTF_8));
+        return Digests.toHex(messageDigest.digest());
+    }
+
+    /**
+     * Opens the (inflated) contents of an entry. Entries may be opened in any order and concurrently.
+     */
+    InputStream getInputStream(Entry entry) throws IOException {
+        InputStream compressedInputStream = new ArchiveSourceInputStream(archiveSource, getDataOffset(entry), entry.compressedSize);
+        switch (entry.method) {
+            case STORED:
+                return compressedInputStream;
+            case DEFLATED:
+                return new EntryInflaterInputStream(compressedInputStream);
+            default:
+                throw new ZipException("Unsupported compression method " + entry.method + " for entry " + entry.name);
+        }
+    }
+
+    /**
+     * Gives random access to an entry that is stored without compression, such as an embedded archive, without
+     * copying it.
+     */
+    ArchiveSource getStoredEntrySource(Entry entry) throws IOException {
+        if (entry.method != STORED) {
+            throw new ZipException("Entry " + entry.name + " is compressed");
+        }
+        return new SliceArchiveSource(archiveSource, getDataOffset(entry), entry.size);
+    }
+
+    private long getDataOffset(Entry entry) throws IOException {
+        if (entry.encrypted) {
+            throw new ZipException("Encrypted entry " + entry.name + " is not supported");
+        }
+        byte[] localFileHeader = new byte[LOCAL_FILE_HEADER_LENGTH];
+        readFully(entry.localHeaderOffset, localFileHeader, 0, LOCAL_FILE_HEADER_LENGTH);
+        if (getInt(localFileHeader, 0) != LOCAL_FILE_HEADER_SIGNATURE) {
+            throw new ZipException("Invalid local file header for entry " + entry.name);
+        }
+        return entry.localHeaderOffset + LOCAL_FILE_HEADER_LENGTH + getShort(localFileHeader, 26) + getShort(localFileHeader, 28);
+    }
+
+    private List<Entry> readCentralDirectory() throws IOException {
+        long archiveSize = archiveSource.size();
+        if (archiveSize < END_OF_CENTRAL_DIRECTORY_LENGTH) {
+            throw new ZipException("Archive is too small to be a ZIP archive");
+        }
+
+        // the end of central directory record is followed by a comment of variable length, look for it backwards
+        int tailLength = (int) Math.min(archiveSize, END_OF_CENTRAL_DIRECTORY_LENGTH + MAX_COMMENT_LENGTH);
+        long tailStart = archiveSize - tailLength;
+        byte[] tail = new byte[tailLength];
+        readFully(tailStart, tail, 0, tailLength);
+        int endOfCentralDirectory = -1;
+        for (int i = tailLength - END_OF_CENTRAL_DIRECTORY_LENGTH; i >= 0; i--) {
+            if (getInt(tail, i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE &&
+                    i + END_OF_CENTRAL_DIRECTORY_LENGTH + getShort(tail, i + 20) <= tailLength) {
+                endOfCentralDirectory = i;
+                break;
+            }
+        }
+        if (endOfCentralDirectory == -1) {
+            throw new ZipException("No end of central directory record found");
+        }
+
+        long entryCount = getShort(tail, endOfCentralDirectory + 10);
+        long centralDirectorySize = getUnsignedInt(tail, endOfCentralDirectory + 12);
+        long centralDirectoryOffset = getUnsignedInt(tail, endOfCentralDirectory + 16);
+        long centralDirectoryEnd = tailStart + endOfCentralDirectory;
+
+        int zip64Locator = endOfCentralDirectory - ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_LENGTH;
+        if (zip64Locator >= 0 && getInt(tail, zip64Locator) == ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE) {
+            long zip64EndOfCentralDirectoryOffset = getLong(tail, zip64Locator + 8);
+            byte[] zip64EndOfCentralDirectory = new byte[ZIP64_END_OF_CENTRAL_DIRECTORY_LENGTH];
+            readFully(zip64EndOfCentralDirectoryOffset, zip64EndOfCentralDirectory, 0, ZIP64_END_OF_CENTRAL_DIRECTORY_LENGTH);
+            if (getInt(zip64EndOfCentralDirectory, 0) != ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                throw new ZipException("Invalid ZIP64 end of central directory record");
+            }
+            entryCount = getLong(zip64EndOfCentralDirectory, 32);
+            centralDirectorySize = getLong(zip64EndOfCentralDirectory, 40);
+            centralDirectoryOffset = getLong(zip64EndOfCentralDirectory, 48);
+            centralDirectoryEnd = zip64EndOfCentralDirectoryOffset;
+        }
+
+        // archives may have data prepended to them (self-extracting archives, launcher scripts), in which case all
+        // the offsets are shifted
+        long prefixLength = centralDirectoryEnd - centralDirectorySize - centralDirectoryOffset;
+        if (prefixLength < 0 || centralDirectorySize > Integer.MAX_VALUE) {
+            throw new ZipException("Invalid central directory location");
+        }
+
+        centralDirectory = new byte[(int) centralDirectorySize];
+        readFully(centralDirectoryOffset + prefixLength, centralDirectory, 0, centralDirectory.length);
+
+        List<Entry> entries = new ArrayList<>((int) Math.min(entryCount, 65536));
+        int position = 0;
+        while (position + CENTRAL_DIRECTORY_HEADER_LENGTH <= centralDirectory.length) {
+            if (getInt(centralDirectory, position) != CENTRAL_DIRECTORY_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid central directory header at entry " + entries.size());
+            }
+            int flags = getShort(centralDirectory, position + 8);
+            int method = getShort(centralDirectory, position + 10);
+            long compressedSize = getUnsignedInt(centralDirectory, position + 20);
+            long size = getUnsignedInt(centralDirectory, position + 24);
+            int nameLength = getShort(centralDirectory, position + 28);
+            int extraLength = getShort(centralDirectory, position + 30);
+            int commentLength = getShort(centralDirectory, position + 32);
+            long localHeaderOffset = getUnsignedInt(centralDirectory, position + 42);
+            int nameStart = position + CENTRAL_DIRECTORY_HEADER_LENGTH;
+            int extraStart = nameStart + nameLength;
+            int nextEntry = extraStart + extraLength + commentLength;
+            if (nextEntry > centralDirectory.length) {
+                throw new ZipException("Truncated central directory header at entry " + entries.size());
+            }
+            String name = new String(centralDirectory, nameStart, nameLength, UTF_8);
+
+            if (size == ZIP64_MAGIC || compressedSize == ZIP64_MAGIC || localHeaderOffset == ZIP64_MAGIC) {
+                // the real values are stored in the ZIP64 extra field, in this order, only for the ones that overflowed
+                int extraPosition = extraStart;
+                while (extraPosition + 4 <= extraStart + extraLength) {
+                    int extraId = getShort(centralDirectory, extraPosition);
+                    int extraDataLength = getShort(centralDirectory, extraPosition + 2);
+                    int extraData = extraPosition + 4;
+                    if (extraId == ZIP64_EXTRA_FIELD_ID) {
+                        if (size == ZIP64_MAGIC && extraData + 8 <= extraPosition + 4 + extraDataLength) {
+                            size = getLong(centralDirectory, extraData);
+                            extraData += 8;
+                        }
+                        if (compressedSize == ZIP64_MAGIC && extraData + 8 <= extraPosition + 4 + extraDataLength) {
+                            compressedSize = getLong(centralDirectory, extraData);
+                            extraData += 8;
+                        }
+                        if (localHeaderOffset == ZIP64_MAGIC && extraData + 8 <= extraPosition + 4 + extraDataLength) {
+                            localHeaderOffset = getLong(centralDirectory, extraData);
+                        }
+                        break;
+                    }
+                    extraPosition = extraData + extraDataLength;
+                }
+            }
+
+            entries.add(new Entry(name, method, (flags & 1) != 0, compressedSize, size, localHeaderOffset + prefixLength));
+            position = nextEntry;
+        }
+        return entries;
+    }
+
+    private void readFully(long position, byte[] buffer, int offset, int length) throws IOException {
+        while (length > 0) {
+            int bytesRead = archiveSource.read(position, buffer, offset, length);
+            if (bytesRead == -1) {
+                throw new EOFException("Unexpected end of archive");
+            }
+            position += bytesRead;
+            offset += bytesRead;
+            length -= bytesRead;
+        }
+    }
+
+    private static int getShort(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xFF) | ((buffer[offset + 1] & 0xFF) << 8);
+    }
+
+    private static int getInt(byte[] buffer, int offset) {
+        return getShort(buffer, offset) | (getShort(buffer, offset + 2) << 16);
+    }
+
+    private static long getUnsignedInt(byte[] buffer, int offset) {
+        return getInt(buffer, offset) & 0xFFFFFFFFL;
+    }
+
+    private static long getLong(byte[] buffer, int offset) {
+        return getUnsignedInt(buffer, offset) | (getUnsignedInt(buffer, offset + 4) << 32);
+    }
+
+    /**
+     * Raw deflate data needs an extra dummy byte at the end of the input for the inflater to detect the end of the
+     * stream, and the inflater is released as soon as the stream is closed.
+     */
+    private static class EntryInflaterInputStream extends InflaterInputStream {
+
+        private boolean dummyByteAdded = false;
+
+        EntryInflaterInputStream(InputStream inputStream) {
+            super(inputStream, new Inflater(true), 8192);
+        }
+
+        @Override
+        protected void fill() throws IOException {
+            len = in.read(buf, 0, buf.length);
+            if (len == -1) {
+                if (dummyByteAdded) {
+                    throw new EOFException("Unexpected end of ZLIB input stream");
+                }
+                buf[0] = 0;
+                len = 1;
+                dummyByteAdded = true;
+            }
+            inf.setInput(buf, 0, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            inf.end();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.jahia.tools.maven.plugins;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks that the memory mapped archive sources read the same bytes as the file ones, and that slices only read their
+ * range of the archive.
+ */
+public class ArchiveSourceTest extends TestCase {
+
+    private byte[] contents;
+    private File archiveFile;
+
+    @Override
+    protected void setUp() throws IOException {
+        contents = new byte[100000];
+        new Random(42).nextBytes(contents);
+        archiveFile = File.createTempFile("archive-source-", ".bin");
+        FileUtils.writeByteArrayToFile(archiveFile, contents);
+    }
+
+    @Override
+    protected void tearDown() {
+        archiveFile.delete();
+    }
+
+    public void testMappedAndFileSourcesReadTheSameBytes() throws IOException {
+        ArchiveSource fileArchiveSource = new FileArchiveSource(archiveFile);
+        ArchiveSource mappedArchiveSource = new MappedArchiveSource(archiveFile);
+        try {
+            assertSource(contents, fileArchiveSource);
+            assertSource(contents, mappedArchiveSource);
+        } finally {
+            fileArchiveSource.close();
+            mappedArchiveSource.close();
+        }
+    }
+
+    public void testSliceSource() throws IOException {
+        ArchiveSource mappedArchiveSource = new MappedArchiveSource(archiveFile);
+        try {
+            ArchiveSource sliceArchiveSource = new SliceArchiveSource(mappedArchiveSource, 1000, 5000);
+            assertSource(Arrays.copyOfRange(contents, 1000, 6000), sliceArchiveSource);
+            sliceArchiveSource.close();
+            // closing the slice leaves the parent open
+            assertSource(contents, mappedArchiveSource);
+        } finally {
+            mappedArchiveSource.close();
+        }
+    }
+
+    public void testTemporaryFileIsDeletedOnClose() throws IOException {
+        new TemporaryFileArchiveSource(archiveFile).close();
+        assertFalse(archiveFile.exists());
+    }
+
+    private static void assertSource(byte[] expectedContents, ArchiveSource archiveSource) throws IOException {
+        assertEquals(expectedContents.length, archiveSource.size());
+        assertTrue(Arrays.equals(expectedContents, IOUtils.toByteArray(new ArchiveSourceInputStream(archiveSource, 0, archiveSource.size()))));
+        byte[] buffer = new byte[200];
+        int position = expectedContents.length - 50;
+        // reads stop at the end of the archive
+        assertEquals(50, archiveSource.read(position, buffer, 10, 100));
+        assertTrue(Arrays.equals(Arrays.copyOfRange(expectedContents, position, expectedContents.length), Arrays.copyOfRange(buffer, 10, 60)));
+        assertEquals(-1, archiveSource.read(expectedContents.length, buffer, 0, buffer.length));
+    }
+}
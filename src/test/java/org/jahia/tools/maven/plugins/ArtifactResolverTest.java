@@ -0,0 +1,158 @@
+package org.jahia.tools.maven.plugins;
+
+import junit.framework.TestCase;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
+import org.eclipse.aether.resolution.ArtifactResult;
+import org.eclipse.aether.transfer.ArtifactNotFoundException;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves artifacts with a stub repository system, to check how they are grouped into batches and which thread
+ * resolves each batch.
+ */
+public class ArtifactResolverTest extends TestCase {
+
+    private static final Artifact FIRST = new DefaultArtifact("org.example:first:1.0");
+    private static final Artifact SECOND = new DefaultArtifact("org.example:second:1.0");
+    private static final Artifact THIRD = new DefaultArtifact("org.example:third:1.0");
+    private static final Artifact MISSING = new DefaultArtifact("org.example:missing:1.0");
+
+    // the artifact ids of each batch and the thread that resolved it, in the order the batches were resolved
+    private final List<List<String>> batches = Collections.synchronizedList(new ArrayList<List<String>>());
+    private final List<Thread> batchThreads = Collections.synchronizedList(new ArrayList<Thread>());
+    private final CountDownLatch firstStarted = new CountDownLatch(1);
+    private final CountDownLatch firstReleased = new CountDownLatch(1);
+    private volatile boolean holdFirst;
+    private ArtifactResolver artifactResolver;
+
+    @Override
+    protected void setUp() {
+        RepositorySystem repositorySystem = (RepositorySystem) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{RepositorySystem.class}, new InvocationHandler() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (!"resolveArtifacts".equals(method.getName())) {
+                            throw new UnsupportedOperationException(method.getName());
+                        }
+                        return resolveArtifacts((List<ArtifactRequest>) args[1]);
+                    }
+                });
+        artifactResolver = new ArtifactResolver(repositorySystem, null, Collections.<RemoteRepository>emptyList(), 1);
+    }
+
+    @Override
+    protected void tearDown() {
+        firstReleased.countDown();
+        artifactResolver.close();
+    }
+
+    public void testPrefetchedArtifactsAreBatchedWhileThePoolIsBusy() throws Exception {
+        holdFirst = true;
+        artifactResolver.prefetch(Arrays.asList(FIRST));
+        artifactResolver.prefetch(Arrays.asList(SECOND));
+        artifactResolver.prefetch(Arrays.asList(THIRD, FIRST));
+        firstReleased.countDown();
+        assertResolved(FIRST, artifactResolver.resolve(FIRST));
+        assertResolved(SECOND, artifactResolver.resolve(SECOND));
+        assertResolved(THIRD, artifactResolver.resolve(THIRD));
+
+        assertEquals(Arrays.asList(Arrays.asList("first"), Arrays.asList("second", "third")), batches);
+        assertEquals(2, artifactResolver.getBatches());
+        assertEquals(3, artifactResolver.getArtifacts());
+    }
+
+    public void testPendingBatchIsResolvedInTheCallingThread() throws Exception {
+        holdFirst = true;
+        artifactResolver.prefetch(Arrays.asList(FIRST));
+        assertTrue(firstStarted.await(10, TimeUnit.SECONDS));
+        artifactResolver.prefetch(Arrays.asList(SECOND, THIRD));
+        // resolved while the only pool thread is still busy with the first batch
+        assertResolved(THIRD, artifactResolver.resolve(THIRD));
+        assertEquals(Arrays.asList("second", "third"), batches.get(0));
+        assertSame(Thread.currentThread(), batchThreads.get(0));
+        assertResolved(SECOND, artifactResolver.resolve(SECOND));
+
+        firstReleased.countDown();
+        assertResolved(FIRST, artifactResolver.resolve(FIRST));
+        assertNotSame(Thread.currentThread(), batchThreads.get(1));
+        assertEquals(2, batches.size());
+        assertEquals(2, artifactResolver.getBatches());
+    }
+
+    public void testArtifactsAreResolvedOnce() throws Exception {
+        assertResolved(FIRST, artifactResolver.resolve(FIRST));
+        artifactResolver.prefetch(Arrays.asList(FIRST));
+        assertResolved(FIRST, artifactResolver.resolve(FIRST));
+        assertEquals(1, batches.size());
+        assertEquals(1, artifactResolver.getArtifacts());
+    }
+
+    public void testUnresolvedArtifactsDontFailTheirBatch() throws Exception {
+        holdFirst = true;
+        artifactResolver.prefetch(Arrays.asList(FIRST));
+        assertTrue(firstStarted.await(10, TimeUnit.SECONDS));
+        artifactResolver.prefetch(Arrays.asList(MISSING, SECOND));
+        try {
+            artifactResolver.resolve(MISSING);
+            fail("The missing artifact shouldn't be resolved");
+        } catch (ArtifactResolutionException e) {
+            // expected
+        }
+        assertResolved(SECOND, artifactResolver.resolve(SECOND));
+        assertEquals(1, batches.size());
+    }
+
+    private List<ArtifactResult> resolveArtifacts(List<ArtifactRequest> requests) throws ArtifactResolutionException {
+        List<String> artifactIds = new ArrayList<>();
+        for (ArtifactRequest request : requests) {
+            artifactIds.add(request.getArtifact().getArtifactId());
+        }
+        if (holdFirst && artifactIds.contains(FIRST.getArtifactId())) {
+            firstStarted.countDown();
+            try {
+                firstReleased.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        batches.add(artifactIds);
+        batchThreads.add(Thread.currentThread());
+        List<ArtifactResult> artifactResults = new ArrayList<>();
+        boolean failed = false;
+        for (ArtifactRequest request : requests) {
+            ArtifactResult artifactResult = new ArtifactResult(request);
+            if (MISSING.getArtifactId().equals(request.getArtifact().getArtifactId())) {
+                artifactResult.addException(new ArtifactNotFoundException(request.getArtifact(), null));
+                failed = true;
+            } else {
+                artifactResult.setArtifact(request.getArtifact().setFile(new File(request.getArtifact().getArtifactId() + ".jar")));
+            }
+            artifactResults.add(artifactResult);
+        }
+        if (failed) {
+            throw new ArtifactResolutionException(artifactResults);
+        }
+        return artifactResults;
+    }
+
+    private static void assertResolved(Artifact expectedArtifact, Artifact artifact) {
+        assertEquals(expectedArtifact.toString(), artifact.toString());
+        assertEquals(new File(expectedArtifact.getArtifactId() + ".jar"), artifact.getFile());
+    }
+}
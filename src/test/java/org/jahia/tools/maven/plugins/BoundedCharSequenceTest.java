@@ -0,0 +1,70 @@
+package org.jahia.tools.maven.plugins;
+
+import junit.framework.TestCase;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.regex.Pattern;
+
+/**
+ * Checks that reading a bounded text fails once its character or time budget is spent, or its thread interrupted.
+ */
+public class BoundedCharSequenceTest extends TestCase {
+
+    private static final String TEXT = StringUtils.repeat("license text ", 1000);
+
+    public void testCharacterBudget() {
+        BoundedCharSequence boundedText = new BoundedCharSequence(TEXT, 0, 100);
+        readCharacters(boundedText, 100);
+        assertExceeded(boundedText, 1);
+    }
+
+    public void testTimeBudget() throws InterruptedException {
+        BoundedCharSequence boundedText = new BoundedCharSequence(TEXT, 1, 0);
+        Thread.sleep(10);
+        // the clock is only checked every few thousand characters
+        assertExceeded(boundedText, TEXT.length());
+    }
+
+    public void testInterruption() {
+        BoundedCharSequence boundedText = new BoundedCharSequence(TEXT, 0, 0);
+        Thread.currentThread().interrupt();
+        try {
+            assertExceeded(boundedText, TEXT.length());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    public void testNoLimit() {
+        BoundedCharSequence boundedText = new BoundedCharSequence(TEXT, 0, 0);
+        for (int i = 0; i < 10; i++) {
+            readCharacters(boundedText, TEXT.length());
+        }
+    }
+
+    public void testBudgetIsSharedByTheExpressions() {
+        BoundedCharSequence boundedText = new BoundedCharSequence(TEXT, 0, TEXT.length() + TEXT.length() / 2);
+        assertFalse(Pattern.compile("\\d").matcher(boundedText).find());
+        try {
+            Pattern.compile("\\d").matcher(boundedText).find();
+            fail("The second expression should exceed the budget");
+        } catch (LicenseMatcher.MatchTimeoutException e) {
+            // expected
+        }
+    }
+
+    private static void readCharacters(CharSequence text, int count) {
+        for (int i = 0; i < count; i++) {
+            text.charAt(i % text.length());
+        }
+    }
+
+    private static void assertExceeded(CharSequence text, int count) {
+        try {
+            readCharacters(text, count);
+            fail("The budget should be exceeded");
+        } catch (LicenseMatcher.MatchTimeoutException e) {
+            // expected
+        }
+    }
+}
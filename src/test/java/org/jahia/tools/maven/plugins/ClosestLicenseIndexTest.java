@@ -0,0 +1,92 @@
+package org.jahia.tools.maven.plugins;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.jaxb.JaxbAnnotationModule;
+import junit.framework.TestCase;
+import org.apache.commons.lang3.StringUtils;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * Checks that pruning the variants by length and shared trigrams finds the same closest license as comparing the text
+ * with every variant.
+ */
+public class ClosestLicenseIndexTest extends TestCase {
+
+    private static final int THRESHOLD = 200;
+
+    private KnownLicenses knownLicenses;
+    private ClosestLicenseIndex closestLicenseIndex;
+
+    @Override
+    protected void setUp() {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new JaxbAnnotationModule());
+        knownLicenses = KnownLicensesDatabase.readJson(mapper, getClass().getClassLoader(), new ArrayList<URL>());
+        closestLicenseIndex = new ClosestLicenseIndex(knownLicenses.getLicenses().values());
+    }
+
+    public void testSameResultsAsComparingAllVariants() {
+        for (KnownLicense knownLicense : knownLicenses.getLicenses().values()) {
+            for (TextVariant textVariant : knownLicense.getTextVariants()) {
+                for (int edits : new int[]{0, 10, 100}) {
+                    String text = edit(textVariant.getText(), edits);
+                    KnownLicense expectedLicense = findClosestLicense(text, THRESHOLD);
+                    KnownLicense closestLicense = closestLicenseIndex.findClosestLicense(text, THRESHOLD);
+                    assertSame(knownLicense.getId() + "/" + textVariant.getId() + " with " + edits + " edits",
+                            expectedLicense, closestLicense);
+                }
+            }
+        }
+    }
+
+    public void testNoLicenseWithinTheThreshold() {
+        assertNull(closestLicenseIndex.findClosestLicense("This is not a license", THRESHOLD));
+        assertNull(closestLicenseIndex.findClosestLicense("", THRESHOLD));
+    }
+
+    public void testAddedLicenses() {
+        String text = "The example files may also be redistributed under the example terms.";
+        assertNull(closestLicenseIndex.findClosestLicense(text, 10));
+        KnownLicense knownLicense = new KnownLicense();
+        knownLicense.setId("example-additional-terms");
+        TextVariant textVariant = new TextVariant();
+        textVariant.setText(text.replace("example", "sample"));
+        knownLicense.setTextVariants(Collections.singletonList(textVariant));
+        closestLicenseIndex.addLicense(knownLicense);
+        assertSame(knownLicense, closestLicenseIndex.findClosestLicense(text, 10));
+    }
+
+    /**
+     * @return the first license, in the order of the licenses and of their variants, with the variant closest to the
+     * text
+     */
+    private KnownLicense findClosestLicense(String text, int threshold) {
+        KnownLicense closestLicense = null;
+        int smallestEditDistance = threshold + 1;
+        for (KnownLicense knownLicense : knownLicenses.getLicenses().values()) {
+            for (TextVariant textVariant : knownLicense.getTextVariants()) {
+                int editDistance = StringUtils.getLevenshteinDistance(textVariant.getText(), text, threshold);
+                if (editDistance >= 0 && editDistance < smallestEditDistance) {
+                    closestLicense = knownLicense;
+                    smallestEditDistance = editDistance;
+                }
+            }
+        }
+        return closestLicense;
+    }
+
+    /**
+     * Substitutes characters spread over the text.
+     */
+    private static String edit(String text, int edits) {
+        StringBuilder editedText = new StringBuilder(text);
+        for (int i = 0; i < edits && i < text.length(); i++) {
+            int position = (int) ((long) i * text.length() / edits);
+            editedText.setCharAt(position, editedText.charAt(position) == 'x' ? 'y' : 'x');
+        }
+        return editedText.toString();
+    }
+}
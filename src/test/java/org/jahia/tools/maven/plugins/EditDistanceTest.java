@@ -0,0 +1,109 @@
+package org.jahia.tools.maven.plugins;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Checks that the bit-parallel edit distance gives the same results as the commons-lang one on the bundled license
+ * text variants.
+ */
+public class EditDistanceTest extends TestCase {
+
+    // the texts are truncated so that the full commons-lang distance of every pair stays affordable
+    private static final int COMPARED_PREFIX_LENGTH = 600;
+
+    private List<String> variantTexts;
+
+    @Override
+    protected void setUp() throws IOException, URISyntaxException {
+        URL knownLicensesURL = getClass().getClassLoader().getResource("known-licenses");
+        assertNotNull("The known licenses aren't on the class path", knownLicensesURL);
+        Collection<File> variantFiles = FileUtils.listFiles(new File(knownLicensesURL.toURI()), new String[]{"txt"}, true);
+        variantTexts = new ArrayList<>();
+        for (File variantFile : variantFiles) {
+            variantTexts.add(FileUtils.readFileToString(variantFile, "UTF-8"));
+        }
+        assertFalse(variantTexts.isEmpty());
+    }
+
+    public void testDistancesWithinAndBeyondThreshold() {
+        for (int i = 0; i < variantTexts.size(); i++) {
+            String s = StringUtils.left(variantTexts.get(i), COMPARED_PREFIX_LENGTH);
+            for (int j = i; j < variantTexts.size(); j++) {
+                String t = StringUtils.left(variantTexts.get(j), COMPARED_PREFIX_LENGTH);
+                int distance = StringUtils.getLevenshteinDistance(s, t);
+                assertDistance(s, t, distance);
+                assertDistance(s, t, distance + 10);
+                if (distance > 0) {
+                    assertDistance(s, t, distance - 1);
+                    assertDistance(s, t, distance / 2);
+                    assertDistance(s, t, 0);
+                }
+            }
+        }
+    }
+
+    public void testEditedFullTexts() {
+        for (String text : variantTexts) {
+            String editedText = edit(text);
+            int distance = StringUtils.getLevenshteinDistance(text, editedText, 100);
+            assertTrue("The edited text is too far from the original one", distance >= 0);
+            assertDistance(text, editedText, distance);
+            assertDistance(text, editedText, 100);
+            if (distance > 0) {
+                assertDistance(text, editedText, distance - 1);
+            }
+        }
+    }
+
+    public void testInvalidArguments() {
+        try {
+            EditDistance.getLevenshteinDistance(null, "a", 1);
+            fail("A null text should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            EditDistance.getLevenshteinDistance("a", "b", -1);
+            fail("A negative threshold should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static void assertDistance(String s, String t, int threshold) {
+        int expectedDistance = StringUtils.getLevenshteinDistance(s, t, threshold);
+        assertEquals("Distance with threshold " + threshold, expectedDistance, EditDistance.getLevenshteinDistance(s, t, threshold));
+        assertEquals("Distance with threshold " + threshold, expectedDistance, EditDistance.getLevenshteinDistance(t, s, threshold));
+    }
+
+    /**
+     * Deletes, substitutes and inserts characters spread over the text, crossing the 64 character blocks.
+     */
+    private static String edit(String text) {
+        StringBuilder editedText = new StringBuilder(text);
+        for (int position = editedText.length() - 1; position >= 0; position -= Math.max(1, editedText.length() / 7)) {
+            switch (position % 3) {
+                case 0:
+                    editedText.deleteCharAt(position);
+                    break;
+                case 1:
+                    editedText.setCharAt(position, editedText.charAt(position) == 'x' ? 'y' : 'x');
+                    break;
+                default:
+                    editedText.insert(position, "\u00e9z");
+                    break;
+            }
+        }
+        return editedText.toString();
+    }
+}
@@ -0,0 +1,113 @@
+package org.jahia.tools.maven.plugins;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.jaxb.JaxbAnnotationModule;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that the precompiled known licenses database holds the same licenses as its JSON source, with their texts only
+ * read when first needed.
+ */
+public class KnownLicensesDatabaseTest extends TestCase {
+
+    private KnownLicenses sourceKnownLicenses;
+    private File precompiledFile;
+
+    @Override
+    protected void setUp() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new JaxbAnnotationModule());
+        List<URL> resources = new ArrayList<>();
+        sourceKnownLicenses = KnownLicensesDatabase.readJson(mapper, getClass().getClassLoader(), resources);
+        assertFalse("The known licenses aren't on the class path", resources.isEmpty());
+        precompiledFile = File.createTempFile("known-licenses-", ".bin");
+        KnownLicensesDatabase.write(sourceKnownLicenses, precompiledFile);
+    }
+
+    @Override
+    protected void tearDown() {
+        precompiledFile.delete();
+    }
+
+    public void testPrecompiledDatabaseHoldsTheSourceLicenses() throws IOException {
+        KnownLicensesDatabase.Precompiled precompiled = KnownLicensesDatabase.readPrecompiled(precompiledFile.toURI().toURL());
+        KnownLicenses knownLicenses = precompiled.getKnownLicenses();
+        assertEquals(new ArrayList<>(sourceKnownLicenses.getLicenses().keySet()), new ArrayList<>(knownLicenses.getLicenses().keySet()));
+        for (KnownLicense sourceKnownLicense : sourceKnownLicenses.getLicenses().values()) {
+            KnownLicense knownLicense = knownLicenses.getLicenses().get(sourceKnownLicense.getId());
+            assertEquals(sourceKnownLicense.getName(), knownLicense.getName());
+            assertEquals(sourceKnownLicense.getAliases(), knownLicense.getAliases());
+            assertEquals(sourceKnownLicense.getSpdxId(), knownLicense.getSpdxId());
+            assertEquals(sourceKnownLicense.getUrls(), knownLicense.getUrls());
+            assertEquals(sourceKnownLicense.isViral(), knownLicense.isViral());
+
+            // the precompiled data is known before the texts are read, and is what the texts give
+            assertTrue(Arrays.equals(LicenseFingerprintIndex.getShingles(sourceKnownLicense.getTextToUse()), knownLicense.getTextToUseShingles()));
+            assertEquals(sourceKnownLicense.getTextToUse(), knownLicense.getTextToUse());
+            assertEquals(sourceKnownLicense.getTextVariants().size(), knownLicense.getTextVariants().size());
+            Iterator<TextVariant> textVariants = knownLicense.getTextVariants().iterator();
+            for (TextVariant sourceTextVariant : sourceKnownLicense.getTextVariants()) {
+                TextVariant textVariant = textVariants.next();
+                assertEquals(sourceTextVariant.getId(), textVariant.getId());
+                assertEquals(sourceTextVariant.isDefaultVariant(), textVariant.isDefaultVariant());
+                assertEquals(sourceTextVariant.getText().length(), textVariant.getTextLength());
+                assertEquals(LicenseMatcher.getAnchorPhrases(sourceTextVariant.getText()), textVariant.getAnchorPhrases());
+                assertEquals(sourceTextVariant.isFormattingVariant(sourceKnownLicense.getTextToUseShingles()),
+                        textVariant.isFormattingVariant(knownLicense.getTextToUseShingles()));
+                assertEquals(sourceTextVariant.getText(), textVariant.getText());
+            }
+        }
+    }
+
+    public void testPrecompiledNameIndex() throws IOException {
+        KnownLicensesDatabase.Precompiled precompiled = KnownLicensesDatabase.readPrecompiled(precompiledFile.toURI().toURL());
+        LicenseNameIndex sourceNameIndex = new LicenseNameIndex(sourceKnownLicenses);
+        assertEquals(sourceNameIndex.getLicenseIdsByName(), precompiled.getLicenseNameIndex().getLicenseIdsByName());
+        assertEquals(sourceNameIndex.getLicenseIdsByNormalizedName(), precompiled.getLicenseNameIndex().getLicenseIdsByNormalizedName());
+        assertEquals(sourceNameIndex.getLicenseIdsByUrl(), precompiled.getLicenseNameIndex().getLicenseIdsByUrl());
+        KnownLicense knownLicense = precompiled.getLicenseNameIndex().findByName("apache license version 2");
+        assertNotNull(knownLicense);
+        assertSame(precompiled.getKnownLicenses().getLicenses().get(knownLicense.getId()), knownLicense);
+    }
+
+    public void testMatchingReadsOnlyTheVerifiedTexts() throws IOException {
+        final URL precompiledURL = precompiledFile.toURI().toURL();
+        final AtomicInteger reads = new AtomicInteger();
+        URL countingPrecompiledURL = new URL(null, precompiledURL.toString(), new URLStreamHandler() {
+            @Override
+            protected URLConnection openConnection(URL url) throws IOException {
+                reads.incrementAndGet();
+                return precompiledURL.openConnection();
+            }
+        });
+        KnownLicensesDatabase.Precompiled precompiled = KnownLicensesDatabase.readPrecompiled(countingPrecompiledURL);
+        assertEquals(1, reads.get());
+        KnownLicense sourceKnownLicense = sourceKnownLicenses.getLicenses().get("asl-v2");
+        LicenseMatcher licenseMatcher = new LicenseMatcher(precompiled.getKnownLicenses(), true, 0, 0);
+        List<LicenseMatcher.Match> matches = licenseMatcher.findMatches(sourceKnownLicense.getTextToUse());
+        assertEquals(1, matches.size());
+        assertEquals("asl-v2", matches.get(0).getKnownLicense().getId());
+        // only the variants of the matching license whose anchor phrases were all found are read
+        assertTrue("Read " + (reads.get() - 1) + " texts", reads.get() - 1 <= sourceKnownLicense.getTextVariants().size());
+    }
+
+    public void testInvalidArguments() throws IOException {
+        try {
+            KnownLicensesDatabase.main(new String[]{"source"});
+            fail("The missing argument should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
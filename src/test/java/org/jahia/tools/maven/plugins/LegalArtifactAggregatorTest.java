@@ -0,0 +1,341 @@
+package org.jahia.tools.maven.plugins;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.jaxb.JaxbAnnotationModule;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
+import org.eclipse.aether.resolution.ArtifactResult;
+import org.eclipse.aether.transfer.ArtifactNotFoundException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Runs the aggregator on a JAR whose POM has a parent and on the JARs each test adds, to check what is scanned and what
+ * the scan cache keeps between builds.
+ */
+public class LegalArtifactAggregatorTest extends TestCase {
+
+    private static final String PARENT_POM = "org.example:example-parent:pom:1.0";
+
+    private File testDirectory;
+    private File scanDirectory;
+    private File scanCacheDirectory;
+    // the artifacts the repository system was asked for by the last build
+    private final List<String> requestedArtifacts = Collections.synchronizedList(new ArrayList<String>());
+    // the artifacts the repository system finds, all the others being missing
+    private final Map<String, File> repositoryArtifacts = new ConcurrentHashMap<>();
+
+    @Override
+    protected void setUp() throws IOException {
+        testDirectory = File.createTempFile("legal-artifact-aggregator-", "");
+        testDirectory.delete();
+        scanDirectory = new File(testDirectory, "scan");
+        scanCacheDirectory = new File(testDirectory, "scan-cache");
+        scanDirectory.mkdirs();
+        writeJar(new File(scanDirectory, "example-1.0.jar"));
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        FileUtils.deleteDirectory(testDirectory);
+    }
+
+    public void testOfflineMissesAreLookedUpByTheNextOnlineBuild() {
+        aggregate(true);
+        assertTrue("The parent POM wasn't looked up offline", requestedArtifacts.contains(PARENT_POM));
+
+        aggregate(false);
+        assertTrue("The parent POM missed offline wasn't looked up online", requestedArtifacts.contains(PARENT_POM));
+
+        // the parent POM isn't in the repositories, which doesn't change until the cached results expire
+        aggregate(false);
+        assertTrue("The JAR processed online wasn't cached: " + requestedArtifacts, requestedArtifacts.isEmpty());
+    }
+
+    public void testIdenticalJarsAreProcessedOnce() throws IOException {
+        File copiedJarFile = new File(scanDirectory, "copies/example-copy-1.0.jar");
+        FileUtils.copyFile(new File(scanDirectory, "example-1.0.jar"), copiedJarFile);
+        String jarDatabase = FileUtils.readFileToString(new File(aggregate(newSettings(false), "output"), "jar-database.json"), "UTF-8");
+        assertEquals(Collections.singletonList(PARENT_POM), requestedArtifacts);
+        assertTrue(jarDatabase, jarDatabase.contains(copiedJarFile.getPath()));
+        assertFalse(jarDatabase, jarDatabase.contains("\"example-copy-1.0\""));
+    }
+
+    public void testParallelScanWritesTheSameReports() throws IOException {
+        for (int i = 0; i < 10; i++) {
+            writeContainerJar(new File(scanDirectory, "container" + i + "-1.0.jar"), "Notice " + i + "\n", i % 2 == 0);
+        }
+        File serialOutputDirectory = aggregate(newSettings(false).setScanThreads(1), "serial-output");
+        File parallelOutputDirectory = aggregate(newSettings(false).setScanThreads(4), "parallel-output");
+        for (String report : new String[]{"NOTICE-aggregated", "LICENSE-aggregated", "jar-database.json"}) {
+            assertEquals(report, FileUtils.readFileToString(new File(serialOutputDirectory, report), "UTF-8"),
+                    FileUtils.readFileToString(new File(parallelOutputDirectory, report), "UTF-8"));
+        }
+    }
+
+    public void testEmbeddedJarsAreScanned() throws IOException {
+        writeContainerJar(new File(scanDirectory, "stored-container-1.0.jar"), "Stored embedded notice\n", true);
+        writeContainerJar(new File(scanDirectory, "deflated-container-1.0.jar"), "Deflated embedded notice\n", false);
+        // compressed embedded JARs are inflated in memory or into a temporary file depending on their size
+        for (long inMemoryEmbeddedJarThreshold : new long[]{4 * 1024 * 1024, 0}) {
+            String notices = FileUtils.readFileToString(new File(aggregate(newSettings(false)
+                    .setInMemoryEmbeddedJarThreshold(inMemoryEmbeddedJarThreshold), "output-" + inMemoryEmbeddedJarThreshold), "NOTICE-aggregated"), "UTF-8");
+            assertTrue(notices, notices.contains("Stored embedded notice"));
+            assertTrue(notices, notices.contains("Deflated embedded notice"));
+        }
+    }
+
+    public void testJarsInContainerArchivesAreScanned() throws IOException {
+        byte[] war = createArchive("WEB-INF/lib/library-1.0.jar", createJar("Library notice\n"), true);
+        FileOutputStream earOutputStream = new FileOutputStream(new File(scanDirectory, "application.ear"));
+        ZipOutputStream zipOutputStream = new ZipOutputStream(earOutputStream);
+        try {
+            writeEntry(zipOutputStream, "web.war", war, false);
+            writeEntry(zipOutputStream, "lib/other-1.0.jar", createJar("Other notice\n"), false);
+        } finally {
+            zipOutputStream.close();
+        }
+        String notices = FileUtils.readFileToString(new File(aggregate(newSettings(false), "output"), "NOTICE-aggregated"), "UTF-8");
+        assertTrue(notices, notices.contains("Library notice"));
+        assertTrue(notices, notices.contains("Other notice"));
+
+        notices = FileUtils.readFileToString(new File(aggregate(newSettings(false)
+                .setContainerArchiveExtensions(Collections.<String>emptySet()), "jars-only-output"), "NOTICE-aggregated"), "UTF-8");
+        assertFalse(notices, notices.contains("Library notice"));
+        assertFalse(notices, notices.contains("Other notice"));
+    }
+
+    public void testLicensesOfTheSameFileAreAllFound() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new JaxbAnnotationModule());
+        KnownLicenses knownLicenses = KnownLicensesDatabase.readJson(mapper, getClass().getClassLoader(), new ArrayList<URL>());
+        String additionalTerms = "The example files may also be redistributed under the example terms.\n";
+        String license = "Copyright (c) Example\n\n" + knownLicenses.getLicenses().get("bsd-3clause").getTextToUse() + "\n" +
+                additionalTerms + "\n" + knownLicenses.getLicenses().get("mit").getTextToUse();
+        ZipOutputStream jarOutputStream = new ZipOutputStream(new FileOutputStream(new File(scanDirectory, "licensed-1.0.jar")));
+        try {
+            writeEntry(jarOutputStream, "META-INF/LICENSE", license);
+            writeEntry(jarOutputStream, "META-INF/NOTICE", "Licensed notice\n");
+        } finally {
+            jarOutputStream.close();
+        }
+        String licenses = FileUtils.readFileToString(new File(aggregate(newSettings(false), "output"), "LICENSE-aggregated"), "UTF-8");
+        assertTrue(licenses, licenses.contains(knownLicenses.getLicenses().get("bsd-3clause").getName()));
+        assertTrue(licenses, licenses.contains(knownLicenses.getLicenses().get("mit").getName()));
+        // only the text after the first license that no license matched is kept as additional terms
+        assertTrue(licenses, licenses.contains("Additional license terms from licensed-1.0"));
+        assertTrue(licenses, licenses.contains(additionalTerms));
+        assertFalse(licenses, licenses.contains("Copyright (c) Example"));
+    }
+
+    public void testMachineReadableLicensesAreOnlyUsedWhenTrusted() throws IOException {
+        ZipOutputStream jarOutputStream = new ZipOutputStream(new FileOutputStream(new File(scanDirectory, "declared-1.0.jar")));
+        try {
+            writeEntry(jarOutputStream, "META-INF/MANIFEST.MF", "Manifest-Version: 1.0\nBundle-License: http://www.apache.org/licenses/LICENSE-2.0.txt\n");
+            writeEntry(jarOutputStream, "META-INF/LICENSE", "Custom license text\n");
+            writeEntry(jarOutputStream, "META-INF/NOTICE", "Declared notice\n");
+        } finally {
+            jarOutputStream.close();
+        }
+        String licenses = FileUtils.readFileToString(new File(aggregate(newSettings(false)
+                .setTrustMachineReadableLicenses(true), "trusted-output"), "LICENSE-aggregated"), "UTF-8");
+        assertTrue(licenses, licenses.contains("Apache Software License V2"));
+        assertFalse(licenses, licenses.contains("Custom license text"));
+
+        licenses = FileUtils.readFileToString(new File(aggregate(newSettings(false), "output"), "LICENSE-aggregated"), "UTF-8");
+        assertFalse(licenses, licenses.contains("Apache Software License V2"));
+        assertTrue(licenses, licenses.contains("Custom license text"));
+    }
+
+    public void testSourcesJarIsOnlyLookedUpWhenLicenseOrNoticeIsMissing() throws IOException {
+        writeJar(new File(scanDirectory, "noticeless-1.0.jar"), "noticeless", false);
+        aggregate(newSettings(false), "output");
+        assertEquals(1, Collections.frequency(requestedArtifacts, "org.example:noticeless:jar:sources:1.0"));
+        assertFalse(requestedArtifacts.toString(), requestedArtifacts.contains("org.example:example:jar:sources:1.0"));
+    }
+
+    public void testSourcesJarIsNotLookedUpForParentPoms() throws IOException {
+        File parentPomFile = new File(testDirectory, "example-parent-1.0.pom");
+        FileUtils.writeStringToFile(parentPomFile,
+                "<project>\n" +
+                "  <modelVersion>4.0.0</modelVersion>\n" +
+                "  <groupId>org.example</groupId>\n" +
+                "  <artifactId>example-parent</artifactId>\n" +
+                "  <version>1.0</version>\n" +
+                "  <packaging>pom</packaging>\n" +
+                "  <licenses>\n" +
+                "    <license>\n" +
+                "      <name>Example License</name>\n" +
+                "    </license>\n" +
+                "  </licenses>\n" +
+                "</project>\n", "UTF-8");
+        repositoryArtifacts.put(PARENT_POM, parentPomFile);
+        writeJar(new File(scanDirectory, "noticeless-1.0.jar"), "noticeless", false);
+        aggregate(newSettings(false), "output");
+        assertTrue(requestedArtifacts.toString(), requestedArtifacts.contains(PARENT_POM));
+        assertEquals(1, Collections.frequency(requestedArtifacts, "org.example:noticeless:jar:sources:1.0"));
+        for (String requestedArtifact : requestedArtifacts) {
+            assertFalse(requestedArtifacts.toString(), requestedArtifact.startsWith("org.example:example-parent:jar:sources:"));
+        }
+    }
+
+    private void aggregate(boolean offline) {
+        aggregate(newSettings(offline)
+                .setScanCacheDirectory(scanCacheDirectory)
+                .setScanCacheTtl(60 * 60 * 1000), offline ? "offline-output" : "online-output");
+    }
+
+    private static AggregationSettings newSettings(boolean offline) {
+        return new AggregationSettings()
+                .setOffline(offline)
+                .setMavenSearchUrl("http://localhost:1")
+                .setLicenseDownloadTimeout(1000);
+    }
+
+    /**
+     * @return the directory the reports were written to
+     */
+    private File aggregate(AggregationSettings settings, String outputDirectoryName) {
+        requestedArtifacts.clear();
+        RepositorySystem repositorySystem = (RepositorySystem) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{RepositorySystem.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (!method.getName().equals("resolveArtifacts")) {
+                            throw new UnsupportedOperationException(method.getName());
+                        }
+                        return resolveArtifacts((Collection<?>) args[1]);
+                    }
+                });
+        File outputDirectory = new File(testDirectory, outputDirectoryName);
+        outputDirectory.mkdirs();
+        RepositorySystemSession repositorySystemSession = new DefaultRepositorySystemSession();
+        new LegalArtifactAggregator(scanDirectory, outputDirectory, repositorySystem, repositorySystemSession,
+                Collections.<RemoteRepository>emptyList(), null, false, false, settings).execute();
+        return outputDirectory;
+    }
+
+    /**
+     * Finds none of the requested artifacts but the repository ones, as the aether resolver does for the artifacts that
+     * aren't in the local repository in offline mode.
+     */
+    private List<ArtifactResult> resolveArtifacts(Collection<?> requests) throws ArtifactResolutionException {
+        List<ArtifactResult> results = new ArrayList<>();
+        boolean missingArtifacts = false;
+        for (Object request : requests) {
+            ArtifactRequest artifactRequest = (ArtifactRequest) request;
+            requestedArtifacts.add(artifactRequest.getArtifact().toString());
+            ArtifactResult result = new ArtifactResult(artifactRequest);
+            File artifactFile = repositoryArtifacts.get(artifactRequest.getArtifact().toString());
+            if (artifactFile != null) {
+                result.setArtifact(artifactRequest.getArtifact().setFile(artifactFile));
+            } else {
+                result.addException(new ArtifactNotFoundException(artifactRequest.getArtifact(), null));
+                missingArtifacts = true;
+            }
+            results.add(result);
+        }
+        if (missingArtifacts) {
+            throw new ArtifactResolutionException(results);
+        }
+        return results;
+    }
+
+    /**
+     * Writes a JAR with a license and a notice, so that its sources JAR isn't needed, and a POM without licenses, so
+     * that its parent POM is looked up.
+     */
+    private static void writeJar(File jarFile) throws IOException {
+        writeJar(jarFile, "example", true);
+    }
+
+    private static void writeJar(File jarFile, String artifactId, boolean withNotice) throws IOException {
+        ZipOutputStream jarOutputStream = new ZipOutputStream(new FileOutputStream(jarFile));
+        try {
+            writeEntry(jarOutputStream, "META-INF/LICENSE", "Example license\n");
+            if (withNotice) {
+                writeEntry(jarOutputStream, "META-INF/NOTICE", "Example notice\n");
+            }
+            writeEntry(jarOutputStream, "META-INF/maven/org.example/" + artifactId + "/pom.xml",
+                    "<project>\n" +
+                    "  <modelVersion>4.0.0</modelVersion>\n" +
+                    "  <parent>\n" +
+                    "    <groupId>org.example</groupId>\n" +
+                    "    <artifactId>example-parent</artifactId>\n" +
+                    "    <version>1.0</version>\n" +
+                    "  </parent>\n" +
+                    "  <artifactId>" + artifactId + "</artifactId>\n" +
+                    "</project>\n");
+            writeEntry(jarOutputStream, "org/example/Example.class", "");
+        } finally {
+            jarOutputStream.close();
+        }
+    }
+
+    private static void writeContainerJar(File jarFile, String embeddedJarNotice, boolean stored) throws IOException {
+        ZipOutputStream jarOutputStream = new ZipOutputStream(new FileOutputStream(jarFile));
+        try {
+            writeEntry(jarOutputStream, "lib/embedded-1.0.jar", createJar(embeddedJarNotice), stored);
+        } finally {
+            jarOutputStream.close();
+        }
+    }
+
+    /**
+     * @return a JAR with only a notice, to be embedded in another one
+     */
+    private static byte[] createJar(String notice) throws IOException {
+        return createArchive("META-INF/NOTICE", notice.getBytes("UTF-8"), false);
+    }
+
+    private static byte[] createArchive(String entryName, byte[] contents, boolean stored) throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        ZipOutputStream zipOutputStream = new ZipOutputStream(byteArrayOutputStream);
+        try {
+            writeEntry(zipOutputStream, entryName, contents, stored);
+        } finally {
+            zipOutputStream.close();
+        }
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    private static void writeEntry(ZipOutputStream jarOutputStream, String name, String contents) throws IOException {
+        writeEntry(jarOutputStream, name, contents.getBytes("UTF-8"), false);
+    }
+
+    private static void writeEntry(ZipOutputStream jarOutputStream, String name, byte[] contents, boolean stored) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        if (stored) {
+            CRC32 crc = new CRC32();
+            crc.update(contents);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(contents.length);
+            entry.setCrc(crc.getValue());
+        }
+        jarOutputStream.putNextEntry(entry);
+        jarOutputStream.write(contents);
+        jarOutputStream.closeEntry();
+    }
+}
@@ -0,0 +1,229 @@
+package org.jahia.tools.maven.plugins;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Downloads license texts from a local stub server, to check what is downloaded, revalidated or taken from the cache.
+ */
+public class LicenseDownloaderTest extends TestCase {
+
+    private static final String TEXT = "Example License\n\nPermission is granted to use the example files.\n";
+    private static final String ETAG = "\"v1\"";
+    private static final long TTL = 60 * 60 * 1000;
+    private static final int TIMEOUT = 500;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private String serverUrl;
+    private File cacheDirectory;
+    private final AtomicInteger serverRequests = new AtomicInteger();
+    private final AtomicInteger notModifiedResponses = new AtomicInteger();
+    private final CountDownLatch responsesReleased = new CountDownLatch(1);
+    private volatile boolean holdResponses;
+    private volatile int responseStatus = 200;
+
+    @Override
+    protected void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/license", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                serverRequests.incrementAndGet();
+                if (holdResponses) {
+                    try {
+                        responsesReleased.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                if (responseStatus == 200 && ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    notModifiedResponses.incrementAndGet();
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+                byte[] body = TEXT.getBytes("UTF-8");
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+                exchange.getResponseHeaders().set("ETag", ETAG);
+                exchange.sendResponseHeaders(responseStatus, body.length);
+                OutputStream responseBody = exchange.getResponseBody();
+                responseBody.write(body);
+                responseBody.close();
+            }
+        });
+        server.createContext("/moved", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().set("Location", "/license");
+                exchange.sendResponseHeaders(301, -1);
+                exchange.close();
+            }
+        });
+        server.createContext("/slow", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    responsesReleased.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+            }
+        });
+        // held responses mustn't keep the other requests waiting
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+        serverUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        cacheDirectory = File.createTempFile("license-downloader-", "");
+        cacheDirectory.delete();
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        responsesReleased.countDown();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        FileUtils.deleteDirectory(cacheDirectory);
+    }
+
+    public void testCachedTextIsUsedWithinTheTtl() throws IOException {
+        LicenseDownloader licenseDownloader = newDownloader(false);
+        assertEquals(TEXT, licenseDownloader.download(serverUrl + "/license"));
+        assertEquals(1, licenseDownloader.getServerDownloads());
+
+        LicenseDownloader nextLicenseDownloader = newDownloader(false);
+        assertEquals(TEXT, nextLicenseDownloader.download(serverUrl + "/license"));
+        assertEquals(1, serverRequests.get());
+        assertEquals(0, nextLicenseDownloader.getServerDownloads());
+        assertEquals(1, nextLicenseDownloader.getCachedDownloads());
+    }
+
+    public void testOutdatedTextIsRevalidated() throws IOException {
+        newDownloader(false).download(serverUrl + "/license");
+        makeCacheOutdated();
+
+        LicenseDownloader licenseDownloader = newDownloader(false);
+        assertEquals(TEXT, licenseDownloader.download(serverUrl + "/license"));
+        assertEquals(2, serverRequests.get());
+        assertEquals(1, notModifiedResponses.get());
+        assertEquals(0, licenseDownloader.getServerDownloads());
+        assertEquals(1, licenseDownloader.getCachedDownloads());
+
+        // the revalidated text is used for another period
+        assertEquals(TEXT, newDownloader(false).download(serverUrl + "/license"));
+        assertEquals(2, serverRequests.get());
+    }
+
+    public void testOutdatedTextIsUsedWhenTheServerFails() throws IOException {
+        newDownloader(false).download(serverUrl + "/license");
+        makeCacheOutdated();
+        responseStatus = 500;
+
+        LicenseDownloader licenseDownloader = newDownloader(false);
+        assertEquals(TEXT, licenseDownloader.download(serverUrl + "/license"));
+        assertEquals(2, serverRequests.get());
+        assertEquals(1, licenseDownloader.getCachedDownloads());
+    }
+
+    public void testFailedDownloadsAreNotCached() throws IOException {
+        responseStatus = 404;
+        try {
+            newDownloader(false).download(serverUrl + "/license");
+            fail("The download should fail");
+        } catch (IOException e) {
+            // expected
+        }
+        responseStatus = 200;
+        assertEquals(TEXT, newDownloader(false).download(serverUrl + "/license"));
+        assertEquals(2, serverRequests.get());
+    }
+
+    public void testSameDownloadsAreRunOnce() throws Exception {
+        holdResponses = true;
+        final LicenseDownloader licenseDownloader = newDownloader(false);
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            Callable<String> download = new Callable<String>() {
+                @Override
+                public String call() throws IOException {
+                    return licenseDownloader.download(serverUrl + "/license");
+                }
+            };
+            Future<String> firstDownload = executorService.submit(download);
+            Future<String> secondDownload = executorService.submit(download);
+            Thread.sleep(200);
+            responsesReleased.countDown();
+            assertEquals(TEXT, firstDownload.get());
+            assertEquals(TEXT, secondDownload.get());
+        } finally {
+            executorService.shutdownNow();
+        }
+        assertEquals(1, serverRequests.get());
+        assertEquals(1, licenseDownloader.getServerDownloads());
+    }
+
+    public void testRedirectsAreFollowed() throws IOException {
+        LicenseDownloader licenseDownloader = newDownloader(false);
+        assertEquals(TEXT, licenseDownloader.download(serverUrl + "/moved"));
+        assertEquals(1, serverRequests.get());
+    }
+
+    public void testSlowServerTimesOut() {
+        long start = System.currentTimeMillis();
+        try {
+            newDownloader(false).download(serverUrl + "/slow");
+            fail("The download should time out");
+        } catch (IOException e) {
+            // expected
+        }
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    public void testOfflineMissesAreRecorded() throws IOException {
+        LicenseDownloader offlineLicenseDownloader = newDownloader(true);
+        assertNull(offlineLicenseDownloader.download(serverUrl + "/license"));
+        assertEquals(0, serverRequests.get());
+        assertEquals(1, offlineLicenseDownloader.getOfflineMisses().size());
+    }
+
+    public void testOfflineUsesOutdatedTexts() throws IOException {
+        newDownloader(false).download(serverUrl + "/license");
+        makeCacheOutdated();
+
+        LicenseDownloader offlineLicenseDownloader = newDownloader(true);
+        assertEquals(TEXT, offlineLicenseDownloader.download(serverUrl + "/license"));
+        assertEquals(1, serverRequests.get());
+        assertTrue(offlineLicenseDownloader.getOfflineMisses().isEmpty());
+    }
+
+    private LicenseDownloader newDownloader(boolean offline) {
+        return new LicenseDownloader(cacheDirectory, TTL, TIMEOUT, 1024 * 1024, offline);
+    }
+
+    private void makeCacheOutdated() {
+        Collection<File> cacheFiles = FileUtils.listFiles(cacheDirectory, new String[]{"json"}, false);
+        assertFalse(cacheFiles.isEmpty());
+        for (File cacheFile : cacheFiles) {
+            cacheFile.setLastModified(System.currentTimeMillis() - 2 * TTL);
+        }
+    }
+}
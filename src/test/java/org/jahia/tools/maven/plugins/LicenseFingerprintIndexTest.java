@@ -0,0 +1,124 @@
+package org.jahia.tools.maven.plugins;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.jaxb.JaxbAnnotationModule;
+import junit.framework.TestCase;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks that the licenses are recognized by their fingerprints whatever their formatting, in the part of the text they
+ * are in, and that the variants that are only another formatting of their license are verified by fingerprint.
+ */
+public class LicenseFingerprintIndexTest extends TestCase {
+
+    private KnownLicenses knownLicenses;
+    private LicenseFingerprintIndex fingerprintIndex;
+
+    @Override
+    protected void setUp() {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new JaxbAnnotationModule());
+        knownLicenses = KnownLicensesDatabase.readJson(mapper, getClass().getClassLoader(), new ArrayList<URL>());
+        fingerprintIndex = new LicenseFingerprintIndex(new ArrayList<>(knownLicenses.getLicenses().values()));
+    }
+
+    public void testCommentedCopyIsRecognized() {
+        String licenseText = getTextToUse("asl-v2");
+        StringBuilder commentedText = new StringBuilder("package org.example;\n\n/*\n");
+        for (String line : licenseText.split("\n")) {
+            commentedText.append(" * ").append(line).append('\n');
+        }
+        commentedText.append(" */\n");
+        String text = commentedText.toString();
+        LicenseMatcher.Match match = fingerprintIndex.findBestMatch(text);
+        assertNotNull(match);
+        assertEquals("asl-v2", match.getKnownLicense().getId());
+        // the comment marker opening the license is part of it, the code before it isn't
+        assertTrue(match.getStart() >= "package org.example".length());
+        assertTrue(match.getStart() <= text.indexOf("/*"));
+        assertEquals(text.length(), match.getEnd());
+    }
+
+    public void testStrayShinglesDontWidenTheSpan() {
+        String licenseText = getTextToUse("lgpl-v3");
+        StringBuilder filler = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            filler.append("word").append(i).append(' ');
+        }
+        // a sentence of the license quoted far away from it
+        String quote = licenseText.substring(0, 200);
+        String text = licenseText + "\n\n" + filler + "\n\n" + quote + "\n";
+        LicenseMatcher.Match match = fingerprintIndex.findBestMatch(text);
+        assertNotNull(match);
+        assertEquals("lgpl-v3", match.getKnownLicense().getId());
+        assertEquals(0, match.getStart());
+        assertTrue("The span reaches the quote at " + match.getEnd(), match.getEnd() <= licenseText.length() + 2);
+    }
+
+    public void testLicensesOfTheSameTextAreSegmented() {
+        String firstLicenseText = getTextToUse("asl-v2");
+        String secondLicenseText = getTextToUse("lgpl-v3");
+        String text = firstLicenseText + "\n\n" + secondLicenseText;
+        Map<KnownLicense, LicenseMatcher.Match> matches = fingerprintIndex.findMatches(text);
+        LicenseMatcher.Match firstMatch = matches.get(knownLicenses.getLicenses().get("asl-v2"));
+        LicenseMatcher.Match secondMatch = matches.get(knownLicenses.getLicenses().get("lgpl-v3"));
+        assertNotNull(firstMatch);
+        assertNotNull(secondMatch);
+        assertEquals(0, firstMatch.getStart());
+        assertTrue(firstMatch.getEnd() <= text.indexOf(secondLicenseText.trim()));
+        assertTrue(secondMatch.getStart() >= firstLicenseText.trim().length());
+        assertEquals(text.length(), secondMatch.getEnd());
+    }
+
+    public void testOnlyTheClosestVersionIsKept() {
+        Map<KnownLicense, LicenseMatcher.Match> matches = fingerprintIndex.findMatches(getTextToUse("cddl-v1.1"));
+        assertTrue(matches.containsKey(knownLicenses.getLicenses().get("cddl-v1.1")));
+        // CDDL 1.0 shares most of its text, but fewer of its shingles are found
+        assertFalse(matches.containsKey(knownLicenses.getLicenses().get("cddl-v1")));
+    }
+
+    public void testFormattingVariants() {
+        assertTrue(isFormattingVariant("asl-v2", "java-commented-long-form"));
+        // has wildcards
+        assertFalse(isFormattingVariant("asl-v2", "short-form"));
+        // has the classpath exception, which isn't in the license text
+        assertFalse(isFormattingVariant("gpl-v2", "default"));
+        // only has the CDDL part of the dual license
+        assertFalse(isFormattingVariant("CDDLv1-GPLv2", "default"));
+    }
+
+    public void testFormattingVariantIsVerifiedByFingerprint() {
+        KnownLicense knownLicense = knownLicenses.getLicenses().get("asl-v2");
+        TextVariant textVariant = getTextVariant("asl-v2", "java-commented-long-form");
+        String text = "Licensed under:\n" + textVariant.getText().substring(2, textVariant.getText().lastIndexOf("\\E"));
+        // the expression of the variant can't run anymore, so a match can only come from the fingerprint
+        textVariant.setText("\\Qno such text\\E");
+        textVariant.setPrecompiledData(text.length(), null, true);
+        List<LicenseMatcher.Match> matches = new LicenseMatcher(knownLicenses, true, 0, 0).findMatches(text);
+        assertEquals(1, matches.size());
+        assertSame(knownLicense, matches.get(0).getKnownLicense());
+        assertEquals(text.length(), matches.get(0).getEnd());
+    }
+
+    private boolean isFormattingVariant(String licenseId, String textVariantId) {
+        return LicenseFingerprintIndex.isFormattingVariant(getTextVariant(licenseId, textVariantId).getText(),
+                knownLicenses.getLicenses().get(licenseId).getTextToUseShingles());
+    }
+
+    private String getTextToUse(String licenseId) {
+        return knownLicenses.getLicenses().get(licenseId).getTextToUse();
+    }
+
+    private TextVariant getTextVariant(String licenseId, String textVariantId) {
+        for (TextVariant textVariant : knownLicenses.getLicenses().get(licenseId).getTextVariants()) {
+            if (textVariant.getId().equals(textVariantId)) {
+                return textVariant;
+            }
+        }
+        throw new IllegalArgumentException(licenseId + "/" + textVariantId);
+    }
+}
@@ -0,0 +1,157 @@
+package org.jahia.tools.maven.plugins;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.jaxb.JaxbAnnotationModule;
+import junit.framework.TestCase;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+/**
+ * Matches texts against the bundled known licenses with their regular expressions only, the fingerprints being
+ * covered by {@link LicenseFingerprintIndexTest}.
+ */
+public class LicenseMatcherTest extends TestCase {
+
+    private KnownLicenses knownLicenses;
+    private LicenseMatcher licenseMatcher;
+
+    @Override
+    protected void setUp() {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new JaxbAnnotationModule());
+        knownLicenses = KnownLicensesDatabase.readJson(mapper, getClass().getClassLoader(), new ArrayList<URL>());
+        licenseMatcher = new LicenseMatcher(knownLicenses, false, 0, 0);
+    }
+
+    public void testKnownLicenseText() {
+        String text = getTextToUse("mit");
+        List<LicenseMatcher.Match> matches = licenseMatcher.findMatches(text);
+        assertEquals(1, matches.size());
+        assertMatch("mit", 0, text.length(), matches.get(0));
+        assertTrue(licenseMatcher.findMatches("This is not a license\n").isEmpty());
+    }
+
+    public void testConcurrentLookupsShareTheMatcher() throws InterruptedException, ExecutionException {
+        final String[] licenseIds = {"asl-v2", "mit", "bsd-3clause", "epl"};
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<LicenseMatcher.Match>>> futures = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                final String text = getTextToUse(licenseIds[i % licenseIds.length]);
+                futures.add(executorService.submit(new Callable<List<LicenseMatcher.Match>>() {
+                    @Override
+                    public List<LicenseMatcher.Match> call() {
+                        return licenseMatcher.findMatches(text);
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                List<LicenseMatcher.Match> matches = futures.get(i).get();
+                assertEquals(1, matches.size());
+                assertEquals(licenseIds[i % licenseIds.length], matches.get(0).getKnownLicense().getId());
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    public void testAddedLicensesAreMatched() {
+        String additionalTerms = "The example files may also be redistributed under the example terms.\n";
+        // the results computed before the license was added aren't reused
+        assertTrue(licenseMatcher.findMatches(additionalTerms).isEmpty());
+        addLicense("example-additional-terms", additionalTerms);
+        List<LicenseMatcher.Match> matches = licenseMatcher.findMatches(additionalTerms);
+        assertEquals(1, matches.size());
+        assertMatch("example-additional-terms", 0, additionalTerms.length(), matches.get(0));
+
+        // a license added again with the same id replaces the previous one
+        addLicense("example-additional-terms", "Other example terms.\n");
+        assertTrue(licenseMatcher.findMatches(additionalTerms).isEmpty());
+    }
+
+    public void testSeveralLicensesInOneText() {
+        String firstLicenseText = getTextToUse("bsd-3clause");
+        String secondLicenseText = getTextToUse("mit");
+        String unmatchedText = "The bundled libraries are distributed under the following licenses:\n\n";
+        String text = firstLicenseText + "\n" + unmatchedText + secondLicenseText;
+        List<LicenseMatcher.Match> matches = licenseMatcher.findMatches(text);
+        assertEquals(2, matches.size());
+        // sorted by offset whatever the order they were found in
+        assertMatch("bsd-3clause", 0, firstLicenseText.length(), matches.get(0));
+        assertMatch("mit", text.length() - secondLicenseText.length(), text.length(), matches.get(1));
+    }
+
+    public void testMatchingBudget() {
+        LicenseMatcher boundedLicenseMatcher = new LicenseMatcher(knownLicenses, false, 0, 1000);
+        String text = getTextToUse("asl-v2");
+        for (int i = 0; i < 2; i++) {
+            try {
+                boundedLicenseMatcher.findMatches(text);
+                fail("The character budget should be exceeded");
+            } catch (LicenseMatcher.MatchTimeoutException e) {
+                // expected, and not cached as a text without licenses
+            }
+        }
+        assertEquals(0, boundedLicenseMatcher.getMatchCacheHits());
+    }
+
+    public void testAnchorPhrases() {
+        // the beginning, middle and end of the longest literal, then the beginning of the first one
+        assertEquals(Arrays.asList("Permission is hereby granted, fr", "sion is hereby granted, free of ",
+                "s hereby granted, free of charge", "Copyright (c) "),
+                LicenseMatcher.getAnchorPhrases("\\QCopyright (c) \\E.*\\QPermission is hereby granted, free of charge\\E"));
+        // the literals are too short to be worth looking for
+        assertEquals(Collections.<String>emptyList(), LicenseMatcher.getAnchorPhrases("\\QMIT\\E.*"));
+        // a group could make any literal optional
+        assertNull(LicenseMatcher.getAnchorPhrases("\\QCopyright\\E(\\Q (c)\\E)?"));
+    }
+
+    public void testMatchedTextsContainTheAnchorPhrases() {
+        for (KnownLicense knownLicense : knownLicenses.getLicenses().values()) {
+            for (TextVariant textVariant : knownLicense.getTextVariants()) {
+                if (!textVariant.getCompiledTextPattern().matcher(knownLicense.getTextToUse()).find()) {
+                    continue;
+                }
+                List<String> anchorPhrases = LicenseMatcher.getAnchorPhrases(textVariant.getText());
+                for (String anchorPhrase : anchorPhrases != null ? anchorPhrases : Collections.<String>emptyList()) {
+                    assertTrue(knownLicense.getId() + "/" + textVariant.getId() + ": " + anchorPhrase,
+                            knownLicense.getTextToUse().contains(anchorPhrase));
+                }
+            }
+        }
+    }
+
+    private void addLicense(String id, String text) {
+        KnownLicense knownLicense = new KnownLicense();
+        knownLicense.setId(id);
+        knownLicense.setName(id);
+        TextVariant textVariant = new TextVariant();
+        textVariant.setId("default");
+        textVariant.setDefaultVariant(true);
+        textVariant.setText(Pattern.quote(text));
+        knownLicense.setTextVariants(Collections.singletonList(textVariant));
+        knownLicense.setTextToUse(text);
+        knownLicenses.getLicenses().put(id, knownLicense);
+        licenseMatcher.addLicense(knownLicense);
+    }
+
+    private String getTextToUse(String licenseId) {
+        return knownLicenses.getLicenses().get(licenseId).getTextToUse();
+    }
+
+    private static void assertMatch(String licenseId, int start, int end, LicenseMatcher.Match match) {
+        assertEquals(licenseId, match.getKnownLicense().getId());
+        assertEquals(start, match.getStart());
+        assertEquals(end, match.getEnd());
+    }
+}
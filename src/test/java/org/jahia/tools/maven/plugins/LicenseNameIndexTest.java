@@ -0,0 +1,87 @@
+package org.jahia.tools.maven.plugins;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.jaxb.JaxbAnnotationModule;
+import junit.framework.TestCase;
+
+import java.net.URL;
+import java.util.ArrayList;
+
+/**
+ * Looks up the bundled known licenses by the names and URLs found in POMs and manifests.
+ */
+public class LicenseNameIndexTest extends TestCase {
+
+    private KnownLicenses knownLicenses;
+    private LicenseNameIndex licenseNameIndex;
+
+    @Override
+    protected void setUp() {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new JaxbAnnotationModule());
+        knownLicenses = KnownLicensesDatabase.readJson(mapper, getClass().getClassLoader(), new ArrayList<URL>());
+        licenseNameIndex = new LicenseNameIndex(knownLicenses);
+    }
+
+    public void testNameNormalization() {
+        assertEquals("apache license 2", LicenseNameIndex.normalizeName("The Apache License, Version 2.0"));
+        assertEquals("apache license 2", LicenseNameIndex.normalizeName("apache licence v2"));
+        assertEquals("apache license 2", LicenseNameIndex.normalizeName("Apache-License-V 2.0.0."));
+        assertEquals("lgpl 2.1", LicenseNameIndex.normalizeName("LGPL, version 2.1"));
+        assertEquals("", LicenseNameIndex.normalizeName(" - "));
+    }
+
+    public void testUrlNormalization() {
+        assertEquals("apache.org/licenses/license-2.0", LicenseNameIndex.normalizeUrl("https://www.apache.org/licenses/LICENSE-2.0.txt"));
+        assertEquals("apache.org/licenses/license-2.0", LicenseNameIndex.normalizeUrl(" http://apache.org/licenses/LICENSE-2.0/#license "));
+        assertEquals("opensource.org/licenses/mit-license", LicenseNameIndex.normalizeUrl("http://www.opensource.org/licenses/mit-license.php"));
+    }
+
+    public void testFindByName() {
+        assertLicense("asl-v2", licenseNameIndex.findByName("Apache Software License V2"));
+        assertLicense("asl-v2", licenseNameIndex.findByName("The Apache Software License, Version 2.0"));
+        assertLicense("asl-v2", licenseNameIndex.findByName("apache license version 2"));
+        assertLicense("asl-v2", licenseNameIndex.findByName("Apache-2.0"));
+        assertLicense("lgpl-v2.1", licenseNameIndex.findByName("LGPL-2.1-only"));
+        assertLicense("mit", licenseNameIndex.findByName("https://opensource.org/licenses/MIT"));
+        assertNull(licenseNameIndex.findByName("Example License"));
+        assertNull(licenseNameIndex.findByName(null));
+    }
+
+    public void testFindByUrl() {
+        assertLicense("asl-v2", licenseNameIndex.findByUrl("https://www.apache.org/licenses/LICENSE-2.0.txt"));
+        assertLicense("mit", licenseNameIndex.findByUrl("https://spdx.org/licenses/MIT.html"));
+        assertNull(licenseNameIndex.findByUrl("https://example.org/license"));
+        assertNull(licenseNameIndex.findByUrl(null));
+    }
+
+    public void testFirstLicenseWins() {
+        KnownLicense knownLicense = new KnownLicense();
+        knownLicense.setId("other-asl-v2");
+        knownLicense.setName("Apache License, Version 2.0");
+        knownLicenses.getLicenses().put(knownLicense.getId(), knownLicense);
+        licenseNameIndex.addLicense(knownLicense);
+        assertLicense("asl-v2", licenseNameIndex.findByName("Apache License, Version 2.0"));
+    }
+
+    public void testReplacedLicensesAreFound() {
+        KnownLicense knownLicense = new KnownLicense();
+        knownLicense.setId("example-additional-terms");
+        knownLicense.setName("Additional license terms from example");
+        knownLicenses.getLicenses().put(knownLicense.getId(), knownLicense);
+        licenseNameIndex.addLicense(knownLicense);
+        assertSame(knownLicense, licenseNameIndex.findByName("additional license terms from EXAMPLE"));
+
+        KnownLicense replacingKnownLicense = new KnownLicense();
+        replacingKnownLicense.setId("example-additional-terms");
+        replacingKnownLicense.setName("Additional license terms from example");
+        knownLicenses.getLicenses().put(replacingKnownLicense.getId(), replacingKnownLicense);
+        licenseNameIndex.addLicense(replacingKnownLicense);
+        assertSame(replacingKnownLicense, licenseNameIndex.findByName("Additional license terms from example"));
+    }
+
+    private static void assertLicense(String licenseId, KnownLicense knownLicense) {
+        assertNotNull(knownLicense);
+        assertEquals(licenseId, knownLicense.getId());
+    }
+}
@@ -0,0 +1,169 @@
+package org.jahia.tools.maven.plugins;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the Maven Central searches against a local stub server, to check what is sent to the server and what is taken
+ * from the cache.
+ */
+public class MavenCentralSearchTest extends TestCase {
+
+    private static final String RESULTS = "{\"response\":{\"numFound\":1,\"docs\":[{\"id\":\"org.example:example:1.0\",\"g\":\"org.example\"}]}}";
+    private static final long TTL = 60 * 60 * 1000;
+
+    private HttpServer server;
+    private String serverUrl;
+    private Client client;
+    private File cacheDirectory;
+    private final AtomicInteger serverRequests = new AtomicInteger();
+    private final CountDownLatch responsesReleased = new CountDownLatch(1);
+    private volatile boolean holdResponses;
+    private volatile int responseStatus = 200;
+
+    @Override
+    protected void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/solrsearch/select", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                serverRequests.incrementAndGet();
+                if (holdResponses) {
+                    try {
+                        responsesReleased.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                byte[] body = RESULTS.getBytes("UTF-8");
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(responseStatus, body.length);
+                OutputStream responseBody = exchange.getResponseBody();
+                responseBody.write(body);
+                responseBody.close();
+            }
+        });
+        server.start();
+        serverUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        client = ClientBuilder.newClient();
+        cacheDirectory = File.createTempFile("maven-central-search-", "");
+        cacheDirectory.delete();
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        responsesReleased.countDown();
+        server.stop(0);
+        client.close();
+        FileUtils.deleteDirectory(cacheDirectory);
+    }
+
+    public void testSameSearchesAreRunOnce() throws Exception {
+        holdResponses = true;
+        MavenCentralSearch search = newSearch(false);
+        Future<List<String>> firstSearch = search.searchArtifact("example", "1.0", null);
+        Future<List<String>> secondSearch = search.searchArtifact("example", "1.0", null);
+        assertSame(firstSearch, secondSearch);
+        assertNotSame(firstSearch, search.searchArtifact("example", "1.0", "sources"));
+        responsesReleased.countDown();
+        assertEquals(Arrays.asList("org.example:example:1.0"), firstSearch.get());
+        assertEquals(Arrays.asList("org.example:example:1.0"), search.findArtifact("example", "1.0", null));
+        search.close();
+        assertEquals(2, serverRequests.get());
+        assertEquals(2, search.getServerSearches());
+    }
+
+    public void testCachedResultsAreUsedWithinTheTtl() throws IOException {
+        MavenCentralSearch search = newSearch(false);
+        assertEquals(Arrays.asList("org.example:example:1.0"), search.findPackage("org.example"));
+        search.close();
+
+        MavenCentralSearch nextSearch = newSearch(false);
+        assertEquals(Arrays.asList("org.example:example:1.0"), nextSearch.findPackage("org.example"));
+        nextSearch.close();
+        assertEquals(1, serverRequests.get());
+        assertEquals(0, nextSearch.getServerSearches());
+        assertEquals(1, nextSearch.getCachedSearches());
+    }
+
+    public void testOutdatedResultsAreSearchedAgain() throws IOException {
+        MavenCentralSearch search = newSearch(false);
+        search.findArtifact("example", "1.0", null);
+        search.close();
+        makeCacheOutdated();
+
+        MavenCentralSearch nextSearch = newSearch(false);
+        assertEquals(Arrays.asList("org.example:example:1.0"), nextSearch.findArtifact("example", "1.0", null));
+        nextSearch.close();
+        assertEquals(2, serverRequests.get());
+        assertEquals(0, nextSearch.getCachedSearches());
+    }
+
+    public void testFailedSearchesAreNotCached() throws IOException {
+        responseStatus = 503;
+        MavenCentralSearch search = newSearch(false);
+        try {
+            search.findArtifact("example", "1.0", null);
+            fail("The search should fail");
+        } catch (IOException e) {
+            // expected
+        }
+        search.close();
+
+        responseStatus = 200;
+        MavenCentralSearch nextSearch = newSearch(false);
+        assertEquals(Arrays.asList("org.example:example:1.0"), nextSearch.findArtifact("example", "1.0", null));
+        nextSearch.close();
+        assertEquals(2, serverRequests.get());
+    }
+
+    public void testOfflineUsesOutdatedResults() throws IOException {
+        MavenCentralSearch search = newSearch(false);
+        assertEquals(Arrays.asList("org.example:example:1.0"), search.findArtifact("example", "1.0", null));
+        search.close();
+        makeCacheOutdated();
+
+        MavenCentralSearch offlineSearch = newSearch(true);
+        assertEquals(Arrays.asList("org.example:example:1.0"), offlineSearch.findArtifact("example", "1.0", null));
+        offlineSearch.close();
+        assertEquals(1, serverRequests.get());
+        assertTrue(offlineSearch.getOfflineMisses().isEmpty());
+    }
+
+    public void testOfflineMissesAreRecorded() throws IOException {
+        MavenCentralSearch offlineSearch = newSearch(true);
+        assertNull(offlineSearch.findPackage("org.example"));
+        offlineSearch.close();
+        assertEquals(0, serverRequests.get());
+        assertEquals(1, offlineSearch.getOfflineMisses().size());
+    }
+
+    private MavenCentralSearch newSearch(boolean offline) {
+        return new MavenCentralSearch(serverUrl, client, 2, cacheDirectory, TTL, offline);
+    }
+
+    private void makeCacheOutdated() {
+        Collection<File> cacheFiles = FileUtils.listFiles(cacheDirectory, new String[]{"json"}, false);
+        assertFalse(cacheFiles.isEmpty());
+        for (File cacheFile : cacheFiles) {
+            cacheFile.setLastModified(System.currentTimeMillis() - 2 * TTL);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package org.jahia.tools.maven.plugins;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that the automaton finds the same phrases as looking for each of them in turn, including the phrases that
+ * overlap or contain one another.
+ */
+public class PhraseAutomatonTest extends TestCase {
+
+    public void testOverlappingPhrases() {
+        PhraseAutomaton phraseAutomaton = new PhraseAutomaton(Arrays.asList("he", "she", "his", "hers", "usher"));
+        assertFound(new boolean[]{true, true, false, true, true}, phraseAutomaton.findPhrases("ushers"));
+        assertFound(new boolean[]{true, false, true, false, false}, phraseAutomaton.findPhrases("this hen"));
+        assertFound(new boolean[]{false, false, false, false, false}, phraseAutomaton.findPhrases(""));
+    }
+
+    public void testNoPhrases() {
+        assertEquals(0, new PhraseAutomaton(Collections.<String>emptyList()).findPhrases("any text").length);
+    }
+
+    public void testSameResultsAsLookingForEachPhrase() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100; i++) {
+            List<String> phrases = new ArrayList<>();
+            for (int j = 0; j < 20; j++) {
+                phrases.add(randomText(random, 1 + random.nextInt(5)));
+            }
+            String text = randomText(random, 200);
+            boolean[] expectedFoundPhrases = new boolean[phrases.size()];
+            for (int j = 0; j < phrases.size(); j++) {
+                expectedFoundPhrases[j] = text.contains(phrases.get(j));
+            }
+            assertFound(expectedFoundPhrases, new PhraseAutomaton(phrases).findPhrases(text));
+        }
+    }
+
+    private static void assertFound(boolean[] expectedFoundPhrases, boolean[] foundPhrases) {
+        assertEquals(Arrays.toString(expectedFoundPhrases), Arrays.toString(foundPhrases));
+    }
+
+    // a small alphabet so that the phrases share prefixes and suffixes
+    private static String randomText(Random random, int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append("abc ".charAt(random.nextInt(4)));
+        }
+        return text.toString();
+    }
+}
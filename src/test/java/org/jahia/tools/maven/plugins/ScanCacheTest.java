@@ -0,0 +1,77 @@
+package org.jahia.tools.maven.plugins;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores and reads back scan cache entries, and checks when they are no longer used.
+ */
+public class ScanCacheTest extends TestCase {
+
+    private static final String KEY = "0123456789abcdef";
+    private static final long TTL = 60 * 60 * 1000;
+
+    private File cacheDirectory;
+
+    @Override
+    protected void setUp() throws IOException {
+        cacheDirectory = File.createTempFile("scan-cache-", "");
+        cacheDirectory.delete();
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        FileUtils.deleteDirectory(cacheDirectory);
+    }
+
+    public void testRoundTrip() throws IOException {
+        ScanCacheEntry scanCacheEntry = new ScanCacheEntry();
+        JarMetadata jarMetadata = new JarMetadata("/scan/example-1.0.jar", "example-1.0");
+        jarMetadata.getPackages().add("org.example");
+        scanCacheEntry.getJarDatabaseEntries().put("example-1.0", jarMetadata);
+        scanCacheEntry.getLicenseFileKnownLicenseIds().put("example-1.0",
+                Collections.<String, List<String>>singletonMap("META-INF/LICENSE", Arrays.asList("asl-v2")));
+        scanCacheEntry.getDuplicatedNotices().add("/scan/example-1.0.jar");
+        newScanCache("fingerprint", false).put(KEY, scanCacheEntry);
+
+        ScanCacheEntry cachedScanCacheEntry = newScanCache("fingerprint", false).get(KEY);
+        assertNotNull(cachedScanCacheEntry);
+        JarMetadata cachedJarMetadata = cachedScanCacheEntry.getJarDatabaseEntries().get("example-1.0");
+        assertEquals("example", cachedJarMetadata.getName());
+        assertEquals("1.0", cachedJarMetadata.getVersion());
+        assertEquals(jarMetadata.getPackages(), cachedJarMetadata.getPackages());
+        Map<String, List<String>> licenseFileKnownLicenseIds = cachedScanCacheEntry.getLicenseFileKnownLicenseIds().get("example-1.0");
+        assertEquals(Arrays.asList("asl-v2"), licenseFileKnownLicenseIds.get("META-INF/LICENSE"));
+        assertEquals(scanCacheEntry.getDuplicatedNotices(), cachedScanCacheEntry.getDuplicatedNotices());
+        assertNull(newScanCache("fingerprint", false).get("fedcba9876543210"));
+    }
+
+    public void testOtherKnownLicensesInvalidateTheEntries() throws IOException {
+        newScanCache("fingerprint", false).put(KEY, new ScanCacheEntry());
+        assertNull(newScanCache("other-fingerprint", false).get(KEY));
+    }
+
+    public void testOutdatedEntriesAreOnlyUsedOffline() throws IOException {
+        newScanCache("fingerprint", false).put(KEY, new ScanCacheEntry());
+        assertTrue(new File(cacheDirectory, KEY + ".json").setLastModified(System.currentTimeMillis() - 2 * TTL));
+        assertNull(newScanCache("fingerprint", false).get(KEY));
+        assertNotNull(newScanCache("fingerprint", true).get(KEY));
+    }
+
+    public void testCorruptedEntriesAreIgnored() throws IOException {
+        newScanCache("fingerprint", false).put(KEY, new ScanCacheEntry());
+        FileUtils.writeStringToFile(new File(cacheDirectory, KEY + ".json"), "{\"jarDatabaseEntries\":", "UTF-8");
+        assertNull(newScanCache("fingerprint", false).get(KEY));
+    }
+
+    private ScanCache newScanCache(String knownLicensesFingerprint, boolean offline) {
+        return new ScanCache(cacheDirectory, knownLicensesFingerprint, TTL, offline);
+    }
+}
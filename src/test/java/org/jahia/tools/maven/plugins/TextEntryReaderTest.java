@@ -0,0 +1,78 @@
+package org.jahia.tools.maven.plugins;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Checks the charsets the entries are decoded with, the normalization of their line separators and which entries are
+ * rejected.
+ */
+public class TextEntryReaderTest extends TestCase {
+
+    private static final String TEXT = "Licensed under the Apache License, Version 2.0 - \u00e9t\u00e9\n";
+    private static final int MAX_SIZE = 8 * 1024 * 1024;
+
+    public void testByteOrderMarks() throws IOException {
+        assertEquals(TEXT, read(concat(new byte[]{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF}, TEXT.getBytes("UTF-8"))));
+        assertEquals(TEXT, read(concat(new byte[]{(byte) 0xFE, (byte) 0xFF}, TEXT.getBytes("UTF-16BE"))));
+        assertEquals(TEXT, read(concat(new byte[]{(byte) 0xFF, (byte) 0xFE}, TEXT.getBytes("UTF-16LE"))));
+    }
+
+    public void testUtf16WithoutByteOrderMark() throws IOException {
+        assertEquals(TEXT, read(TEXT.getBytes("UTF-16BE")));
+        assertEquals(TEXT, read(TEXT.getBytes("UTF-16LE")));
+    }
+
+    public void testFallsBackToIso88591() throws IOException {
+        assertEquals(TEXT, read(TEXT.getBytes("UTF-8")));
+        assertEquals(TEXT, read(TEXT.getBytes("ISO-8859-1")));
+    }
+
+    public void testLineSeparatorsAreNormalized() throws IOException {
+        assertEquals("first\nsecond\nthird\nlast\n", read("first\r\nsecond\rthird\nlast".getBytes("UTF-8")));
+        assertEquals("", read(new byte[0]));
+    }
+
+    public void testBinaryFilesAreRejected() throws IOException {
+        assertRejected(new byte[]{'P', 'K', 3, 4, 0, 0, 0, 0, 8, 0}, MAX_SIZE);
+        // null bytes in both the even and odd positions aren't UTF-16
+        assertRejected(new byte[]{0, 0, 'a', 0, 0, 'b', 'c', 'd'}, MAX_SIZE);
+        // nor is UTF-16 that can't be decoded
+        assertRejected(new byte[]{0, 'a', 0, 'b', (byte) 0xDC, 0x00, 0, 'c'}, MAX_SIZE);
+    }
+
+    public void testLargeEntriesAreRejected() throws IOException {
+        assertRejected(TEXT.getBytes("UTF-8"), 10);
+    }
+
+    public void testLargeEntriesAreRead() throws IOException {
+        byte[] largeText = new byte[2 * 1024 * 1024];
+        Arrays.fill(largeText, (byte) 'a');
+        largeText[largeText.length - 1] = '\n';
+        assertEquals(largeText.length, read(largeText).length());
+        // the buffers grown for the large entry are released without losing the next entries
+        assertEquals(TEXT, read(TEXT.getBytes("UTF-8")));
+    }
+
+    private static String read(byte[] bytes) throws IOException {
+        return TextEntryReader.read(new ByteArrayInputStream(bytes), MAX_SIZE);
+    }
+
+    private static void assertRejected(byte[] bytes, int maxSize) throws IOException {
+        try {
+            TextEntryReader.read(new ByteArrayInputStream(bytes), maxSize);
+            fail("The entry should be rejected");
+        } catch (TextEntryReader.RejectedEntryException e) {
+            // expected
+        }
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] bytes = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, bytes, first.length, second.length);
+        return bytes;
+    }
+}
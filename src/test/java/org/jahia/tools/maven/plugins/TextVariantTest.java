@@ -0,0 +1,85 @@
+package org.jahia.tools.maven.plugins;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that the known license texts are only read, and their patterns compiled, when first needed.
+ */
+public class TextVariantTest extends TestCase {
+
+    private static final String TEXT = "\\QPermission is hereby granted, free of charge\\E.*";
+
+    private File textFile;
+    private URL countingTextURL;
+    private final AtomicInteger reads = new AtomicInteger();
+
+    @Override
+    protected void setUp() throws IOException {
+        textFile = File.createTempFile("text-variant-", ".txt");
+        FileUtils.writeStringToFile(textFile, TEXT, "UTF-8");
+        final URL textURL = textFile.toURI().toURL();
+        countingTextURL = new URL(null, textURL.toString(), new URLStreamHandler() {
+            @Override
+            protected URLConnection openConnection(URL url) throws IOException {
+                reads.incrementAndGet();
+                return textURL.openConnection();
+            }
+        });
+    }
+
+    @Override
+    protected void tearDown() {
+        textFile.delete();
+    }
+
+    public void testTextIsReadAndCompiledOnce() {
+        TextVariant textVariant = new TextVariant();
+        textVariant.loadTextFrom(countingTextURL);
+        assertTrue(textVariant.hasText());
+        assertEquals(0, reads.get());
+
+        assertEquals(TEXT.length(), textVariant.getTextLength());
+        assertEquals(1, reads.get());
+        assertSame(textVariant.getCompiledTextPattern(), textVariant.getCompiledTextPattern());
+        assertTrue(textVariant.getCompiledTextPattern().matcher("Permission is hereby granted, free of charge, to any person").matches());
+        assertEquals(TEXT, textVariant.getText());
+        assertEquals(1, reads.get());
+    }
+
+    public void testPrecompiledDataDoesntReadTheText() {
+        TextVariant textVariant = new TextVariant();
+        textVariant.loadTextFrom(countingTextURL);
+        textVariant.setPrecompiledData(TEXT.length(), Arrays.asList("Permission is hereby granted"), false);
+        assertEquals(TEXT.length(), textVariant.getTextLength());
+        assertEquals(Arrays.asList("Permission is hereby granted"), textVariant.getAnchorPhrases());
+        assertFalse(textVariant.isFormattingVariant(new long[0]));
+        assertEquals(0, reads.get());
+    }
+
+    public void testReplacedTextIsCompiledAgain() {
+        TextVariant textVariant = new TextVariant();
+        textVariant.setText("\\Qfirst\\E");
+        assertTrue(textVariant.getCompiledTextPattern().matcher("first").matches());
+        textVariant.setText("\\Qsecond\\E");
+        assertTrue(textVariant.getCompiledTextPattern().matcher("second").matches());
+        assertEquals("\\Qsecond\\E".length(), textVariant.getTextLength());
+    }
+
+    public void testTextToUseIsReadWhenFirstNeeded() {
+        KnownLicense knownLicense = new KnownLicense();
+        knownLicense.loadTextToUseFrom(countingTextURL);
+        assertEquals(0, reads.get());
+        assertEquals(TEXT, knownLicense.getTextToUse());
+        assertEquals(TEXT, knownLicense.getTextToUse());
+        assertEquals(1, reads.get());
+    }
+}
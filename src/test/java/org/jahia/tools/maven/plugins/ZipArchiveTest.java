@@ -0,0 +1,164 @@
+package org.jahia.tools.maven.plugins;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Reads archives through their central directory: the entries written by the JDK, archives with data prepended to
+ * them and ZIP64 archives.
+ */
+public class ZipArchiveTest extends TestCase {
+
+    private static final String LICENSE = "Licensed under the Apache License, Version 2.0\n";
+    private static final String NOTICE = "This product includes software developed by Example\n";
+
+    public void testStoredAndDeflatedEntries() throws IOException {
+        ZipArchive zipArchive = new ZipArchive(new ByteArrayArchiveSource(writeZip()));
+        assertEquals("[META-INF/, META-INF/LICENSE, META-INF/NOTICE]", zipArchive.getEntries().toString());
+        assertTrue(zipArchive.getEntries().get(0).isDirectory());
+        ZipArchive.Entry license = zipArchive.getEntries().get(1);
+        assertEquals(ZipArchive.DEFLATED, license.getMethod());
+        assertEquals(LICENSE.length(), license.getSize());
+        assertEquals(LICENSE, read(zipArchive, license));
+        ZipArchive.Entry notice = zipArchive.getEntries().get(2);
+        assertEquals(ZipArchive.STORED, notice.getMethod());
+        assertEquals(NOTICE, read(zipArchive, notice));
+        assertEquals(NOTICE, IOUtils.toString(new ArchiveSourceInputStream(zipArchive.getStoredEntrySource(notice), 0, notice.getSize()), "UTF-8"));
+        try {
+            zipArchive.getStoredEntrySource(license);
+            fail("A compressed entry has no stored entry source");
+        } catch (ZipException e) {
+            // expected
+        }
+    }
+
+    public void testPrefixedArchive() throws IOException {
+        byte[] zip = writeZip();
+        byte[] prefix = "#!/bin/sh\nexec java -jar \"$0\" \"$@\"\n".getBytes("UTF-8");
+        byte[] prefixedZip = new byte[prefix.length + zip.length];
+        System.arraycopy(prefix, 0, prefixedZip, 0, prefix.length);
+        System.arraycopy(zip, 0, prefixedZip, prefix.length, zip.length);
+        ZipArchive zipArchive = new ZipArchive(new ByteArrayArchiveSource(prefixedZip));
+        assertEquals(3, zipArchive.getEntries().size());
+        assertEquals(LICENSE, read(zipArchive, zipArchive.getEntries().get(1)));
+        assertEquals(NOTICE, read(zipArchive, zipArchive.getEntries().get(2)));
+    }
+
+    public void testZip64Archive() throws IOException {
+        ZipArchive zipArchive = new ZipArchive(new ByteArrayArchiveSource(writeZip64(LICENSE)));
+        assertEquals(1, zipArchive.getEntries().size());
+        ZipArchive.Entry license = zipArchive.getEntries().get(0);
+        assertEquals("LICENSE", license.getName());
+        assertEquals(LICENSE.length(), license.getSize());
+        assertEquals(LICENSE.length(), license.getCompressedSize());
+        assertEquals(LICENSE, read(zipArchive, license));
+    }
+
+    public void testDigestOnlyDependsOnTheContents() throws IOException {
+        assertEquals(new ZipArchive(new ByteArrayArchiveSource(writeZip())).getDigest(),
+                new ZipArchive(new ByteArrayArchiveSource(writeZip())).getDigest());
+        assertFalse(new ZipArchive(new ByteArrayArchiveSource(writeZip())).getDigest().equals(
+                new ZipArchive(new ByteArrayArchiveSource(writeZip64(LICENSE))).getDigest()));
+    }
+
+    public void testInvalidArchives() throws IOException {
+        assertRejected(new byte[10]);
+        assertRejected(LICENSE.getBytes("UTF-8"));
+        // the central directory is missing
+        byte[] zip = writeZip();
+        byte[] truncatedZip = new byte[zip.length / 2];
+        System.arraycopy(zip, zip.length - truncatedZip.length, truncatedZip, 0, truncatedZip.length);
+        assertRejected(truncatedZip);
+    }
+
+    private static void assertRejected(byte[] archive) throws IOException {
+        try {
+            new ZipArchive(new ByteArrayArchiveSource(archive));
+            fail("The archive should be rejected");
+        } catch (ZipException e) {
+            // expected
+        }
+    }
+
+    private static String read(ZipArchive zipArchive, ZipArchive.Entry entry) throws IOException {
+        InputStream inputStream = zipArchive.getInputStream(entry);
+        try {
+            return IOUtils.toString(inputStream, "UTF-8");
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private static byte[] writeZip() throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        ZipOutputStream zipOutputStream = new ZipOutputStream(byteArrayOutputStream);
+        zipOutputStream.putNextEntry(new ZipEntry("META-INF/"));
+        zipOutputStream.closeEntry();
+        zipOutputStream.putNextEntry(new ZipEntry("META-INF/LICENSE"));
+        zipOutputStream.write(LICENSE.getBytes("UTF-8"));
+        zipOutputStream.closeEntry();
+        byte[] notice = NOTICE.getBytes("UTF-8");
+        ZipEntry noticeEntry = new ZipEntry("META-INF/NOTICE");
+        noticeEntry.setMethod(ZipEntry.STORED);
+        noticeEntry.setSize(notice.length);
+        CRC32 crc = new CRC32();
+        crc.update(notice);
+        noticeEntry.setCrc(crc.getValue());
+        zipOutputStream.putNextEntry(noticeEntry);
+        zipOutputStream.write(notice);
+        zipOutputStream.closeEntry();
+        zipOutputStream.close();
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    /**
+     * Writes an archive with a single stored entry whose sizes and offset are all in ZIP64 extra fields, as for
+     * archives larger than 4GB.
+     */
+    private static byte[] writeZip64(String contents) throws IOException {
+        byte[] name = "LICENSE".getBytes("UTF-8");
+        byte[] data = contents.getBytes("UTF-8");
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        ByteBuffer buffer = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+
+        // local file header
+        buffer.putInt(0x04034b50).putShort((short) 45).putShort((short) 0).putShort((short) 0).putInt(0)
+                .putInt((int) crc.getValue()).putInt(-1).putInt(-1).putShort((short) name.length).putShort((short) 20)
+                .put(name).putShort((short) 1).putShort((short) 16).putLong(data.length).putLong(data.length)
+                .put(data);
+
+        // central directory
+        int centralDirectoryOffset = buffer.position();
+        buffer.putInt(0x02014b50).putShort((short) 45).putShort((short) 45).putShort((short) 0).putShort((short) 0)
+                .putInt(0).putInt((int) crc.getValue()).putInt(-1).putInt(-1).putShort((short) name.length)
+                .putShort((short) 28).putShort((short) 0).putShort((short) 0).putShort((short) 0).putInt(0).putInt(-1)
+                .put(name).putShort((short) 1).putShort((short) 24).putLong(data.length).putLong(data.length).putLong(0);
+        int centralDirectorySize = buffer.position() - centralDirectoryOffset;
+
+        // ZIP64 end of central directory record and locator
+        int zip64EndOfCentralDirectoryOffset = buffer.position();
+        buffer.putInt(0x06064b50).putLong(44).putShort((short) 45).putShort((short) 45).putInt(0).putInt(0)
+                .putLong(1).putLong(1).putLong(centralDirectorySize).putLong(centralDirectoryOffset);
+        buffer.putInt(0x07064b50).putInt(0).putLong(zip64EndOfCentralDirectoryOffset).putInt(1);
+
+        // end of central directory record
+        buffer.putInt(0x06054b50).putShort((short) 0).putShort((short) 0).putShort((short) -1).putShort((short) -1)
+                .putInt(-1).putInt(-1).putShort((short) 0);
+
+        byte[] zip = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(zip);
+        return zip;
+    }
+}